@@ -0,0 +1,273 @@
+package com.zmc.qps;
+
+import com.zmc.qps.store.RocksDBAggregator;
+import com.zmc.qps.store.RocksDBStore;
+import com.zmc.qps.workload.Datasets;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Rollups over the same rows as DuckDB SQL and as parallel Java-side aggregation over RocksDB,
+ * for several data set sizes, to find where each engine wins.
+ *
+ * <p>Row {@code id} has group {@code id % groups} and amount {@code id * 2654435761 % 1000003},
+ * padded to {@code valueSize} bytes. DuckDB stores them as a table {@code (id, grp, amount,
+ * pad)}, generated in SQL; RocksDB stores them under 4-byte keys, bulk loaded, with the group and
+ * the amount at the start of the value. Queries:
+ *
+ * <ul>
+ *   <li>{@code sum}: {@code SUM(amount), COUNT(*)} over all rows
+ *   <li>{@code group}: {@code SUM(amount), COUNT(*) ... GROUP BY grp}
+ *   <li>{@code topn}: the {@code topN} largest amounts, {@code ORDER BY amount DESC LIMIT topN}
+ * </ul>
+ *
+ * <p>DuckDB runs with {@code threads} set to {@code parallelism}; RocksDB runs a {@link
+ * RocksDBAggregator} on a fork-join pool of the same size, which computes all three results in
+ * one scan, so every RocksDB query costs one full scan. Each query runs {@code repeats} times and
+ * the fastest run counts. Results of both engines are compared, and per query the sizes at which
+ * the faster engine changes are printed.
+ *
+ * <p>Usage: {@code AggregationQPSTest <path> <sizes> <valueSize> <groups> <topN> <parallelism>
+ * <repeats>}, e.g. {@code /tmp/aggregation 100000,1000000,10000000 100 1000 100 8 5}
+ */
+public class AggregationQPSTest {
+
+  private static final String[] ENGINES = {"duckdb", "rocksdb"};
+  private static final String[] QUERIES = {"sum", "group", "topn"};
+
+  public static void main(String[] args) throws Exception {
+    String path = "/tmp/test_aggregation";
+    String sizes = "100000,1000000,10000000";
+    int valueSize = 100;
+    int groups = 1000;
+    int topN = 100;
+    int parallelism = Runtime.getRuntime().availableProcessors();
+    int repeats = 5;
+    try {
+      path = args[0];
+      sizes = args[1];
+      valueSize = Integer.parseInt(args[2]);
+      groups = Integer.parseInt(args[3]);
+      topN = Integer.parseInt(args[4]);
+      parallelism = Integer.parseInt(args[5]);
+      repeats = Integer.parseInt(args[6]);
+    } catch (ArrayIndexOutOfBoundsException e) {
+    }
+    if (valueSize < RocksDBAggregator.PREFIX) {
+      throw new IllegalArgumentException("Value size must be at least " + RocksDBAggregator.PREFIX);
+    }
+    String[] sizeList = sizes.split(",");
+    new File(path).mkdirs();
+
+    // rows per second and result checksum by engine, size and query
+    double[][][] rowsPerSecond = new double[ENGINES.length][sizeList.length][QUERIES.length];
+    long[][][] checksums = new long[ENGINES.length][sizeList.length][QUERIES.length];
+    for (int e = 0; e < ENGINES.length; e++) {
+      for (int s = 0; s < sizeList.length; s++) {
+        int rows = Integer.parseInt(sizeList[s].trim());
+        String storePath = path + "/" + ENGINES[e] + "-" + rows;
+        clean(storePath);
+        try {
+          long start = System.nanoTime();
+          Engine engine =
+              "duckdb".equals(ENGINES[e])
+                  ? duckdb(storePath, rows, valueSize, groups, topN, parallelism)
+                  : rocksdb(storePath, rows, valueSize, groups, topN, parallelism);
+          double loadSeconds = (System.nanoTime() - start) / 1e9;
+          System.out.println(
+              "Engine: " + ENGINES[e] + ", rows: " + rows + ", loaded in " + loadSeconds + "s, "
+                  + Datasets.formatBytes(Datasets.sizeOf(new File(storePath))));
+          try {
+            for (int q = 0; q < QUERIES.length; q++) {
+              double best = Double.MAX_VALUE;
+              for (int r = 0; r < repeats; r++) {
+                long queryStart = System.nanoTime();
+                checksums[e][s][q] = engine.run(QUERIES[q]);
+                best = Math.min(best, (System.nanoTime() - queryStart) / 1e9);
+              }
+              rowsPerSecond[e][s][q] = rows / best;
+              System.out.println(
+                  "  " + QUERIES[q] + " rows/s: " + rowsPerSecond[e][s][q] + ", best of "
+                      + repeats + ": " + best * 1000 + "ms");
+            }
+          } finally {
+            engine.close();
+          }
+        } finally {
+          clean(storePath);
+        }
+      }
+    }
+
+    System.out.println();
+    System.out.println(
+        "Value size: " + valueSize + ", groups: " + groups + ", top N: " + topN
+            + ", parallelism: " + parallelism + ", repeats: " + repeats);
+    System.out.println(
+        String.format(
+            "%-6s %12s %16s %16s %-8s %-6s",
+            "query", "rows", "duckdb rows/s", "rocksdb rows/s", "faster", "match"));
+    for (int q = 0; q < QUERIES.length; q++) {
+      for (int s = 0; s < sizeList.length; s++) {
+        System.out.println(
+            String.format(
+                "%-6s %12s %16.0f %16.0f %-8s %-6s",
+                QUERIES[q],
+                sizeList[s].trim(),
+                rowsPerSecond[0][s][q],
+                rowsPerSecond[1][s][q],
+                faster(rowsPerSecond, s, q),
+                checksums[0][s][q] == checksums[1][s][q] ? "yes" : "NO"));
+      }
+    }
+    System.out.println("Crossover:");
+    for (int q = 0; q < QUERIES.length; q++) {
+      StringBuilder sb = new StringBuilder("  " + QUERIES[q] + ": ");
+      String previous = null;
+      for (int s = 0; s < sizeList.length; s++) {
+        String faster = faster(rowsPerSecond, s, q);
+        if (previous == null) {
+          sb.append(faster).append(" from ").append(sizeList[s].trim()).append(" rows");
+        } else if (!previous.equals(faster)) {
+          sb.append(", ").append(faster).append(" from ").append(sizeList[s].trim());
+          sb.append(" rows");
+        }
+        previous = faster;
+      }
+      System.out.println(sb);
+    }
+  }
+
+  /** Runs a query and returns a checksum of its result that both engines compute alike. */
+  private interface Engine extends AutoCloseable {
+    long run(String query) throws Exception;
+
+    @Override
+    void close() throws SQLException;
+  }
+
+  private static Engine duckdb(
+      String path, int rows, int valueSize, int groups, int topN, int parallelism)
+      throws SQLException {
+    Connection connection = DriverManager.getConnection("jdbc:duckdb:" + path);
+    Statement stmt = connection.createStatement();
+    stmt.execute("SET threads = " + parallelism);
+    stmt.execute(
+        "CREATE TABLE t AS SELECT i::INTEGER AS id, (i % " + groups + ")::INTEGER AS grp,"
+            + " i * 2654435761 % 1000003 AS amount, repeat('x', "
+            + (valueSize - RocksDBAggregator.PREFIX) + ")::BLOB AS pad FROM range(" + rows
+            + ") r(i)");
+    stmt.execute("CHECKPOINT");
+    return new Engine() {
+      @Override
+      public long run(String query) throws SQLException {
+        long checksum = 0;
+        switch (query) {
+          case "sum":
+            try (ResultSet rs =
+                stmt.executeQuery("SELECT SUM(amount)::BIGINT, COUNT(*) FROM t")) {
+              rs.next();
+              checksum = rs.getLong(1) * 31 + rs.getLong(2);
+            }
+            break;
+          case "group":
+            try (ResultSet rs =
+                stmt.executeQuery(
+                    "SELECT grp, SUM(amount)::BIGINT, COUNT(*) FROM t GROUP BY grp")) {
+              while (rs.next()) {
+                checksum += (rs.getInt(1) + 1) * (rs.getLong(2) * 31 + rs.getLong(3));
+              }
+            }
+            break;
+          case "topn":
+            try (ResultSet rs =
+                stmt.executeQuery("SELECT amount FROM t ORDER BY amount DESC LIMIT " + topN)) {
+              while (rs.next()) {
+                checksum = checksum * 31 + rs.getLong(1);
+              }
+            }
+            break;
+          default:
+            throw new IllegalArgumentException("Unknown query: " + query);
+        }
+        return checksum;
+      }
+
+      @Override
+      public void close() throws SQLException {
+        stmt.close();
+        connection.close();
+      }
+    };
+  }
+
+  private static Engine rocksdb(
+      String path, int rows, int valueSize, int groups, int topN, int parallelism)
+      throws Exception {
+    RocksDBStore store = new RocksDBStore(path);
+    int padding = valueSize - RocksDBAggregator.PREFIX;
+    store.bulkLoad(
+        0,
+        rows,
+        parallelism,
+        1000000,
+        id -> RocksDBAggregator.value(id % groups, id * 2654435761L % 1000003, padding));
+    ForkJoinPool pool = new ForkJoinPool(parallelism);
+    // a few leaves per worker, so stragglers can be balanced by stealing
+    int leafRows = Math.max(10000, rows / (parallelism * 8));
+    RocksDBAggregator aggregator =
+        new RocksDBAggregator(store.db(), pool, leafRows, groups, topN);
+    return new Engine() {
+      @Override
+      public long run(String query) {
+        RocksDBAggregator.Aggregate aggregate = aggregator.aggregate(0, rows);
+        long checksum = 0;
+        switch (query) {
+          case "sum":
+            checksum = aggregate.sum() * 31 + aggregate.rows();
+            break;
+          case "group":
+            for (int g = 0; g < groups; g++) {
+              if (aggregate.count(g) > 0) {
+                checksum += (g + 1) * (aggregate.sum(g) * 31 + aggregate.count(g));
+              }
+            }
+            break;
+          case "topn":
+            for (long amount : aggregate.top()) {
+              checksum = checksum * 31 + amount;
+            }
+            break;
+          default:
+            throw new IllegalArgumentException("Unknown query: " + query);
+        }
+        return checksum;
+      }
+
+      @Override
+      public void close() {
+        pool.shutdown();
+        store.close();
+      }
+    };
+  }
+
+  private static String faster(double[][][] rowsPerSecond, int size, int query) {
+    return rowsPerSecond[0][size][query] >= rowsPerSecond[1][size][query]
+        ? ENGINES[0]
+        : ENGINES[1];
+  }
+
+  private static void clean(String path) {
+    Datasets.delete(path);
+    Datasets.delete(path + ".wal");
+  }
+}
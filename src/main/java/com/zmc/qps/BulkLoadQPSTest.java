@@ -0,0 +1,264 @@
+package com.zmc.qps;
+
+import com.zmc.qps.store.DuckDBStore;
+import com.zmc.qps.store.KVStore;
+import com.zmc.qps.store.RocksDBStore;
+import com.zmc.qps.store.Stores;
+import com.zmc.qps.workload.ClosedLoopRunner;
+import com.zmc.qps.workload.Datasets;
+
+import org.apache.paimon.mergetree.PaimonKVStore;
+import org.duckdb.DuckDBAppender;
+import org.duckdb.DuckDBConnection;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Initial load of an empty store through each engine's bulk path, against its regular write
+ * path.
+ *
+ * <p>Methods: {@code duckdb-appender}, {@code duckdb-copy-csv}, {@code duckdb-copy-parquet},
+ * {@code duckdb-insert-parquet} ({@code INSERT ... SELECT FROM parquet_scan}), {@code
+ * rocksdb-batch} ({@code WriteBatch}), {@code rocksdb-sst} (parallel {@code SstFileWriter} plus
+ * {@code ingestExternalFile}), {@code paimon-buffer} (write buffer and level-0 flushes) and
+ * {@code paimon-bulk} (parallel rolling writers into the highest level). CSV and Parquet source
+ * files are prepared up front and not timed.
+ *
+ * <p>Reported per method: rows/s until the data is durable in the engine's files, seconds until
+ * the last key is readable, and read QPS right after the load. Values are ASCII so the same rows
+ * can go through CSV and the appender.
+ *
+ * <p>Usage: {@code BulkLoadQPSTest <path> <numRows> <methods> <threads> <rowsPerFile>
+ * <readSeconds> <valueSize>}
+ */
+public class BulkLoadQPSTest {
+
+  private static final String[] METHODS = {
+    "duckdb-appender",
+    "duckdb-copy-csv",
+    "duckdb-copy-parquet",
+    "duckdb-insert-parquet",
+    "rocksdb-batch",
+    "rocksdb-sst",
+    "paimon-buffer",
+    "paimon-bulk"
+  };
+  private static final int BATCH_SIZE = 10000;
+  // how long a loaded store may take to serve its last key before the method is failed
+  private static final long QUERYABLE_TIMEOUT_MILLIS = 60_000;
+
+  public static void main(String[] args) throws Exception {
+    String path = "/tmp/test_bulk";
+    int numRows = 10000000;
+    String methods = String.join(",", METHODS);
+    int threads = 8;
+    int rowsPerFile = 1000000;
+    int readSeconds = 10;
+    int valueSize = 100;
+    try {
+      path = args[0];
+      numRows = Integer.parseInt(args[1]);
+      methods = args[2];
+      threads = Integer.parseInt(args[3]);
+      rowsPerFile = Integer.parseInt(args[4]);
+      readSeconds = Integer.parseInt(args[5]);
+      valueSize = Integer.parseInt(args[6]);
+    } catch (ArrayIndexOutOfBoundsException e) {
+    }
+
+    File source = new File(path, "source");
+    File csv = new File(source, "rows.csv");
+    File parquet = new File(source, "rows.parquet");
+    if (methods.contains("duckdb-copy") || methods.contains("duckdb-insert")) {
+      prepareSources(source, csv, parquet, numRows, valueSize);
+    }
+
+    List<String> rows = new ArrayList<>();
+    for (String method : methods.split(",")) {
+      method = method.trim();
+      String engine = method.substring(0, method.indexOf('-'));
+      String storePath = path + "/" + method + ("duckdb".equals(engine) ? ".duckdb" : "");
+      Datasets.delete(storePath);
+      try (KVStore store = Stores.open(engine, storePath)) {
+        long start = System.nanoTime();
+        load(method, store, numRows, threads, rowsPerFile, valueSize, csv, parquet);
+        long deadline = System.nanoTime() + QUERYABLE_TIMEOUT_MILLIS * 1_000_000;
+        while (store.get(numRows - 1) == null) {
+          if (System.nanoTime() - deadline > 0) {
+            throw new IllegalStateException(
+                method + " did not serve key " + (numRows - 1) + " within "
+                    + QUERYABLE_TIMEOUT_MILLIS + "ms of loading it");
+          }
+          Thread.sleep(1);
+        }
+        double queryableSeconds = (System.nanoTime() - start) / 1e9;
+        store.flush();
+        double durableSeconds = (System.nanoTime() - start) / 1e9;
+        long dataBytes = Datasets.sizeOf(new File(storePath));
+
+        int probe = numRows / 2;
+        if (!Arrays.equals(value(probe, valueSize), store.get(probe))) {
+          throw new IllegalStateException(method + " returned a wrong value for key " + probe);
+        }
+        int keys = numRows;
+        ClosedLoopRunner.Result read =
+            ClosedLoopRunner.run(
+                method, threads, readSeconds * 1000L, random -> store.get(random.nextInt(keys)));
+
+        double loadQps = numRows / durableSeconds;
+        System.out.println("Method: " + method + ", data: " + Datasets.formatBytes(dataBytes));
+        System.out.println(
+            "  Load rows/s: " + loadQps + ", queryable after: " + queryableSeconds
+                + "s, durable after: " + durableSeconds + "s");
+        System.out.println("  Read QPS: " + read.qps() + ", latency: " + read.latency().summary());
+        rows.add(
+            String.format(
+                "%-22s %12.0f %12.2f %12.2f %10s %12.0f %10.1f",
+                method,
+                loadQps,
+                queryableSeconds,
+                durableSeconds,
+                Datasets.formatBytes(dataBytes),
+                read.qps(),
+                read.latency().percentile(99) / 1000.0));
+      } catch (Exception e) {
+        rows.add(String.format("%-22s failed: %s", method, Datasets.rootCause(e)));
+      }
+    }
+
+    System.out.println();
+    System.out.println(
+        "Rows: " + numRows + ", value size: " + valueSize + ", threads: " + threads
+            + ", rows per file: " + rowsPerFile);
+    System.out.println(
+        String.format(
+            "%-22s %12s %12s %12s %10s %12s %10s",
+            "method",
+            "load rows/s",
+            "queryable s",
+            "durable s",
+            "data",
+            "read QPS",
+            "read p99us"));
+    for (String row : rows) {
+      System.out.println(row);
+    }
+  }
+
+  private static void load(
+      String method,
+      KVStore store,
+      int numRows,
+      int threads,
+      int rowsPerFile,
+      int valueSize,
+      File csv,
+      File parquet)
+      throws IOException, SQLException {
+    switch (method) {
+      case "duckdb-appender":
+        try (DuckDBAppender appender =
+            ((DuckDBStore) store)
+                .connection()
+                .createAppender(DuckDBConnection.DEFAULT_SCHEMA, "kv")) {
+          for (int i = 0; i < numRows; i++) {
+            appender.beginRow();
+            appender.append(i);
+            // the appender has no BLOB append, ASCII text casts to the same bytes
+            appender.append(new String(value(i, valueSize), StandardCharsets.US_ASCII));
+            appender.endRow();
+          }
+        }
+        break;
+      case "duckdb-copy-csv":
+        execute(store, "COPY kv FROM '" + csv + "' (HEADER)");
+        break;
+      case "duckdb-copy-parquet":
+        execute(store, "COPY kv FROM '" + parquet + "' (FORMAT PARQUET)");
+        break;
+      case "duckdb-insert-parquet":
+        execute(store, "INSERT INTO kv SELECT * FROM parquet_scan('" + parquet + "')");
+        break;
+      case "rocksdb-sst":
+        ((RocksDBStore) store)
+            .bulkLoad(0, numRows, threads, rowsPerFile, i -> value(i, valueSize));
+        break;
+      case "paimon-bulk":
+        ((PaimonKVStore) store).bulkLoad(0, numRows, threads, i -> value(i, valueSize));
+        break;
+      case "rocksdb-batch":
+      case "paimon-buffer":
+        int[] keys = new int[BATCH_SIZE];
+        byte[][] values = new byte[BATCH_SIZE][];
+        int n = 0;
+        for (int i = 0; i < numRows; i++) {
+          keys[n] = i;
+          values[n] = value(i, valueSize);
+          if (++n == BATCH_SIZE || i == numRows - 1) {
+            store.putBatch(keys, values, n);
+            n = 0;
+          }
+        }
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown method: " + method);
+    }
+  }
+
+  private static void execute(KVStore store, String sql) throws SQLException {
+    try (Statement stmt = ((DuckDBStore) store).connection().createStatement()) {
+      stmt.execute(sql);
+    }
+  }
+
+  /** Writes the rows as CSV and converts that to Parquet with an in-memory DuckDB. */
+  private static void prepareSources(
+      File source, File csv, File parquet, int numRows, int valueSize)
+      throws IOException, SQLException {
+    Datasets.delete(source.getPath());
+    source.mkdirs();
+    try (BufferedWriter writer = new BufferedWriter(new FileWriter(csv), 1 << 20)) {
+      writer.write("id,value\n");
+      for (int i = 0; i < numRows; i++) {
+        writer.write(Integer.toString(i));
+        writer.write(',');
+        writer.write(new String(value(i, valueSize), StandardCharsets.US_ASCII));
+        writer.write('\n');
+      }
+    }
+    try (Connection connection = DriverManager.getConnection("jdbc:duckdb:");
+        Statement stmt = connection.createStatement()) {
+      stmt.execute(
+          "COPY (SELECT id, value::BLOB AS value FROM read_csv('"
+              + csv
+              + "', header = true, columns = {'id': 'INTEGER', 'value': 'VARCHAR'}))"
+              + " TO '"
+              + parquet
+              + "' (FORMAT PARQUET)");
+    }
+  }
+
+  /** Lowercase ASCII value of {@code key}, the same for every method. */
+  private static byte[] value(int key, int size) {
+    byte[] value = new byte[size];
+    long x = (key + 1) * 0x9E3779B97F4A7C15L;
+    for (int i = 0; i < size; i++) {
+      x ^= x << 13;
+      x ^= x >>> 7;
+      x ^= x << 17;
+      value[i] = (byte) ('a' + (int) ((x >>> 1) % 26));
+    }
+    return value;
+  }
+}
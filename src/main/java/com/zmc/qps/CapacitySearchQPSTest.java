@@ -0,0 +1,147 @@
+package com.zmc.qps;
+
+import com.zmc.qps.store.KVStore;
+import com.zmc.qps.store.Stores;
+import com.zmc.qps.workload.CapacitySearch;
+import com.zmc.qps.workload.ClosedLoopRunner;
+import com.zmc.qps.workload.Datasets;
+import com.zmc.qps.workload.OpenLoopRunner;
+import com.zmc.qps.workload.ValueGenerator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds the capacity of each engine: the highest open-loop rate at which a latency percentile
+ * stays under an SLO, see {@link CapacitySearch}. Every engine gets the same keys and values and
+ * the same read/write mix.
+ *
+ * <p>{@code mode} is {@code ramp[:factor]} (default factor 1.25) or {@code bisect[:precision]}
+ * (default 0.05). Every step prints its open-loop summary; the table reports the highest passing
+ * rate, the knee of the throughput/latency curve and why the search stopped.
+ *
+ * <p>Usage: {@code CapacitySearchQPSTest <engines|all> <path> <numKeys> <valueSize> <readPercent>
+ * <sloMicros> <percentile> <mode> <startQps> <maxQps> <stepSeconds> <threads> <fixed|poisson>},
+ * e.g. {@code all /tmp/capacity 1000000 100 100 1000 99 ramp:1.25 1000 10000000 10 64 poisson}
+ */
+public class CapacitySearchQPSTest {
+
+  public static void main(String[] args) throws Exception {
+    String engines = "all";
+    String path = "/tmp/test_capacity";
+    int numKeys = 1000000;
+    int valueSize = 100;
+    int readPercent = 100;
+    long sloMicros = 1000;
+    double percentile = 99;
+    String mode = "ramp";
+    double startQps = 1000;
+    double maxQps = 10000000;
+    int stepSeconds = 10;
+    int threads = 64;
+    OpenLoopRunner.Arrival arrival = OpenLoopRunner.Arrival.POISSON;
+    try {
+      engines = args[0];
+      path = args[1];
+      numKeys = Integer.parseInt(args[2]);
+      valueSize = Integer.parseInt(args[3]);
+      readPercent = Integer.parseInt(args[4]);
+      sloMicros = Long.parseLong(args[5]);
+      percentile = Double.parseDouble(args[6]);
+      mode = args[7];
+      startQps = Double.parseDouble(args[8]);
+      maxQps = Double.parseDouble(args[9]);
+      stepSeconds = Integer.parseInt(args[10]);
+      threads = Integer.parseInt(args[11]);
+      arrival = OpenLoopRunner.Arrival.valueOf(args[12].toUpperCase());
+    } catch (ArrayIndexOutOfBoundsException e) {
+    }
+    String[] modeParts = mode.split(":");
+    boolean bisect = "bisect".equals(modeParts[0]);
+    if (!bisect && !"ramp".equals(modeParts[0])) {
+      throw new IllegalArgumentException("Unknown mode: " + mode);
+    }
+    double modeParameter =
+        modeParts.length > 1 ? Double.parseDouble(modeParts[1]) : bisect ? 0.05 : 1.25;
+    ValueGenerator values = ValueGenerator.fixed(valueSize);
+    CapacitySearch search =
+        new CapacitySearch(
+            percentile, sloMicros * 1000, stepSeconds * 1000L, arrival, "pool", threads);
+
+    List<String> rows = new ArrayList<>();
+    String[] engineNames = "all".equals(engines) ? Stores.ENGINES : engines.split(",");
+    for (String engine : engineNames) {
+      engine = engine.trim();
+      String storePath = path + "/" + engine;
+      Datasets.delete(storePath);
+      try (KVStore store = Stores.open(engine, storePath)) {
+        Datasets.load(store, 0, numKeys, values);
+        int keys = numKeys;
+        int reads = readPercent;
+        ClosedLoopRunner.Operation operation =
+            random -> {
+              int key = random.nextInt(keys);
+              if (random.nextInt(100) < reads) {
+                store.get(key);
+              } else {
+                store.put(key, values.next(random));
+              }
+            };
+        List<CapacitySearch.Step> steps =
+            bisect
+                ? search.bisect(engine, startQps, maxQps, modeParameter, operation)
+                : search.ramp(engine, startQps, modeParameter, maxQps, operation);
+
+        System.out.println("Engine: " + engine);
+        for (CapacitySearch.Step step : steps) {
+          System.out.println("  " + step.verdict() + " " + step.result().summary());
+        }
+        CapacitySearch.Step best = CapacitySearch.maxSustainable(steps);
+        CapacitySearch.Step knee = search.knee(steps);
+        // lowest failing rate, steps are in rate order
+        String stop = "max QPS";
+        for (CapacitySearch.Step step : steps) {
+          if (step.verdict() != CapacitySearch.Verdict.OK) {
+            stop = step.verdict().toString();
+            break;
+          }
+        }
+        rows.add(
+            String.format(
+                "%-10s %6d %14.0f %12.1f %14.0f %12.1f %-14s",
+                engine,
+                steps.size(),
+                best == null ? 0 : best.result().completedQps(),
+                best == null ? Double.NaN : p(best, percentile),
+                knee == null ? Double.NaN : knee.result().completedQps(),
+                knee == null ? Double.NaN : p(knee, percentile),
+                stop));
+      } finally {
+        Datasets.delete(storePath);
+      }
+    }
+
+    System.out.println();
+    System.out.println(
+        "Keys: " + numKeys + ", value size: " + valueSize + ", read%: " + readPercent + ", SLO: p"
+            + percentile + " <= " + sloMicros + "us, mode: " + mode + ", step: " + stepSeconds
+            + "s, threads: " + threads + ", arrival: " + arrival);
+    System.out.println(
+        String.format(
+            "%-10s %6s %14s %12s %14s %12s %-14s",
+            "engine",
+            "steps",
+            "max QPS",
+            "p at max us",
+            "knee QPS",
+            "p at knee us",
+            "stopped by"));
+    for (String row : rows) {
+      System.out.println(row);
+    }
+  }
+
+  private static double p(CapacitySearch.Step step, double percentile) {
+    return step.result().latency().percentile(percentile) / 1000.0;
+  }
+}
@@ -0,0 +1,198 @@
+package com.zmc.qps;
+
+import com.zmc.qps.metrics.LatencyHistogram;
+import com.zmc.qps.store.KVStore;
+import com.zmc.qps.store.RocksDBStore;
+import com.zmc.qps.store.Stores;
+import com.zmc.qps.workload.ChildJvm;
+import com.zmc.qps.workload.Datasets;
+import com.zmc.qps.workload.ValueGenerator;
+
+import org.rocksdb.Options;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Reopening an existing store after a restart: open time, latency of the first query and how
+ * read latency recovers while caches warm up.
+ *
+ * <p>The store is loaded and closed in one child JVM and every mode reopens it in another, so no
+ * block cache, lookup file, JIT state or open file survives. Modes:
+ *
+ * <ul>
+ *   <li>{@code warm}: the OS page cache is left as it is
+ *   <li>{@code cold}: the page cache is dropped first, through {@code /proc/sys/vm/drop_caches}
+ *       when allowed, else per file with {@code dd iflag=nocache}, i.e. {@code posix_fadvise
+ *       DONTNEED}
+ *   <li>{@code direct}: {@code cold} and RocksDB reads with {@code use_direct_reads}, bypassing
+ *       the page cache; other engines run as {@code cold}
+ * </ul>
+ *
+ * <p>Query latency is reported for windows of growing size: the 1st query, the 2nd to 10th, the
+ * 11th to 100th and so on.
+ *
+ * <p>Usage: {@code ColdStartQPSTest <rocksdb|duckdb|paimon|all> <path> <numKeys> <valueSize>
+ * <queries> <modes>}, e.g. {@code all /data/cold 10000000 100 100000 warm,cold,direct}
+ */
+public class ColdStartQPSTest {
+
+  private static final String LOAD = "--load";
+  private static final String PROBE = "--probe";
+
+  public static void main(String[] args) throws Exception {
+    if (args.length > 0 && LOAD.equals(args[0])) {
+      load(args[1], args[2], Integer.parseInt(args[3]), Integer.parseInt(args[4]));
+      return;
+    }
+    if (args.length > 0 && PROBE.equals(args[0])) {
+      probe(args[1], args[2], Integer.parseInt(args[3]), Integer.parseInt(args[4]), args[5]);
+      return;
+    }
+
+    String engine = "rocksdb";
+    String path = null;
+    int numKeys = 1000000;
+    int valueSize = 100;
+    int queries = 100000;
+    String modes = "warm,cold,direct";
+    try {
+      engine = args[0];
+      path = args[1];
+      numKeys = Integer.parseInt(args[2]);
+      valueSize = Integer.parseInt(args[3]);
+      queries = Integer.parseInt(args[4]);
+      modes = args[5];
+    } catch (ArrayIndexOutOfBoundsException e) {
+    }
+
+    String[] engines = "all".equals(engine) ? Stores.ENGINES : new String[] {engine};
+    for (String e : engines) {
+      String storePath =
+          path == null ? Stores.defaultPath(e) : engines.length > 1 ? path + "/" + e : path;
+      if (!child(LOAD, e, storePath, String.valueOf(numKeys), String.valueOf(valueSize))) {
+        continue;
+      }
+      for (String mode : modes.split(",")) {
+        mode = mode.trim();
+        if (!"warm".equals(mode)) {
+          System.out.println("Page cache: " + dropCaches(new File(storePath)));
+        }
+        child(PROBE, e, storePath, String.valueOf(numKeys), String.valueOf(queries), mode);
+      }
+    }
+  }
+
+  private static boolean child(String... args) throws IOException, InterruptedException {
+    int exitCode = ChildJvm.run(ColdStartQPSTest.class, args);
+    if (exitCode != 0) {
+      System.out.println(args[0] + " " + args[1] + " failed with exit code " + exitCode);
+    }
+    return exitCode == 0;
+  }
+
+  private static void load(String engine, String path, int numKeys, int valueSize)
+      throws IOException {
+    Datasets.delete(path);
+    long start = System.nanoTime();
+    try (KVStore store = Stores.open(engine, path)) {
+      Datasets.load(store, 0, numKeys, ValueGenerator.fixed(valueSize));
+    }
+    System.out.println(
+        "Engine: " + engine + ", loaded " + numKeys + " keys in "
+            + (System.nanoTime() - start) / 1e9 + "s, data: "
+            + Datasets.formatBytes(Datasets.sizeOf(new File(path))));
+  }
+
+  private static void probe(String engine, String path, int numKeys, int queries, String mode)
+      throws IOException {
+    long jvmStartMillis = ManagementFactory.getRuntimeMXBean().getStartTime();
+    long start = System.nanoTime();
+    KVStore store =
+        "direct".equals(mode) && "rocksdb".equals(engine)
+            ? new RocksDBStore(new Options().setUseDirectReads(true), path)
+            : Stores.open(engine, path);
+    try {
+      double openMillis = (System.nanoTime() - start) / 1e6;
+
+      List<LatencyHistogram> windows = new ArrayList<>();
+      LatencyHistogram window = null;
+      long windowEnd = 0;
+      long misses = 0;
+      long firstResultMillis = 0;
+      ThreadLocalRandom random = ThreadLocalRandom.current();
+      for (long q = 1; q <= queries; q++) {
+        if (q > windowEnd) {
+          window = new LatencyHistogram();
+          windows.add(window);
+          windowEnd = windowEnd == 0 ? 1 : windowEnd * 10;
+        }
+        long queryStart = System.nanoTime();
+        if (store.get(random.nextInt(numKeys)) == null) {
+          misses++;
+        }
+        window.record(System.nanoTime() - queryStart);
+        if (q == 1) {
+          firstResultMillis = System.currentTimeMillis() - jvmStartMillis;
+        }
+      }
+
+      System.out.println("Engine: " + engine + ", mode: " + mode);
+      System.out.println(
+          "  Open ms: " + openMillis + ", JVM start to first result ms: " + firstResultMillis
+              + ", misses: " + misses);
+      long from = 1;
+      for (LatencyHistogram w : windows) {
+        long to = from + w.count() - 1;
+        System.out.println(String.format("  queries %8d-%-8d %s", from, to, w.summary()));
+        from = to + 1;
+      }
+    } finally {
+      store.close();
+    }
+  }
+
+  /** Evicts the files below {@code dir} from the page cache and says how. */
+  private static String dropCaches(File dir) throws IOException, InterruptedException {
+    new ProcessBuilder("sync").inheritIO().start().waitFor();
+    try {
+      Files.write(Paths.get("/proc/sys/vm/drop_caches"), "1".getBytes(StandardCharsets.US_ASCII));
+      return "dropped via /proc/sys/vm/drop_caches";
+    } catch (IOException | SecurityException e) {
+      // not root: advise the kernel per file instead
+    }
+    int failed = 0;
+    for (File file : files(dir, new ArrayList<>())) {
+      Process dd =
+          new ProcessBuilder(
+                  "dd", "if=" + file.getPath(), "iflag=nocache", "count=0", "status=none")
+              .inheritIO()
+              .start();
+      if (dd.waitFor() != 0) {
+        failed++;
+      }
+    }
+    return failed == 0
+        ? "dropped per file via posix_fadvise (dd iflag=nocache)"
+        : "could not drop " + failed + " files, reads may be warm";
+  }
+
+  private static List<File> files(File file, List<File> files) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        files(child, files);
+      }
+    } else if (file.isFile()) {
+      files.add(file);
+    }
+    return files;
+  }
+}
@@ -0,0 +1,614 @@
+package com.zmc.qps;
+
+import com.zmc.qps.store.RocksDBStore;
+import com.zmc.qps.workload.ClosedLoopRunner;
+import com.zmc.qps.workload.Datasets;
+import com.zmc.qps.workload.KeySchema;
+import com.zmc.qps.workload.ValueGenerator;
+
+import org.apache.paimon.data.BinaryRow;
+import org.apache.paimon.data.BinaryString;
+import org.apache.paimon.data.GenericRow;
+import org.apache.paimon.data.InternalRow;
+import org.apache.paimon.data.serializer.InternalRowSerializer;
+import org.apache.paimon.disk.IOManager;
+import org.apache.paimon.fs.FileIO;
+import org.apache.paimon.fs.Path;
+import org.apache.paimon.io.DataFileMeta;
+import org.apache.paimon.mergetree.PaimonUtils;
+import org.apache.paimon.predicate.Predicate;
+import org.apache.paimon.predicate.PredicateBuilder;
+import org.apache.paimon.reader.RecordReader;
+import org.apache.paimon.schema.Schema;
+import org.apache.paimon.schema.SchemaManager;
+import org.apache.paimon.table.FileStoreTable;
+import org.apache.paimon.table.FileStoreTableFactory;
+import org.apache.paimon.table.query.LocalTableQuery;
+import org.apache.paimon.table.sink.StreamTableCommit;
+import org.apache.paimon.table.sink.StreamTableWrite;
+import org.apache.paimon.table.sink.StreamWriteBuilder;
+import org.apache.paimon.table.source.DataSplit;
+import org.apache.paimon.table.source.ReadBuilder;
+import org.apache.paimon.table.source.Split;
+import org.apache.paimon.types.DataType;
+import org.apache.paimon.types.DataTypes;
+import org.apache.paimon.types.RowType;
+import org.duckdb.DuckDBConnection;
+import org.rocksdb.BlockBasedTableConfig;
+import org.rocksdb.BloomFilter;
+import org.rocksdb.FlushOptions;
+import org.rocksdb.Options;
+import org.rocksdb.ReadOptions;
+import org.rocksdb.RocksDB;
+import org.rocksdb.RocksIterator;
+import org.rocksdb.Statistics;
+import org.rocksdb.TickerType;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteOptions;
+
+import java.io.File;
+import java.sql.Blob;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+import java.util.function.LongSupplier;
+
+/**
+ * Point and prefix lookups with composite and variable-length keys, see {@link KeySchema}.
+ *
+ * <p>For every key schema and engine, keys of ids {@code [0, numKeys)} are loaded and three
+ * workloads run for a fixed time each: gets of existing keys, gets of missing keys (ids from
+ * {@code numKeys} on) and prefix queries that read all rows of a random group, e.g. a tenant.
+ * Keys and prefixes are generated and encoded for a random sample of ids and groups before each
+ * workload, so only the lookups themselves are timed.
+ *
+ * <ul>
+ *   <li>{@code rocksdb}: keys are the encoded bytes, with a 10 bits per key bloom filter over
+ *       whole keys. {@code prefixExtractors} adds {@code fixed} and {@code capped} prefix
+ *       extractors of the schema's prefix length, which also put prefixes into the bloom filter
+ *       and enable a memtable prefix bloom; prefix queries then iterate with {@code
+ *       prefix_same_as_start}. Without an extractor they seek in total order and stop at the
+ *       first key without the prefix. Bloom checks that ruled out a file are reported per missing
+ *       get.
+ *   <li>{@code duckdb}: a table with one column per key field and a composite {@code PRIMARY
+ *       KEY}; gets bind every key field, prefix queries only the prefix fields.
+ *   <li>{@code paimon}: a primary-key table whose key {@code RowType} has one field per key
+ *       field, fully compacted into one bucket. Gets go through {@link LocalTableQuery}, prefix
+ *       queries through a scan filtered on the prefix fields, which min/max statistics prune to
+ *       the files holding the group.
+ * </ul>
+ *
+ * <p>Schemas without a prefix run gets only, and on RocksDB without an extractor.
+ *
+ * <p>Usage: {@code CompositeKeyQPSTest <path> <numKeys> <valueSize> <keySchemas> <groups>
+ * <engines> <prefixExtractors> <threads> <durationSeconds>}, e.g. {@code /tmp/composite 1000000
+ * 100 int,long,uuid,string,binary,timestamp 1000 duckdb,rocksdb,paimon none,fixed,capped 4 10}
+ */
+public class CompositeKeyQPSTest {
+
+  private static final int BATCH_SIZE = 10000;
+
+  public static void main(String[] args) throws Exception {
+    String path = "/tmp/test_composite_key";
+    int numKeys = 1000000;
+    int valueSize = 100;
+    String keySchemas = "int,long,uuid,string,binary,timestamp";
+    int groups = 1000;
+    String engines = "duckdb,rocksdb,paimon";
+    String prefixExtractors = "none,fixed,capped";
+    int threads = 4;
+    int durationSeconds = 10;
+    try {
+      path = args[0];
+      numKeys = Integer.parseInt(args[1]);
+      valueSize = Integer.parseInt(args[2]);
+      keySchemas = args[3];
+      groups = Integer.parseInt(args[4]);
+      engines = args[5];
+      prefixExtractors = args[6];
+      threads = Integer.parseInt(args[7]);
+      durationSeconds = Integer.parseInt(args[8]);
+    } catch (ArrayIndexOutOfBoundsException e) {
+    }
+    ValueGenerator values = ValueGenerator.fixed(valueSize);
+    Run run = new Run(numKeys, threads, durationSeconds * 1000L);
+    new File(path).mkdirs();
+
+    List<String> rows = new ArrayList<>();
+    for (String spec : keySchemas.split(",")) {
+      KeySchema schema = KeySchema.parse(spec, groups);
+      long keyBytes = 0;
+      for (int id = 0; id < numKeys; id++) {
+        keyBytes += schema.key(id).length;
+      }
+      System.out.println(
+          "Key schema: " + schema + ", average key: " + (double) keyBytes / numKeys
+              + " bytes, prefix: " + schema.prefixLength() + " bytes");
+      for (String engine : engines.split(",")) {
+        engine = engine.trim();
+        String enginePath = path + "/" + schema + "-" + engine;
+        clean(enginePath);
+        switch (engine) {
+          case "rocksdb":
+            for (String extractor : prefixExtractors.split(",")) {
+              extractor = extractor.trim();
+              if (schema.prefixFields() == 0 && !"none".equals(extractor)) {
+                continue;
+              }
+              Datasets.delete(enginePath);
+              rows.add(rocksdb(run, schema, values, enginePath, extractor));
+            }
+            break;
+          case "duckdb":
+            rows.add(duckdb(run, schema, values, enginePath + ".duckdb"));
+            break;
+          case "paimon":
+            rows.add(paimon(run, schema, values, enginePath));
+            break;
+          default:
+            throw new IllegalArgumentException("Unknown engine: " + engine);
+        }
+        clean(enginePath);
+      }
+    }
+
+    System.out.println();
+    System.out.println(
+        "Keys: " + numKeys + ", groups: " + groups + ", value size: " + valueSize + ", threads: "
+            + threads);
+    System.out.println(
+        String.format(
+            "%-10s %-16s %8s %12s %10s %12s %12s %10s %10s %10s",
+            "key",
+            "engine",
+            "load s",
+            "get QPS",
+            "get p99us",
+            "miss QPS",
+            "prefix QPS",
+            "pfx p99us",
+            "rows/pfx",
+            "bloom/miss"));
+    for (String row : rows) {
+      System.out.println(row);
+    }
+  }
+
+  private static String rocksdb(
+      Run run, KeySchema schema, ValueGenerator values, String path, String extractor)
+      throws Exception {
+    RocksDBStore.loadLibrary();
+    new File(path).mkdirs();
+    Statistics statistics = new Statistics();
+    BlockBasedTableConfig tableConfig =
+        new BlockBasedTableConfig()
+            .setFilterPolicy(new BloomFilter(10))
+            .setWholeKeyFiltering(true);
+    Options options =
+        new Options()
+            .setCreateIfMissing(true)
+            .setStatistics(statistics)
+            .setTableFormatConfig(tableConfig);
+    if ("fixed".equals(extractor)) {
+      options.useFixedLengthPrefixExtractor(schema.prefixLength());
+    } else if ("capped".equals(extractor)) {
+      options.useCappedPrefixExtractor(schema.prefixLength());
+    } else if (!"none".equals(extractor)) {
+      throw new IllegalArgumentException("Unknown prefix extractor: " + extractor);
+    }
+    boolean prefixMode = !"none".equals(extractor);
+    if (prefixMode) {
+      options.setMemtablePrefixBloomSizeRatio(0.1);
+    }
+    try (RocksDB db = RocksDB.open(options, path);
+        WriteOptions writeOptions = new WriteOptions().setDisableWAL(true);
+        ReadOptions scanOptions = new ReadOptions().setPrefixSameAsStart(prefixMode)) {
+      long start = System.nanoTime();
+      Random random = new Random(0);
+      try (WriteBatch batch = new WriteBatch()) {
+        for (int id = 0; id < run.numKeys; id++) {
+          batch.put(schema.key(id), values.next(random));
+          if (batch.count() == BATCH_SIZE || id == run.numKeys - 1) {
+            db.write(writeOptions, batch);
+            batch.clear();
+          }
+        }
+      }
+      try (FlushOptions flushOptions = new FlushOptions().setWaitForFlush(true)) {
+        db.flush(flushOptions);
+      }
+      db.compactRange();
+      double loadSeconds = (System.nanoTime() - start) / 1e9;
+
+      return run.measure(
+          schema,
+          "rocksdb/" + extractor,
+          loadSeconds,
+          schema::key,
+          db::get,
+          schema::prefixKey,
+          (prefix, rows) -> {
+            try (RocksIterator iterator = db.newIterator(scanOptions)) {
+              for (iterator.seek(prefix);
+                  iterator.isValid() && startsWith(iterator.key(), prefix);
+                  iterator.next()) {
+                iterator.value();
+                rows.increment();
+              }
+            }
+          },
+          () ->
+              statistics.getTickerCount(TickerType.BLOOM_FILTER_USEFUL)
+                  + statistics.getTickerCount(TickerType.BLOOM_FILTER_PREFIX_USEFUL));
+    } finally {
+      options.close();
+      statistics.close();
+    }
+  }
+
+  private static String duckdb(Run run, KeySchema schema, ValueGenerator values, String path)
+      throws Exception {
+    StringBuilder columns = new StringBuilder();
+    StringBuilder keyColumns = new StringBuilder();
+    for (int i = 0; i < schema.size(); i++) {
+      columns.append(schema.name(i)).append(' ').append(schema.duckDBType(i)).append(", ");
+      keyColumns.append(i == 0 ? "" : ", ").append(schema.name(i));
+    }
+    String get = "SELECT value FROM kv WHERE " + predicate(schema, schema.size());
+    String prefix = "SELECT value FROM kv WHERE " + predicate(schema, schema.prefixFields());
+    List<Connection> connections = new CopyOnWriteArrayList<>();
+    try (DuckDBConnection connection =
+        (DuckDBConnection) DriverManager.getConnection("jdbc:duckdb:" + path)) {
+      try (Statement stmt = connection.createStatement()) {
+        stmt.execute(
+            "CREATE TABLE kv (" + columns + "value BLOB, PRIMARY KEY (" + keyColumns + "))");
+      }
+      long start = System.nanoTime();
+      Random random = new Random(0);
+      StringBuilder placeholders = new StringBuilder();
+      for (int i = 0; i <= schema.size(); i++) {
+        placeholders.append(i == 0 ? "?" : ", ?");
+      }
+      connection.setAutoCommit(false);
+      try (PreparedStatement insert =
+          connection.prepareStatement("INSERT INTO kv VALUES (" + placeholders + ")")) {
+        for (int id = 0; id < run.numKeys; id++) {
+          Object[] fields = schema.fields(id);
+          bind(insert, fields);
+          insert.setBytes(fields.length + 1, values.next(random));
+          insert.addBatch();
+          if ((id + 1) % BATCH_SIZE == 0 || id == run.numKeys - 1) {
+            insert.executeBatch();
+            connection.commit();
+          }
+        }
+      }
+      connection.setAutoCommit(true);
+      double loadSeconds = (System.nanoTime() - start) / 1e9;
+
+      // one connection per benchmark thread
+      ThreadLocal<PreparedStatement[]> statements =
+          ThreadLocal.withInitial(
+              () -> {
+                try {
+                  Connection c = connection.duplicate();
+                  connections.add(c);
+                  return new PreparedStatement[] {
+                    c.prepareStatement(get),
+                    schema.prefixFields() == 0 ? null : c.prepareStatement(prefix)
+                  };
+                } catch (Exception e) {
+                  throw new IllegalStateException(e);
+                }
+              });
+      return run.measure(
+          schema,
+          "duckdb",
+          loadSeconds,
+          schema::fields,
+          fields -> {
+            PreparedStatement stmt = statements.get()[0];
+            bind(stmt, fields);
+            try (ResultSet rs = stmt.executeQuery()) {
+              return rs.next() ? bytes(rs.getBlob(1)) : null;
+            }
+          },
+          schema::prefix,
+          (prefixFields, rows) -> {
+            PreparedStatement stmt = statements.get()[1];
+            bind(stmt, prefixFields);
+            try (ResultSet rs = stmt.executeQuery()) {
+              while (rs.next()) {
+                bytes(rs.getBlob(1));
+                rows.increment();
+              }
+            }
+          },
+          null);
+    } finally {
+      for (Connection c : connections) {
+        c.close();
+      }
+    }
+  }
+
+  private static String paimon(Run run, KeySchema schema, ValueGenerator values, String path)
+      throws Exception {
+    Path root = new Path(new File(path).toURI().toString());
+    FileIO fileIO = PaimonUtils.fileIO(root);
+    Schema.Builder builder = Schema.newBuilder();
+    String[] keyNames = new String[schema.size()];
+    DataType[] keyTypes = new DataType[schema.size()];
+    for (int i = 0; i < schema.size(); i++) {
+      keyNames[i] = schema.name(i);
+      keyTypes[i] = paimonType(schema.type(i));
+      builder.column(keyNames[i], keyTypes[i]);
+    }
+    new SchemaManager(fileIO, root)
+        .createTable(
+            builder
+                .column("value", DataTypes.BYTES())
+                .primaryKey(keyNames)
+                .option("bucket", "1")
+                .option("file.format", "avro")
+                .build());
+    FileStoreTable table = FileStoreTableFactory.create(fileIO, root);
+    RowType keyType = RowType.of(keyTypes, keyNames);
+
+    File tmpDir = new File(path + ".tmp");
+    tmpDir.mkdirs();
+    try (PaimonUtils.Resource<IOManager> io =
+        PaimonUtils.resource(IOManager.create(tmpDir.getPath()))) {
+      long start = System.nanoTime();
+      StreamWriteBuilder writeBuilder = table.newStreamWriteBuilder();
+      try (PaimonUtils.Resource<StreamTableWrite> write =
+              PaimonUtils.resource(writeBuilder.newWrite());
+          PaimonUtils.Resource<StreamTableCommit> commit =
+              PaimonUtils.resource(writeBuilder.newCommit())) {
+        write.get().withIOManager(io.get());
+        Random random = new Random(0);
+        for (int id = 0; id < run.numKeys; id++) {
+          Object[] fields = paimonFields(schema.fields(id), 1);
+          fields[fields.length - 1] = values.next(random);
+          write.get().write(GenericRow.of(fields));
+        }
+        write.get().compact(BinaryRow.EMPTY_ROW, 0, true);
+        commit.get().commit(0, write.get().prepareCommit(true, 0));
+      }
+      double loadSeconds = (System.nanoTime() - start) / 1e9;
+
+      InternalRowSerializer keySerializer = new InternalRowSerializer(keyType);
+      PredicateBuilder predicates = new PredicateBuilder(table.rowType());
+      try (LocalTableQuery query = new LocalTableQuery(table).withIOManager(io.get())) {
+        query.refreshFiles(BinaryRow.EMPTY_ROW, 0, Collections.emptyList(), files(table));
+        return run.measure(
+            schema,
+            "paimon",
+            loadSeconds,
+            // the serializer reuses its row, keys are generated on one thread and copied
+            id ->
+                keySerializer
+                    .toBinaryRow(GenericRow.of(paimonFields(schema.fields(id), 0)))
+                    .copy(),
+            key -> {
+              InternalRow row = query.lookup(BinaryRow.EMPTY_ROW, 0, key);
+              return row == null ? null : row.getBinary(schema.size());
+            },
+            group -> {
+              Object[] prefix = paimonFields(schema.prefix(group), 0);
+              List<Predicate> equals = new ArrayList<>();
+              for (int i = 0; i < prefix.length; i++) {
+                equals.add(predicates.equal(i, prefix[i]));
+              }
+              return PredicateBuilder.and(equals);
+            },
+            (filter, rows) -> {
+              ReadBuilder readBuilder = table.newReadBuilder().withFilter(filter);
+              try (RecordReader<InternalRow> reader =
+                  readBuilder
+                      .newRead()
+                      .executeFilter()
+                      .createReader(readBuilder.newScan().plan())) {
+                reader.forEachRemaining(row -> rows.increment());
+              }
+            },
+            null);
+      }
+    } finally {
+      Datasets.delete(tmpDir.getPath());
+    }
+  }
+
+  /** Lookup workloads shared by all engines. */
+  private static class Run {
+
+    // keys and prefixes generated ahead of each workload, drawn from at random while measuring
+    private static final int SAMPLE = 1 << 18;
+
+    private final int numKeys;
+    private final int threads;
+    private final long durationMillis;
+
+    private Run(int numKeys, int threads, long durationMillis) {
+      this.numKeys = numKeys;
+      this.threads = threads;
+      this.durationMillis = durationMillis;
+    }
+
+    /**
+     * Runs hits, misses and, if the schema has a prefix, prefix queries, prints them and returns
+     * a summary row. {@code key} and {@code prefix} turn ids and groups into what {@code get} and
+     * {@code prefixQuery} take; they run for a random sample of up to {@value #SAMPLE} ids and
+     * groups before measuring, so key generation is not timed. {@code bloomUseful}, if set,
+     * counts files a bloom filter ruled out.
+     */
+    private <K, P> String measure(
+        KeySchema schema,
+        String engine,
+        double loadSeconds,
+        IntFunction<K> key,
+        Get<K> get,
+        IntFunction<P> prefix,
+        PrefixQuery<P> prefixQuery,
+        LongSupplier bloomUseful)
+        throws Exception {
+      List<K> hitKeys = sample(key, 0, numKeys);
+      List<K> missKeys = sample(key, numKeys, Integer.MAX_VALUE);
+      String label = engine + "-" + schema;
+      ClosedLoopRunner.Result hits =
+          ClosedLoopRunner.run(
+              label + "-get",
+              threads,
+              durationMillis,
+              random -> get.get(hitKeys.get(random.nextInt(hitKeys.size()))));
+      long bloomBefore = bloomUseful == null ? 0 : bloomUseful.getAsLong();
+      ClosedLoopRunner.Result misses =
+          ClosedLoopRunner.run(
+              label + "-miss",
+              threads,
+              durationMillis,
+              random -> get.get(missKeys.get(random.nextInt(missKeys.size()))));
+      double bloomPerMiss =
+          bloomUseful == null
+              ? Double.NaN
+              : (double) (bloomUseful.getAsLong() - bloomBefore) / misses.latency().count();
+      ClosedLoopRunner.Result prefixes = null;
+      LongAdder prefixRows = new LongAdder();
+      if (schema.prefixFields() > 0) {
+        List<P> groupPrefixes = sample(prefix, 0, schema.groups());
+        prefixes =
+            ClosedLoopRunner.run(
+                label + "-prefix",
+                threads,
+                durationMillis,
+                random ->
+                    prefixQuery.run(
+                        groupPrefixes.get(random.nextInt(groupPrefixes.size())), prefixRows));
+      }
+
+      System.out.println(schema + " on " + engine + ": loaded in " + loadSeconds + "s");
+      System.out.println("  Get QPS: " + hits.qps() + ", latency: " + hits.latency().summary());
+      System.out.println(
+          "  Missing get QPS: " + misses.qps() + ", latency: " + misses.latency().summary());
+      if (prefixes != null) {
+        System.out.println(
+            "  Prefix QPS: " + prefixes.qps() + ", rows per prefix: "
+                + (double) prefixRows.sum() / prefixes.latency().count() + ", latency: "
+                + prefixes.latency().summary());
+      }
+      return String.format(
+          "%-10s %-16s %8.1f %12.0f %10.1f %12.0f %12.0f %10.1f %10.1f %10.2f",
+          schema,
+          engine,
+          loadSeconds,
+          hits.qps(),
+          hits.latency().percentile(99) / 1000.0,
+          misses.qps(),
+          prefixes == null ? Double.NaN : prefixes.qps(),
+          prefixes == null ? Double.NaN : prefixes.latency().percentile(99) / 1000.0,
+          prefixes == null ? Double.NaN : (double) prefixRows.sum() / prefixes.latency().count(),
+          bloomPerMiss);
+    }
+
+    /** {@code generate} applied to up to {@value #SAMPLE} random ids from {@code [from, to)}. */
+    private static <T> List<T> sample(IntFunction<T> generate, int from, int to) {
+      Random random = new Random(from);
+      int count = (int) Math.min(SAMPLE, (long) to - from);
+      List<T> sample = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        sample.add(generate.apply(from + random.nextInt(to - from)));
+      }
+      return sample;
+    }
+  }
+
+  private interface Get<K> {
+    byte[] get(K key) throws Exception;
+  }
+
+  private interface PrefixQuery<P> {
+    void run(P prefix, LongAdder rows) throws Exception;
+  }
+
+  private static void clean(String path) {
+    Datasets.delete(path);
+    Datasets.delete(path + ".duckdb");
+    Datasets.delete(path + ".duckdb.wal");
+  }
+
+  private static String predicate(KeySchema schema, int fields) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < fields; i++) {
+      sb.append(i == 0 ? "" : " AND ").append(schema.name(i)).append(" = ?");
+    }
+    return sb.toString();
+  }
+
+  private static void bind(PreparedStatement stmt, Object[] fields) throws Exception {
+    for (int i = 0; i < fields.length; i++) {
+      if (fields[i] instanceof byte[]) {
+        stmt.setBytes(i + 1, (byte[]) fields[i]);
+      } else {
+        stmt.setObject(i + 1, fields[i]);
+      }
+    }
+  }
+
+  private static byte[] bytes(Blob blob) throws SQLException {
+    return blob == null ? null : blob.getBytes(1, (int) blob.length());
+  }
+
+  private static DataType paimonType(KeySchema.Type type) {
+    switch (type) {
+      case INT:
+        return DataTypes.INT();
+      case BIGINT:
+        return DataTypes.BIGINT();
+      case STRING:
+        return DataTypes.STRING();
+      default:
+        return DataTypes.BYTES();
+    }
+  }
+
+  /** Key fields as Paimon internal values, followed by {@code extra} empty slots. */
+  private static Object[] paimonFields(Object[] fields, int extra) {
+    Object[] converted = new Object[fields.length + extra];
+    for (int i = 0; i < fields.length; i++) {
+      converted[i] =
+          fields[i] instanceof String ? BinaryString.fromString((String) fields[i]) : fields[i];
+    }
+    return converted;
+  }
+
+  /** Data files of the latest snapshot. */
+  private static List<DataFileMeta> files(FileStoreTable table) {
+    List<DataFileMeta> files = new ArrayList<>();
+    for (Split split : table.newSnapshotReader().read().splits()) {
+      files.addAll(((DataSplit) split).dataFiles());
+    }
+    return files;
+  }
+
+  private static boolean startsWith(byte[] key, byte[] prefix) {
+    if (key.length < prefix.length) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length; i++) {
+      if (key[i] != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -14,10 +14,16 @@ public class DuckDBAppendWriteQPSTest {
 
   public static void main(String[] args) {
     String path = "/tmp/test2.duckdb";
-    String url = "jdbc:duckdb:";
     int numQueries = 1000000;
+    try {
+      path = args[0];
+      numQueries = Integer.parseInt(args[1]);
+    } catch (ArrayIndexOutOfBoundsException e) {
+    }
+    // an empty path opens an in-memory database
+    String url = "jdbc:duckdb:" + path;
 
-    try (Connection connection = DriverManager.getConnection(url+path)) {
+    try (Connection connection = DriverManager.getConnection(url)) {
       // Create a test table
       try (Statement stmt = connection.createStatement()) {
         stmt.execute("CREATE TABLE IF NOT EXISTS test (id INTEGER, value DOUBLE)");
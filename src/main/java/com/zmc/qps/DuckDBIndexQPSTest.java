@@ -0,0 +1,267 @@
+package com.zmc.qps;
+
+import com.zmc.qps.workload.ClosedLoopRunner;
+import com.zmc.qps.workload.Datasets;
+
+import org.duckdb.DuckDBConnection;
+
+import java.io.File;
+import java.sql.Blob;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Point lookups on DuckDB for every combination of index and storage, so it is clear what a
+ * DuckDB lookup number measures.
+ *
+ * <p>Indexes:
+ *
+ * <ul>
+ *   <li>{@code none}: no index, rows in random order, so every lookup scans the whole table
+ *   <li>{@code pk}: {@code id INTEGER PRIMARY KEY}, the ART index is maintained while loading
+ *   <li>{@code art}: loaded without a key, then {@code CREATE INDEX} builds an ART index
+ *   <li>{@code sorted}: no index, rows loaded in {@code id} order, so zone maps (min/max per row
+ *       group) skip all row groups but one
+ * </ul>
+ *
+ * <p>Storages are {@code memory} (an in-memory database), {@code file} (a {@code .duckdb} file,
+ * checkpointed after loading) and {@code parquet}, a view over {@code read_parquet} of a file
+ * written with {@code COPY}, where Parquet row group statistics play the role of zone maps.
+ * Views cannot be indexed, so {@code pk} and {@code art} are skipped for {@code parquet}.
+ *
+ * <p>Rows are {@code (id INTEGER, value BLOB)} generated by DuckDB itself, so loading is not
+ * limited by JDBC. Reported per combination: load and index build time, the plan of the lookup
+ * ({@code index} if it has an {@code INDEX_SCAN}, otherwise {@code scan}), {@code ART_INDEX} and
+ * total memory from {@code duckdb_memory()}, size on disk and lookup QPS with {@code threads}
+ * threads, each on its own duplicated connection.
+ *
+ * <p>Usage: {@code DuckDBIndexQPSTest <path> <numKeys> <valueSize> <indexes> <storages> <threads>
+ * <durationSeconds>}, e.g. {@code /tmp/duckdb_index 1000000 100 none,pk,art,sorted
+ * memory,file,parquet 4 10}
+ */
+public class DuckDBIndexQPSTest {
+
+  public static void main(String[] args) throws Exception {
+    String path = "/tmp/test_duckdb_index";
+    int numKeys = 1000000;
+    int valueSize = 100;
+    String indexes = "none,pk,art,sorted";
+    String storages = "memory,file,parquet";
+    int threads = 4;
+    int durationSeconds = 10;
+    try {
+      path = args[0];
+      numKeys = Integer.parseInt(args[1]);
+      valueSize = Integer.parseInt(args[2]);
+      indexes = args[3];
+      storages = args[4];
+      threads = Integer.parseInt(args[5]);
+      durationSeconds = Integer.parseInt(args[6]);
+    } catch (ArrayIndexOutOfBoundsException e) {
+    }
+    new File(path).mkdirs();
+
+    List<String> rows = new ArrayList<>();
+    for (String storage : storages.split(",")) {
+      for (String index : indexes.split(",")) {
+        rows.add(
+            run(
+                storage.trim(),
+                index.trim(),
+                path,
+                numKeys,
+                valueSize,
+                threads,
+                durationSeconds * 1000L));
+      }
+    }
+
+    System.out.println();
+    System.out.println(
+        "Keys: " + numKeys + ", value size: " + valueSize + ", threads: " + threads
+            + ", duration: " + durationSeconds + "s");
+    System.out.println(
+        String.format(
+            "%-8s %-7s %-6s %8s %8s %10s %10s %10s %12s %10s",
+            "storage",
+            "index",
+            "plan",
+            "load s",
+            "index s",
+            "ART",
+            "memory",
+            "disk",
+            "lookup QPS",
+            "p99 us"));
+    for (String row : rows) {
+      System.out.println(row);
+    }
+  }
+
+  private static String run(
+      String storage,
+      String index,
+      String path,
+      int numKeys,
+      int valueSize,
+      int threads,
+      long durationMillis)
+      throws Exception {
+    if (!"none".equals(index)
+        && !"pk".equals(index)
+        && !"art".equals(index)
+        && !"sorted".equals(index)) {
+      throw new IllegalArgumentException("Unknown index: " + index);
+    }
+    String file;
+    switch (storage) {
+      case "memory":
+        file = null;
+        break;
+      case "file":
+        file = path + "/" + index + ".duckdb";
+        break;
+      case "parquet":
+        file = path + "/" + index + ".parquet";
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown storage: " + storage);
+    }
+    if ("parquet".equals(storage) && ("pk".equals(index) || "art".equals(index))) {
+      System.out.println("Storage: parquet, index: " + index + ": skipped, views have no index");
+      return String.format("%-8s %-7s n/a", storage, index);
+    }
+    clean(file);
+
+    // hex digits of md5(id), repeated up to the value size
+    String rows =
+        "SELECT i::INTEGER AS id, substr(repeat(md5(i::VARCHAR), "
+            + ((valueSize + 31) / 32)
+            + "), 1, "
+            + valueSize
+            + ")::BLOB AS value FROM range("
+            + numKeys
+            + ") t(i) ORDER BY "
+            + ("sorted".equals(index) ? "id" : "hash(i)");
+    List<Connection> connections = new CopyOnWriteArrayList<>();
+    String url = "jdbc:duckdb:" + ("file".equals(storage) ? file : "");
+    DuckDBConnection connection = (DuckDBConnection) DriverManager.getConnection(url);
+    try (Statement stmt = connection.createStatement()) {
+      long start = System.nanoTime();
+      if ("parquet".equals(storage)) {
+        stmt.execute("COPY (" + rows + ") TO '" + file + "' (FORMAT PARQUET)");
+        stmt.execute("CREATE VIEW kv AS SELECT * FROM read_parquet('" + file + "')");
+      } else if ("pk".equals(index)) {
+        stmt.execute("CREATE TABLE kv (id INTEGER PRIMARY KEY, value BLOB)");
+        stmt.execute("INSERT INTO kv " + rows);
+      } else {
+        stmt.execute("CREATE TABLE kv AS " + rows);
+      }
+      double loadSeconds = (System.nanoTime() - start) / 1e9;
+      start = System.nanoTime();
+      if ("art".equals(index)) {
+        stmt.execute("CREATE INDEX kv_id ON kv (id)");
+      }
+      double indexSeconds = (System.nanoTime() - start) / 1e9;
+      if ("file".equals(storage)) {
+        stmt.execute("CHECKPOINT");
+      }
+
+      String plan = "scan";
+      try (ResultSet rs = stmt.executeQuery("EXPLAIN SELECT value FROM kv WHERE id = 1")) {
+        while (rs.next()) {
+          if (rs.getString(2).contains("INDEX_SCAN")) {
+            plan = "index";
+          }
+        }
+      }
+      long artBytes = 0;
+      long memoryBytes = 0;
+      try (ResultSet rs =
+          stmt.executeQuery("SELECT tag, memory_usage_bytes FROM duckdb_memory()")) {
+        while (rs.next()) {
+          if ("ART_INDEX".equals(rs.getString(1))) {
+            artBytes = rs.getLong(2);
+          }
+          memoryBytes += rs.getLong(2);
+        }
+      }
+      long diskBytes = 0;
+      if (file != null) {
+        diskBytes = new File(file).length() + new File(file + ".wal").length();
+      }
+
+      // one connection per benchmark thread
+      ThreadLocal<PreparedStatement> lookups =
+          ThreadLocal.withInitial(
+              () -> {
+                try {
+                  Connection c = connection.duplicate();
+                  connections.add(c);
+                  return c.prepareStatement("SELECT value FROM kv WHERE id = ?");
+                } catch (SQLException e) {
+                  throw new IllegalStateException(e);
+                }
+              });
+      int keys = numKeys;
+      ClosedLoopRunner.Result lookup =
+          ClosedLoopRunner.run(
+              storage + "-" + index,
+              threads,
+              durationMillis,
+              random -> {
+                PreparedStatement get = lookups.get();
+                get.setInt(1, random.nextInt(keys));
+                try (ResultSet rs = get.executeQuery()) {
+                  if (!rs.next() || bytes(rs.getBlob(1)).length != valueSize) {
+                    throw new IllegalStateException("Missing or wrong value");
+                  }
+                }
+              });
+
+      System.out.println(
+          "Storage: " + storage + ", index: " + index + ", plan: " + plan + ", loaded "
+              + numKeys + " rows in " + loadSeconds + "s, index built in " + indexSeconds
+              + "s, ART: " + Datasets.formatBytes(artBytes) + ", memory: "
+              + Datasets.formatBytes(memoryBytes) + ", disk: " + Datasets.formatBytes(diskBytes));
+      System.out.println("  Lookup QPS: " + lookup.qps() + ", " + lookup.latency().summary());
+      return String.format(
+          "%-8s %-7s %-6s %8.2f %8.2f %10s %10s %10s %12.0f %10.1f",
+          storage,
+          index,
+          plan,
+          loadSeconds,
+          indexSeconds,
+          Datasets.formatBytes(artBytes),
+          Datasets.formatBytes(memoryBytes),
+          Datasets.formatBytes(diskBytes),
+          lookup.qps(),
+          lookup.latency().percentile(99) / 1000.0);
+    } finally {
+      for (Connection c : connections) {
+        c.close();
+      }
+      connection.close();
+      clean(file);
+    }
+  }
+
+  private static void clean(String file) {
+    if (file != null) {
+      Datasets.delete(file);
+      Datasets.delete(file + ".wal");
+    }
+  }
+
+  /** The DuckDB driver does not implement {@code ResultSet#getBytes}, so go through the blob. */
+  private static byte[] bytes(Blob blob) throws SQLException {
+    return blob.getBytes(1, (int) blob.length());
+  }
+}
@@ -0,0 +1,208 @@
+package com.zmc.qps;
+
+import com.zmc.qps.metrics.LatencyHistogram;
+import com.zmc.qps.workload.Datasets;
+
+import org.duckdb.DuckDBAppender;
+import org.duckdb.DuckDBConnection;
+
+import java.io.File;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Parallel version of {@link DuckDBAppendWriteQPSTest}: N threads, each with a {@link
+ * DuckDBConnection#duplicate() duplicated} connection and its own {@link DuckDBAppender}.
+ *
+ * <p>In {@code single} mode all appenders write to the same table. In {@code staging} mode every
+ * thread writes its own table and the staging tables are merged with one {@code INSERT ...
+ * SELECT} at the end. Every appender flush commits, and DuckDB commits one writer at a time, so
+ * the flush latency distribution shows how much the threads wait for each other; appending rows
+ * between flushes runs in parallel.
+ *
+ * <p>Usage: {@code DuckDBParallelAppendQPSTest <path> <numRows> <threadCounts>
+ * <single|staging|both> <flushEvery> <targetRowsPerSecond>}, e.g. {@code /tmp/append 10000000
+ * 1,2,4,8,16 both 100000 2000000}
+ */
+public class DuckDBParallelAppendQPSTest {
+
+  private static final String TABLE = "test";
+
+  public static void main(String[] args) throws Exception {
+    String path = "/tmp/test_append";
+    int numRows = 10000000;
+    String threadCounts = "1,2,4,8";
+    String mode = "both";
+    int flushEvery = 100000;
+    double target = 2000000;
+    try {
+      path = args[0];
+      numRows = Integer.parseInt(args[1]);
+      threadCounts = args[2];
+      mode = args[3];
+      flushEvery = Integer.parseInt(args[4]);
+      target = Double.parseDouble(args[5]);
+    } catch (ArrayIndexOutOfBoundsException e) {
+    }
+    new File(path).mkdirs();
+    String[] modes =
+        "both".equals(mode) ? new String[] {"single", "staging"} : new String[] {mode};
+
+    List<String> rows = new ArrayList<>();
+    for (String m : modes) {
+      double baseline = 0;
+      for (String count : threadCounts.split(",")) {
+        int threads = Integer.parseInt(count.trim());
+        String dbPath = path + "/" + m + "-" + threads + ".duckdb";
+        Datasets.delete(dbPath);
+        try (DuckDBConnection connection =
+            (DuckDBConnection) DriverManager.getConnection("jdbc:duckdb:" + dbPath)) {
+          execute(connection, "CREATE TABLE " + TABLE + " (id INTEGER, value DOUBLE)");
+          boolean staging = "staging".equals(m);
+          if (staging) {
+            for (int t = 0; t < threads; t++) {
+              execute(
+                  connection, "CREATE TABLE " + TABLE + "_" + t + " (id INTEGER, value DOUBLE)");
+            }
+          }
+
+          long start = System.nanoTime();
+          LatencyHistogram flushes = append(connection, threads, numRows, flushEvery, staging);
+          double appendSeconds = (System.nanoTime() - start) / 1e9;
+          double mergeSeconds = 0;
+          if (staging) {
+            long mergeStart = System.nanoTime();
+            StringBuilder merge = new StringBuilder("INSERT INTO " + TABLE + " ");
+            for (int t = 0; t < threads; t++) {
+              merge.append(t == 0 ? "" : " UNION ALL ").append("SELECT * FROM ").append(TABLE);
+              merge.append('_').append(t);
+            }
+            execute(connection, merge.toString());
+            for (int t = 0; t < threads; t++) {
+              execute(connection, "DROP TABLE " + TABLE + "_" + t);
+            }
+            mergeSeconds = (System.nanoTime() - mergeStart) / 1e9;
+          }
+          double totalSeconds = (System.nanoTime() - start) / 1e9;
+          long loaded = count(connection);
+          if (loaded != numRows) {
+            throw new IllegalStateException("Expected " + numRows + " rows, found " + loaded);
+          }
+
+          double qps = numRows / totalSeconds;
+          // speedup is relative to the first thread count
+          if (baseline == 0) {
+            baseline = qps;
+          }
+          // flush time summed over all threads, relative to the time the threads ran
+          double flushShare = flushes.mean() * flushes.count() / 1e9 / (appendSeconds * threads);
+          System.out.println("Mode: " + m + ", threads: " + threads);
+          System.out.println(
+              "  Write QPS: " + qps + ", append: " + appendSeconds + "s, merge: " + mergeSeconds
+                  + "s");
+          System.out.println("  Flush latency: " + flushes.summary());
+          rows.add(
+              String.format(
+                  "%-8s %8d %12.0f %8.2fx %10.2f %10.2f %10.1f %10.1f %9.1f%% %7s",
+                  m,
+                  threads,
+                  qps,
+                  qps / baseline,
+                  appendSeconds,
+                  mergeSeconds,
+                  flushes.percentile(50) / 1000.0,
+                  flushes.percentile(99) / 1000.0,
+                  100 * flushShare,
+                  qps >= target ? "yes" : "no"));
+        }
+      }
+    }
+
+    System.out.println();
+    System.out.println(
+        "Rows: " + numRows + ", flush every: " + flushEvery + " rows, target: " + target
+            + " rows/s");
+    System.out.println(
+        String.format(
+            "%-8s %8s %12s %9s %10s %10s %10s %10s %10s %7s",
+            "mode",
+            "threads",
+            "rows/s",
+            "speedup",
+            "append s",
+            "merge s",
+            "flush p50us",
+            "flush p99us",
+            "in flush",
+            "target"));
+    for (String row : rows) {
+      System.out.println(row);
+    }
+  }
+
+  /** Appends {@code numRows} rows split across {@code threads} appenders, returns flush times. */
+  private static LatencyHistogram append(
+      DuckDBConnection connection, int threads, int numRows, int flushEvery, boolean staging)
+      throws Exception {
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    List<Future<LatencyHistogram>> futures = new ArrayList<>();
+    try {
+      for (int t = 0; t < threads; t++) {
+        int from = (int) ((long) numRows * t / threads);
+        int to = (int) ((long) numRows * (t + 1) / threads);
+        String table = staging ? TABLE + "_" + t : TABLE;
+        futures.add(
+            pool.submit(
+                () -> {
+                  LatencyHistogram flushes = new LatencyHistogram();
+                  ThreadLocalRandom random = ThreadLocalRandom.current();
+                  try (DuckDBConnection c = (DuckDBConnection) connection.duplicate();
+                      DuckDBAppender appender =
+                          c.createAppender(DuckDBConnection.DEFAULT_SCHEMA, table)) {
+                    for (int i = from; i < to; i++) {
+                      appender.beginRow();
+                      appender.append(i);
+                      appender.append(random.nextDouble());
+                      appender.endRow();
+                      if ((i - from + 1) % flushEvery == 0 || i == to - 1) {
+                        long start = System.nanoTime();
+                        appender.flush();
+                        flushes.record(System.nanoTime() - start);
+                      }
+                    }
+                  }
+                  return flushes;
+                }));
+      }
+      LatencyHistogram flushes = new LatencyHistogram();
+      for (Future<LatencyHistogram> future : futures) {
+        flushes.add(future.get());
+      }
+      return flushes;
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  private static void execute(DuckDBConnection connection, String sql) throws SQLException {
+    try (Statement stmt = connection.createStatement()) {
+      stmt.execute(sql);
+    }
+  }
+
+  private static long count(DuckDBConnection connection) throws SQLException {
+    try (Statement stmt = connection.createStatement();
+        ResultSet rs = stmt.executeQuery("SELECT count(*) FROM " + TABLE)) {
+      rs.next();
+      return rs.getLong(1);
+    }
+  }
+}
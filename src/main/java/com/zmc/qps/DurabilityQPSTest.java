@@ -0,0 +1,258 @@
+package com.zmc.qps;
+
+import com.zmc.qps.metrics.LatencyHistogram;
+import com.zmc.qps.store.DuckDBStore;
+import com.zmc.qps.store.KVStore;
+import com.zmc.qps.store.RocksDBStore;
+import com.zmc.qps.workload.Datasets;
+import com.zmc.qps.workload.ValueGenerator;
+
+import org.rocksdb.Options;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.Statistics;
+import org.rocksdb.TickerType;
+import org.rocksdb.WriteOptions;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What each durability level costs: a single writer commits batches of new rows for a fixed time
+ * and records the latency of every commit.
+ *
+ * <p>Modes, from least to most durable per engine:
+ *
+ * <ul>
+ *   <li>{@code rocksdb-nowal}: {@code WriteOptions.setDisableWAL(true)}
+ *   <li>{@code rocksdb-wal}: default, WAL written but left to the OS to sync
+ *   <li>{@code rocksdb-flushwal}: {@code manual_wal_flush} and {@code flushWal(true)} every
+ *       {@code syncEvery} commits, i.e. group sync
+ *   <li>{@code rocksdb-sync}: {@code WriteOptions.setSync(true)}, one WAL sync per commit
+ *   <li>{@code duckdb-nocheckpoint}: {@code checkpoint_threshold} so large that only the WAL is
+ *       written
+ *   <li>{@code duckdb-autocheckpoint}: {@code checkpoint_threshold} of {@code thresholdMB}
+ *   <li>{@code duckdb-checkpoint}: no automatic checkpoints, explicit {@code CHECKPOINT} every
+ *       {@code syncEvery} commits
+ * </ul>
+ *
+ * <p>A batch size of 1 commits every row on its own. Syncs per second come from RocksDB's {@code
+ * WAL_FILE_SYNCED} ticker. The DuckDB driver exposes no counters, so for DuckDB they are counted
+ * as one WAL sync per commit plus one per explicit checkpoint.
+ *
+ * <p>Usage: {@code DurabilityQPSTest <path> <modes> <batchSizes> <durationSeconds> <valueSize>
+ * <syncEvery> <thresholdMB>}, e.g. {@code /tmp/durability
+ * rocksdb-nowal,rocksdb-sync,duckdb-checkpoint 1,100 10 100 16 16}
+ */
+public class DurabilityQPSTest {
+
+  private static final String[] MODES = {
+    "duckdb-nocheckpoint",
+    "duckdb-autocheckpoint",
+    "duckdb-checkpoint",
+    "rocksdb-nowal",
+    "rocksdb-wal",
+    "rocksdb-flushwal",
+    "rocksdb-sync"
+  };
+
+  public static void main(String[] args) throws Exception {
+    String path = "/tmp/test_durability";
+    String modes = String.join(",", MODES);
+    String batchSizes = "1,100";
+    int durationSeconds = 10;
+    int valueSize = 100;
+    int syncEvery = 16;
+    int thresholdMB = 16;
+    try {
+      path = args[0];
+      modes = args[1];
+      batchSizes = args[2];
+      durationSeconds = Integer.parseInt(args[3]);
+      valueSize = Integer.parseInt(args[4]);
+      syncEvery = Integer.parseInt(args[5]);
+      thresholdMB = Integer.parseInt(args[6]);
+    } catch (ArrayIndexOutOfBoundsException e) {
+    }
+    new File(path).mkdirs();
+    ValueGenerator values = ValueGenerator.fixed(valueSize);
+    long durationNanos = TimeUnit.SECONDS.toNanos(durationSeconds);
+
+    Map<String, Double> rowsPerSecond = new LinkedHashMap<>();
+    Map<String, String> rows = new LinkedHashMap<>();
+    for (String mode : modes.split(",")) {
+      mode = mode.trim();
+      for (String size : batchSizes.split(",")) {
+        int batchSize = Integer.parseInt(size.trim());
+        String storePath = path + "/" + mode + "-" + batchSize;
+        Datasets.delete(storePath);
+        Statistics statistics = null;
+        if (mode.startsWith("rocksdb-")) {
+          RocksDBStore.loadLibrary();
+          statistics = new Statistics();
+        }
+        try (KVStore store = open(mode, storePath, statistics, thresholdMB)) {
+          LatencyHistogram latency = new LatencyHistogram();
+          int[] keys = new int[batchSize];
+          byte[][] batch = new byte[batchSize][];
+          ThreadLocalRandom random = ThreadLocalRandom.current();
+          long syncs = 0;
+          int nextKey = 0;
+          long commits = 0;
+          long start = System.nanoTime();
+          long now = start;
+          while (now - start < durationNanos) {
+            for (int i = 0; i < batchSize; i++) {
+              keys[i] = nextKey++;
+              batch[i] = values.next(random);
+            }
+            if (batchSize == 1) {
+              store.put(keys[0], batch[0]);
+            } else {
+              store.putBatch(keys, batch, batchSize);
+            }
+            commits++;
+            if (commits % syncEvery == 0) {
+              if ("rocksdb-flushwal".equals(mode)) {
+                flushWal((RocksDBStore) store);
+              } else if ("duckdb-checkpoint".equals(mode)) {
+                store.flush();
+                syncs++;
+              }
+            }
+            long end = System.nanoTime();
+            latency.record(end - now);
+            now = end;
+          }
+          double seconds = (now - start) / 1e9;
+          if (statistics != null) {
+            syncs = statistics.getTickerCount(TickerType.WAL_FILE_SYNCED);
+          } else {
+            syncs += commits;
+          }
+
+          double commitQps = commits / seconds;
+          double rowQps = (double) commits * batchSize / seconds;
+          String key = mode + "/" + batchSize;
+          rowsPerSecond.put(key, rowQps);
+          System.out.println("Mode: " + mode + ", batch size: " + batchSize);
+          System.out.println(
+              "  Commit QPS: " + commitQps + ", rows/s: " + rowQps + ", syncs/s: "
+                  + syncs / seconds);
+          System.out.println("  Commit latency: " + latency.summary());
+          rows.put(
+              key,
+              String.format(
+                  "%-22s %6d %12.0f %12.0f %10.0f %10.1f %10.1f %10.1f",
+                  mode,
+                  batchSize,
+                  commitQps,
+                  rowQps,
+                  syncs / seconds,
+                  latency.percentile(50) / 1000.0,
+                  latency.percentile(99) / 1000.0,
+                  latency.percentile(99.9) / 1000.0));
+        } catch (Exception e) {
+          rows.put(
+              mode + "/" + batchSize,
+              String.format("%-22s %6d failed: %s", mode, batchSize, e));
+        } finally {
+          if (statistics != null) {
+            statistics.close();
+          }
+        }
+      }
+    }
+
+    System.out.println();
+    System.out.println(
+        "Duration: " + durationSeconds + "s, value size: " + valueSize + ", sync every: "
+            + syncEvery + " commits, checkpoint threshold: " + thresholdMB + "MB");
+    System.out.println(
+        String.format(
+            "%-22s %6s %12s %12s %10s %10s %10s %10s %9s",
+            "mode",
+            "batch",
+            "commits/s",
+            "rows/s",
+            "syncs/s",
+            "p50 us",
+            "p99 us",
+            "p999 us",
+            "of best"));
+    for (Map.Entry<String, String> row : rows.entrySet()) {
+      Double qps = rowsPerSecond.get(row.getKey());
+      Double best = qps == null ? null : best(rowsPerSecond, row.getKey());
+      System.out.println(
+          row.getValue() + (qps == null ? "" : String.format(" %8.1f%%", 100 * qps / best)));
+    }
+  }
+
+  /** Fastest rows/s of the same engine and batch size, the throughput durability is paid from. */
+  private static double best(Map<String, Double> rowsPerSecond, String key) {
+    String engine = key.substring(0, key.indexOf('-'));
+    String batchSize = key.substring(key.indexOf('/'));
+    double best = 0;
+    for (Map.Entry<String, Double> e : rowsPerSecond.entrySet()) {
+      if (e.getKey().startsWith(engine + "-") && e.getKey().endsWith(batchSize)) {
+        best = Math.max(best, e.getValue());
+      }
+    }
+    return best;
+  }
+
+  private static KVStore open(String mode, String path, Statistics statistics, int thresholdMB)
+      throws IOException, SQLException {
+    if (mode.startsWith("rocksdb-")) {
+      Options options = new Options().setCreateIfMissing(true).setStatistics(statistics);
+      WriteOptions writeOptions = new WriteOptions();
+      switch (mode) {
+        case "rocksdb-nowal":
+          writeOptions.setDisableWAL(true);
+          break;
+        case "rocksdb-flushwal":
+          options.setManualWalFlush(true);
+          break;
+        case "rocksdb-sync":
+          writeOptions.setSync(true);
+          break;
+        case "rocksdb-wal":
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown mode: " + mode);
+      }
+      return new RocksDBStore(options, writeOptions, path);
+    }
+
+    String threshold;
+    switch (mode) {
+      case "duckdb-autocheckpoint":
+        threshold = thresholdMB + "MB";
+        break;
+      case "duckdb-nocheckpoint":
+      case "duckdb-checkpoint":
+        threshold = "1000GB";
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown mode: " + mode);
+    }
+    DuckDBStore store = new DuckDBStore(path);
+    try (Statement stmt = store.connection().createStatement()) {
+      stmt.execute("SET checkpoint_threshold = '" + threshold + "'");
+    }
+    return store;
+  }
+
+  private static void flushWal(RocksDBStore store) throws IOException {
+    try {
+      store.db().flushWal(true);
+    } catch (RocksDBException e) {
+      throw new IOException(e);
+    }
+  }
+}
@@ -0,0 +1,422 @@
+package com.zmc.qps;
+
+import com.zmc.qps.store.DuckDBStore;
+import com.zmc.qps.store.KVStore;
+import com.zmc.qps.store.RocksDBStore;
+import com.zmc.qps.workload.ChildJvm;
+import com.zmc.qps.workload.ClosedLoopRunner;
+import com.zmc.qps.workload.Datasets;
+import com.zmc.qps.workload.ValueGenerator;
+
+import org.apache.paimon.CoreOptions;
+import org.apache.paimon.mergetree.PaimonKVStore;
+import org.rocksdb.BlockBasedTableConfig;
+import org.rocksdb.BloomFilter;
+import org.rocksdb.CompressionType;
+import org.rocksdb.Options;
+import org.rocksdb.RocksDBException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * How much disk and memory each engine needs per key, for several value sizes and compression
+ * settings.
+ *
+ * <p>Every configuration is loaded in a fresh JVM, read for a while so indexes, filters and
+ * Paimon lookup files are in place, and then measured:
+ *
+ * <ul>
+ *   <li>bytes on disk per row, split by kind: RocksDB SST, WAL and other files, the {@code
+ *       .duckdb} file and its WAL, the Parquet file, Paimon data and lookup files
+ *   <li>resident memory (VmRSS) and Java heap per key, relative to the JVM before the store was
+ *       opened
+ *   <li>index and filter memory: RocksDB {@code rocksdb.estimate-table-readers-mem} and DuckDB
+ *       {@code ART_INDEX} from {@code duckdb_memory()}
+ * </ul>
+ *
+ * <p>Compression is {@code none}, {@code snappy}, {@code lz4} or {@code zstd}: the RocksDB
+ * compression type, the Parquet codec and the Paimon Avro codec. DuckDB picks its own compression
+ * per column, so it only tells {@code none} (forced uncompressed) from everything else. Avro has
+ * no {@code lz4} codec, so Paimon is skipped for it. {@code
+ * parquet} is the DuckDB table exported with {@code COPY}, only its file is measured. Values are
+ * random bytes, of which the last {@code compressiblePercent} are zeros.
+ *
+ * <p>Usage: {@code FootprintQPSTest <path> <numKeys> <engines> <valueSizes> <compressions>
+ * <compressiblePercent> <readSeconds>}, e.g. {@code /tmp/footprint 1000000
+ * duckdb,parquet,rocksdb,paimon 16,100,1000 none,snappy,zstd 50 5}
+ */
+public class FootprintQPSTest {
+
+  private static final String MEASURE = "--measure";
+  // marks the summary line a measuring JVM prints for the parent
+  private static final String ROW = "footprint|";
+
+  public static void main(String[] args) throws Exception {
+    if (args.length > 0 && MEASURE.equals(args[0])) {
+      measure(
+          args[1],
+          args[2],
+          Integer.parseInt(args[3]),
+          Integer.parseInt(args[4]),
+          args[5],
+          Integer.parseInt(args[6]),
+          Integer.parseInt(args[7]));
+      return;
+    }
+
+    String path = "/tmp/test_footprint";
+    int numKeys = 1000000;
+    String engines = "duckdb,parquet,rocksdb,paimon";
+    String valueSizes = "16,100,1000";
+    String compressions = "none,snappy,zstd";
+    int compressible = 50;
+    int readSeconds = 5;
+    try {
+      path = args[0];
+      numKeys = Integer.parseInt(args[1]);
+      engines = args[2];
+      valueSizes = args[3];
+      compressions = args[4];
+      compressible = Integer.parseInt(args[5]);
+      readSeconds = Integer.parseInt(args[6]);
+    } catch (ArrayIndexOutOfBoundsException e) {
+    }
+    new File(path).mkdirs();
+
+    List<String> rows = new ArrayList<>();
+    for (String engine : engines.split(",")) {
+      engine = engine.trim();
+      for (String size : valueSizes.split(",")) {
+        int valueSize = Integer.parseInt(size.trim());
+        for (String compression : compressions.split(",")) {
+          compression = compression.trim();
+          if ("paimon".equals(engine) && avroCodec(compression) == null) {
+            System.out.println(
+                "Engine: paimon, compression: " + compression + ": skipped, no such Avro codec");
+            rows.add(
+                String.format(
+                    "%-8s %6d %-7s skipped, no such Avro codec", engine, valueSize, compression));
+            continue;
+          }
+          String storePath = path + "/" + engine + "-" + valueSize + "-" + compression;
+          List<String> row = new ArrayList<>();
+          int exitCode =
+              ChildJvm.run(
+                  FootprintQPSTest.class,
+                  line -> {
+                    if (line.startsWith(ROW)) {
+                      row.add(line.substring(ROW.length()));
+                    } else if (!line.startsWith("SLF4J")) {
+                      System.out.println(line);
+                    }
+                  },
+                  MEASURE,
+                  engine,
+                  storePath,
+                  String.valueOf(numKeys),
+                  String.valueOf(valueSize),
+                  compression,
+                  String.valueOf(compressible),
+                  String.valueOf(readSeconds));
+          rows.add(
+              row.isEmpty()
+                  ? String.format(
+                      "%-8s %6d %-7s failed with exit code %d",
+                      engine, valueSize, compression, exitCode)
+                  : row.get(0));
+          Datasets.delete(storePath);
+        }
+      }
+    }
+
+    System.out.println();
+    System.out.println(
+        "Keys: " + numKeys + ", compressible: " + compressible + "%, read: " + readSeconds
+            + "s");
+    System.out.println(
+        String.format(
+            "%-8s %6s %-7s %10s %10s %6s %10s %10s %12s %10s",
+            "engine",
+            "value",
+            "codec",
+            "disk B/row",
+            "raw B/row",
+            "ratio",
+            "rss B/key",
+            "heap B/key",
+            "index+filter",
+            "read QPS"));
+    for (String row : rows) {
+      System.out.println(row);
+    }
+  }
+
+  private static void measure(
+      String engine,
+      String path,
+      int numKeys,
+      int valueSize,
+      String compression,
+      int compressible,
+      int readSeconds)
+      throws Exception {
+    ValueGenerator values = ValueGenerator.fixed(valueSize).compressible(compressible);
+    // 4-byte key plus value
+    double rawPerRow = 4 + valueSize;
+    Datasets.delete(path);
+
+    if ("parquet".equals(engine)) {
+      String parquet = path + ".parquet";
+      new File(parquet).delete();
+      try (DuckDBStore store = new DuckDBStore(path)) {
+        Datasets.load(store, 0, numKeys, values);
+        execute(
+            store,
+            "COPY kv TO '" + parquet + "' (FORMAT PARQUET, COMPRESSION "
+                + ("none".equals(compression) ? "uncompressed" : compression) + ")");
+      }
+      long size = new File(parquet).length();
+      Datasets.delete(path);
+      new File(parquet).delete();
+      System.out.println(
+          "Engine: parquet, value size: " + valueSize + ", compression: " + compression);
+      System.out.println("  Disk: parquet=" + Datasets.formatBytes(size));
+      System.out.println(
+          ROW + String.format(
+              "%-8s %6d %-7s %10.1f %10.1f %6.2f %10s %10s %12s %10s",
+              engine,
+              valueSize,
+              compression,
+              (double) size / numKeys,
+              rawPerRow,
+              rawPerRow * numKeys / size,
+              "n/a",
+              "n/a",
+              "n/a",
+              "n/a"));
+      return;
+    }
+
+    System.gc();
+    long rssBefore = residentBytes();
+    long heapBefore = heapUsed();
+    try (KVStore store = open(engine, path, compression)) {
+      Datasets.load(store, 0, numKeys, values);
+
+      // touch every part of the key space, so every file has its index, filter or lookup file
+      int stride = Math.max(1, numKeys / 1000);
+      for (int key = 0; key < numKeys; key += stride) {
+        store.get(key);
+      }
+      ClosedLoopRunner.Result reads =
+          ClosedLoopRunner.run(
+              engine + "-" + valueSize + "-" + compression,
+              1,
+              readSeconds * 1000L,
+              random -> store.get(random.nextInt(numKeys)));
+
+      System.gc();
+      long rss = residentBytes() - rssBefore;
+      long heap = heapUsed() - heapBefore;
+      Map<String, Long> memory = engineMemory(store);
+      Map<String, Long> disk = diskUsage(engine, path);
+      long diskTotal = 0;
+      for (long bytes : disk.values()) {
+        diskTotal += bytes;
+      }
+      Long index = memory.get("index+filter");
+
+      System.out.println(
+          "Engine: " + engine + ", value size: " + valueSize + ", compression: " + compression);
+      System.out.println("  Disk: " + format(disk));
+      System.out.println(
+          "  Memory: rss=" + Datasets.formatBytes(rss) + " heap=" + Datasets.formatBytes(heap)
+              + (memory.isEmpty() ? "" : " " + format(memory)));
+      System.out.println("  Read QPS: " + reads.qps());
+      System.out.println(
+          ROW + String.format(
+              "%-8s %6d %-7s %10.1f %10.1f %6.2f %10.1f %10.1f %12s %10.0f",
+              engine,
+              valueSize,
+              compression,
+              (double) diskTotal / numKeys,
+              rawPerRow,
+              rawPerRow * numKeys / diskTotal,
+              rssBefore < 0 ? Double.NaN : (double) rss / numKeys,
+              (double) heap / numKeys,
+              index == null ? "n/a" : Datasets.formatBytes(index),
+              reads.qps()));
+    }
+  }
+
+  private static KVStore open(String engine, String path, String compression)
+      throws IOException, SQLException {
+    switch (engine) {
+      case "rocksdb":
+        return new RocksDBStore(
+            new Options()
+                .setCreateIfMissing(true)
+                .setCompressionType(rocksDBCompression(compression))
+                .setTableFormatConfig(
+                    new BlockBasedTableConfig().setFilterPolicy(new BloomFilter(10))),
+            path);
+      case "duckdb":
+        DuckDBStore store = new DuckDBStore(path);
+        if ("none".equals(compression)) {
+          execute(store, "SET force_compression = 'uncompressed'");
+        }
+        return store;
+      case "paimon":
+        String codec = avroCodec(compression);
+        if (codec == null) {
+          throw new IllegalArgumentException("Avro has no " + compression + " codec");
+        }
+        org.apache.paimon.options.Options conf = new org.apache.paimon.options.Options();
+        conf.setString("avro.codec", codec);
+        conf.setString(CoreOptions.FILE_COMPRESSION.key(), compression);
+        return new PaimonKVStore(path, conf);
+      default:
+        throw new IllegalArgumentException("Unknown engine: " + engine);
+    }
+  }
+
+  private static CompressionType rocksDBCompression(String compression) {
+    switch (compression) {
+      case "none":
+        return CompressionType.NO_COMPRESSION;
+      case "snappy":
+        return CompressionType.SNAPPY_COMPRESSION;
+      case "lz4":
+        return CompressionType.LZ4_COMPRESSION;
+      case "zstd":
+        return CompressionType.ZSTD_COMPRESSION;
+      default:
+        throw new IllegalArgumentException("Unknown compression: " + compression);
+    }
+  }
+
+  /** The Avro codec for {@code compression}, or null if Avro has none. */
+  private static String avroCodec(String compression) {
+    switch (compression) {
+      case "none":
+        return "null";
+      case "snappy":
+        return "snappy";
+      case "zstd":
+        return "zstandard";
+      default:
+        return null;
+    }
+  }
+
+  /** Bytes on disk by kind of file. */
+  private static Map<String, Long> diskUsage(String engine, String path) {
+    Map<String, Long> sizes = new LinkedHashMap<>();
+    switch (engine) {
+      case "rocksdb":
+        sizes.put("sst", 0L);
+        sizes.put("wal", 0L);
+        sizes.put("other", 0L);
+        File[] files = new File(path).listFiles();
+        for (File file : files == null ? new File[0] : files) {
+          String kind =
+              file.getName().endsWith(".sst")
+                  ? "sst"
+                  : file.getName().endsWith(".log") ? "wal" : "other";
+          sizes.put(kind, sizes.get(kind) + Datasets.sizeOf(file));
+        }
+        break;
+      case "duckdb":
+        sizes.put("db", new File(path).length());
+        sizes.put("wal", new File(path + ".wal").length());
+        break;
+      case "paimon":
+        long data = Datasets.sizeOf(new File(path, "data"));
+        long lookup = Datasets.sizeOf(new File(path, "lookup"));
+        sizes.put("data", data);
+        sizes.put("lookup", lookup);
+        sizes.put("other", Datasets.sizeOf(new File(path)) - data - lookup);
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown engine: " + engine);
+    }
+    return sizes;
+  }
+
+  /** What the engine reports about its own memory, empty if it reports nothing. */
+  private static Map<String, Long> engineMemory(KVStore store) throws IOException, SQLException {
+    Map<String, Long> memory = new LinkedHashMap<>();
+    if (store instanceof RocksDBStore) {
+      try {
+        RocksDBStore rocksDB = (RocksDBStore) store;
+        memory.put(
+            "index+filter",
+            rocksDB.db().getLongProperty("rocksdb.estimate-table-readers-mem"));
+        memory.put("memtables", rocksDB.db().getLongProperty("rocksdb.cur-size-all-mem-tables"));
+        memory.put("block cache", rocksDB.db().getLongProperty("rocksdb.block-cache-usage"));
+      } catch (RocksDBException e) {
+        throw new IOException(e);
+      }
+    } else if (store instanceof DuckDBStore) {
+      long total = 0;
+      try (Statement stmt = ((DuckDBStore) store).connection().createStatement();
+          ResultSet rs =
+              stmt.executeQuery("SELECT tag, memory_usage_bytes FROM duckdb_memory()")) {
+        while (rs.next()) {
+          if ("ART_INDEX".equals(rs.getString(1))) {
+            memory.put("index+filter", rs.getLong(2));
+          }
+          total += rs.getLong(2);
+        }
+      }
+      memory.put("buffer manager", total);
+    }
+    return memory;
+  }
+
+  private static String format(Map<String, Long> sizes) {
+    StringBuilder sb = new StringBuilder();
+    for (Map.Entry<String, Long> e : sizes.entrySet()) {
+      sb.append(sb.length() == 0 ? "" : " ").append(e.getKey()).append('=');
+      sb.append(Datasets.formatBytes(e.getValue()));
+    }
+    return sb.toString();
+  }
+
+  /** VmRSS of this process, or -1 where {@code /proc} is not available. */
+  private static long residentBytes() {
+    try {
+      for (String line :
+          Files.readAllLines(Paths.get("/proc/self/status"), StandardCharsets.US_ASCII)) {
+        if (line.startsWith("VmRSS:")) {
+          return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+        }
+      }
+    } catch (IOException e) {
+      // not Linux
+    }
+    return -1;
+  }
+
+  private static long heapUsed() {
+    Runtime runtime = Runtime.getRuntime();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  private static void execute(DuckDBStore store, String sql) throws SQLException {
+    try (Statement stmt = store.connection().createStatement()) {
+      stmt.execute(sql);
+    }
+  }
+}
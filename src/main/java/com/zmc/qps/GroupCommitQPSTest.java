@@ -0,0 +1,131 @@
+package com.zmc.qps;
+
+import com.zmc.qps.store.GroupCommitWriter;
+import com.zmc.qps.store.KVStore;
+import com.zmc.qps.store.RocksDBStore;
+import com.zmc.qps.store.Stores;
+import com.zmc.qps.workload.ClosedLoopRunner;
+import com.zmc.qps.workload.Datasets;
+import com.zmc.qps.workload.ValueGenerator;
+
+import org.rocksdb.Options;
+import org.rocksdb.WriteOptions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Many producer threads writing single records: every thread calling {@link KVStore#put} itself
+ * against all of them going through one {@link GroupCommitWriter}. For each producer count it
+ * reports write QPS, commit latency as seen by the producer and the average group size.
+ *
+ * <p>With {@code sync} RocksDB syncs its WAL on every commit, which is where grouping pays off
+ * most; DuckDB syncs its WAL on every commit anyway.
+ *
+ * <p>Usage: {@code GroupCommitQPSTest <rocksdb|duckdb|paimon> <path> <producerCounts>
+ * <durationSeconds> <valueSize> <maxBatch> <maxLingerMicros> <sync>}, e.g. {@code rocksdb
+ * /tmp/group 1,16,64,256 10 100 1024 1000 true}
+ */
+public class GroupCommitQPSTest {
+
+  public static void main(String[] args) throws Exception {
+    String engine = "rocksdb";
+    String path = null;
+    String producerCounts = "1,4,16,64,256";
+    int durationSeconds = 10;
+    int valueSize = 100;
+    int maxBatch = 1024;
+    long maxLingerMicros = 1000;
+    boolean sync = true;
+    try {
+      engine = args[0];
+      path = args[1];
+      producerCounts = args[2];
+      durationSeconds = Integer.parseInt(args[3]);
+      valueSize = Integer.parseInt(args[4]);
+      maxBatch = Integer.parseInt(args[5]);
+      maxLingerMicros = Long.parseLong(args[6]);
+      sync = Boolean.parseBoolean(args[7]);
+    } catch (ArrayIndexOutOfBoundsException e) {
+    }
+    if (path == null) {
+      path = Stores.defaultPath(engine);
+    }
+    long durationMillis = durationSeconds * 1000L;
+    ValueGenerator values = ValueGenerator.fixed(valueSize);
+    int keySpace = 10000000;
+
+    Datasets.delete(path);
+    List<String> rows = new ArrayList<>();
+    try (KVStore store =
+        "rocksdb".equals(engine)
+            ? new RocksDBStore(
+                new Options().setCreateIfMissing(true), new WriteOptions().setSync(sync), path)
+            : Stores.open(engine, path)) {
+      for (String count : producerCounts.split(",")) {
+        int producers = Integer.parseInt(count.trim());
+
+        ClosedLoopRunner.Result direct =
+            ClosedLoopRunner.run(
+                engine + "-direct-" + producers,
+                producers,
+                durationMillis,
+                random -> store.put(random.nextInt(keySpace), values.next(random)));
+        rows.add(row(producers, "direct", direct, Double.NaN));
+
+        ClosedLoopRunner.Result grouped;
+        double averageBatch;
+        try (GroupCommitWriter writer =
+            new GroupCommitWriter(store, maxBatch, maxLingerMicros, TimeUnit.MICROSECONDS)) {
+          grouped =
+              ClosedLoopRunner.run(
+                  engine + "-group-" + producers,
+                  producers,
+                  durationMillis,
+                  random -> writer.put(random.nextInt(keySpace), values.next(random)).get());
+          averageBatch = writer.averageBatchSize();
+        }
+        rows.add(row(producers, "group", grouped, averageBatch));
+
+        System.out.println("Producers: " + producers);
+        System.out.println(
+            "  Direct QPS: " + direct.qps() + ", latency: " + direct.latency().summary());
+        System.out.println(
+            "  Group commit QPS: " + grouped.qps() + ", average batch: " + averageBatch
+                + ", latency: " + grouped.latency().summary());
+      }
+    }
+
+    System.out.println();
+    System.out.println(
+        "Engine: " + engine + ", sync: " + sync + ", value size: " + valueSize + ", max batch: "
+            + maxBatch + ", max linger: " + maxLingerMicros + "us");
+    System.out.println(
+        String.format(
+            "%10s %8s %12s %10s %10s %10s %10s",
+            "producers",
+            "mode",
+            "QPS",
+            "p50 us",
+            "p99 us",
+            "p999 us",
+            "avg batch"));
+    for (String row : rows) {
+      System.out.println(row);
+    }
+  }
+
+  private static String row(
+      int producers, String mode, ClosedLoopRunner.Result result, double averageBatch) {
+    return String.format(
+        "%10d %8s %12.0f %10.1f %10.1f %10.1f %10s",
+        producers,
+        mode,
+        result.qps(),
+        result.latency().percentile(50) / 1000.0,
+        result.latency().percentile(99) / 1000.0,
+        result.latency().percentile(99.9) / 1000.0,
+        Double.isNaN(averageBatch) ? "n/a" : String.format("%.1f", averageBatch));
+  }
+}
@@ -0,0 +1,162 @@
+package com.zmc.qps;
+
+import com.zmc.qps.metrics.LatencyHistogram;
+import com.zmc.qps.store.KVStore;
+import com.zmc.qps.store.Stores;
+import com.zmc.qps.workload.Datasets;
+import com.zmc.qps.workload.ValueGenerator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Reads and writes against the same store at the same time.
+ *
+ * <p>Readers look up random keys of the preloaded range while writers keep inserting new keys
+ * after it. Readers and writers run in separate thread pools. Writers are paced so that reads make
+ * up {@code readPercent} of all operations, unless they cannot keep up.
+ *
+ * <p>Usage: {@code MixedWorkloadQPSTest <rocksdb|duckdb|paimon> <path> <numKeys> <readers>
+ * <writers> <durationSeconds> <readPercent> <valueSize>}
+ */
+public class MixedWorkloadQPSTest {
+
+  public static void main(String[] args) throws Exception {
+    String engine = "rocksdb";
+    String path = null;
+    int numKeys = 1000000;
+    int readers = 8;
+    int writers = 2;
+    int durationSeconds = 30;
+    int readPercent = 80;
+    int valueSize = 12;
+    try {
+      engine = args[0];
+      path = args[1];
+      numKeys = Integer.parseInt(args[2]);
+      readers = Integer.parseInt(args[3]);
+      writers = Integer.parseInt(args[4]);
+      durationSeconds = Integer.parseInt(args[5]);
+      readPercent = Integer.parseInt(args[6]);
+      valueSize = Integer.parseInt(args[7]);
+    } catch (ArrayIndexOutOfBoundsException e) {
+    }
+    if (path == null) {
+      path = Stores.defaultPath(engine);
+    }
+
+    try (KVStore store = Stores.open(engine, path)) {
+      // Insert some data
+      Datasets.load(store, 0, numKeys, ValueGenerator.fixed(valueSize));
+      if (!store.supportsConcurrentWrites() && writers > 1) {
+        System.out.println(engine + " has a single writer, " + writers + " writers will queue");
+      }
+      run(store, numKeys, readers, writers, durationSeconds, readPercent, valueSize);
+    }
+  }
+
+  static void run(
+      KVStore store,
+      int numKeys,
+      int readers,
+      int writers,
+      int durationSeconds,
+      int readPercent,
+      int valueSize)
+      throws Exception {
+    LongAdder reads = new LongAdder();
+    LongAdder writes = new LongAdder();
+    AtomicInteger nextKey = new AtomicInteger(numKeys);
+    boolean paced = readers > 0 && readPercent > 0 && readPercent < 100;
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(durationSeconds);
+
+    ExecutorService readerPool = Executors.newFixedThreadPool(Math.max(1, readers));
+    ExecutorService writerPool = Executors.newFixedThreadPool(Math.max(1, writers));
+    List<Future<LatencyHistogram>> readResults = new ArrayList<>();
+    List<Future<LatencyHistogram>> writeResults = new ArrayList<>();
+    long start = System.nanoTime();
+    for (int t = 0; t < readers; t++) {
+      readResults.add(
+          readerPool.submit(
+              () -> {
+                LatencyHistogram histogram = new LatencyHistogram();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (System.nanoTime() < deadline) {
+                  int key = random.nextInt(numKeys);
+                  long opStart = System.nanoTime();
+                  store.get(key);
+                  histogram.record(System.nanoTime() - opStart);
+                  reads.increment();
+                }
+                return histogram;
+              }));
+    }
+    for (int t = 0; t < writers && readPercent < 100; t++) {
+      writeResults.add(
+          writerPool.submit(
+              () -> {
+                LatencyHistogram histogram = new LatencyHistogram();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (System.nanoTime() < deadline) {
+                  if (paced && writes.sum() * readPercent > reads.sum() * (100 - readPercent)) {
+                    LockSupport.parkNanos(20_000);
+                    continue;
+                  }
+                  byte[] value = new byte[valueSize];
+                  random.nextBytes(value);
+                  int key = nextKey.getAndIncrement();
+                  long opStart = System.nanoTime();
+                  store.put(key, value);
+                  histogram.record(System.nanoTime() - opStart);
+                  writes.increment();
+                }
+                return histogram;
+              }));
+    }
+
+    LatencyHistogram readLatency;
+    LatencyHistogram writeLatency;
+    try {
+      readLatency = merge(readResults);
+      writeLatency = merge(writeResults);
+    } finally {
+      readerPool.shutdownNow();
+      writerPool.shutdownNow();
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+
+    long totalOps = readLatency.count() + writeLatency.count();
+    System.out.println(
+        "Engine: "
+            + store.name()
+            + ", readers: "
+            + readers
+            + ", writers: "
+            + writers
+            + ", target read%: "
+            + readPercent
+            + ", actual read%: "
+            + String.format("%.1f", totalOps == 0 ? 0 : 100.0 * readLatency.count() / totalOps));
+    System.out.println(
+        "Read QPS: " + readLatency.count() / seconds + ", latency: " + readLatency.summary());
+    System.out.println(
+        "Write QPS: " + writeLatency.count() / seconds + ", latency: " + writeLatency.summary());
+    System.out.println("Total QPS: " + totalOps / seconds);
+  }
+
+  private static LatencyHistogram merge(List<Future<LatencyHistogram>> results) throws Exception {
+    LatencyHistogram merged = new LatencyHistogram();
+    for (Future<LatencyHistogram> result : results) {
+      merged.add(result.get());
+    }
+    return merged;
+  }
+}
@@ -0,0 +1,245 @@
+package com.zmc.qps;
+
+import com.zmc.qps.store.OffHeapHashIndex;
+import com.zmc.qps.store.RocksDBStore;
+import com.zmc.qps.workload.ClosedLoopRunner;
+import com.zmc.qps.workload.Datasets;
+import com.zmc.qps.workload.ValueGenerator;
+
+import org.apache.paimon.data.BinaryRow;
+import org.apache.paimon.data.GenericRow;
+import org.apache.paimon.disk.IOManager;
+import org.apache.paimon.fs.FileIO;
+import org.apache.paimon.fs.Path;
+import org.apache.paimon.io.DataFileMeta;
+import org.apache.paimon.mergetree.PaimonUtils;
+import org.apache.paimon.schema.Schema;
+import org.apache.paimon.schema.SchemaManager;
+import org.apache.paimon.table.FileStoreTable;
+import org.apache.paimon.table.FileStoreTableFactory;
+import org.apache.paimon.table.query.LocalTableQuery;
+import org.apache.paimon.table.sink.StreamTableCommit;
+import org.apache.paimon.table.sink.StreamTableWrite;
+import org.apache.paimon.table.sink.StreamWriteBuilder;
+import org.apache.paimon.table.source.DataSplit;
+import org.apache.paimon.table.source.Split;
+import org.apache.paimon.types.DataTypes;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Point lookups on a disk engine against the same data copied into an {@link OffHeapHashIndex},
+ * the in-memory baseline that shows how much of a lookup is spent outside the hash probe itself.
+ *
+ * <p>For each source the data is loaded, random gets run for a fixed time, then the index is
+ * built from the source (RocksDB iterator or a full read of the Paimon table snapshot) and
+ * measured the same way. {@code rocksdb} is a bulk-loaded {@link RocksDBStore}; {@code paimon}
+ * is a primary-key table written through the table API, fully compacted and read with {@link
+ * LocalTableQuery}. Besides QPS and latency, every run reports the collections and GC time it
+ * caused, and the index its off-heap bytes and heap bytes per key.
+ *
+ * <p>Usage: {@code OffHeapIndexQPSTest <path> <numKeys> <valueSize> <sources> <threads>
+ * <durationSeconds>}, e.g. {@code /tmp/offheap 10000000 100 rocksdb,paimon 4 30}
+ */
+public class OffHeapIndexQPSTest {
+
+  public static void main(String[] args) throws Exception {
+    String path = "/tmp/test_offheap";
+    int numKeys = 1000000;
+    int valueSize = 100;
+    String sources = "rocksdb,paimon";
+    int threads = 4;
+    int durationSeconds = 10;
+    try {
+      path = args[0];
+      numKeys = Integer.parseInt(args[1]);
+      valueSize = Integer.parseInt(args[2]);
+      sources = args[3];
+      threads = Integer.parseInt(args[4]);
+      durationSeconds = Integer.parseInt(args[5]);
+    } catch (ArrayIndexOutOfBoundsException e) {
+    }
+    ValueGenerator values = ValueGenerator.fixed(valueSize);
+    int keys = numKeys;
+    long durationMillis = durationSeconds * 1000L;
+    new File(path).mkdirs();
+
+    List<String> rows = new ArrayList<>();
+    for (String source : sources.split(",")) {
+      source = source.trim();
+      String sourcePath = path + "/" + source;
+      Datasets.delete(sourcePath);
+      OffHeapHashIndex index;
+      long heapBefore;
+      double buildSeconds;
+      switch (source) {
+        case "rocksdb":
+          try (RocksDBStore store = new RocksDBStore(sourcePath)) {
+            store.bulkLoad(
+                0, numKeys, 1, 1000000, key -> values.next(ThreadLocalRandom.current()));
+            rows.add(
+                measure(
+                    "rocksdb get",
+                    threads,
+                    durationMillis,
+                    random -> store.get(random.nextInt(keys))));
+            heapBefore = heapUsed();
+            long start = System.nanoTime();
+            index = OffHeapHashIndex.load(store.db(), numKeys);
+            buildSeconds = (System.nanoTime() - start) / 1e9;
+          }
+          break;
+        case "paimon":
+          FileStoreTable table = createTable(sourcePath, numKeys, values);
+          File tmpDir = new File(sourcePath + ".tmp");
+          tmpDir.mkdirs();
+          try (PaimonUtils.Resource<IOManager> io =
+                  PaimonUtils.resource(IOManager.create(tmpDir.getPath()));
+              LocalTableQuery query = new LocalTableQuery(table).withIOManager(io.get())) {
+            query.refreshFiles(BinaryRow.EMPTY_ROW, 0, Collections.emptyList(), files(table));
+            rows.add(
+                measure(
+                    "paimon lookup",
+                    threads,
+                    durationMillis,
+                    random ->
+                        query.lookup(
+                            BinaryRow.EMPTY_ROW, 0, PaimonUtils.row(random.nextInt(keys)))));
+          } finally {
+            Datasets.delete(tmpDir.getPath());
+          }
+          heapBefore = heapUsed();
+          long start = System.nanoTime();
+          index = OffHeapHashIndex.load(table, numKeys);
+          buildSeconds = (System.nanoTime() - start) / 1e9;
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown source: " + source);
+      }
+
+      try (OffHeapHashIndex idx = index) {
+        long heap = heapUsed() - heapBefore;
+        System.out.println(
+            "Index from " + source + ": " + idx.size() + " keys in " + buildSeconds + "s, "
+                + Datasets.formatBytes(idx.memoryBytes()) + " off heap ("
+                + idx.memoryBytes() / idx.size() + " B/key), heap delta "
+                + Datasets.formatBytes(heap) + " (" + heap / idx.size() + " B/key)");
+        rows.add(
+            measure(
+                "offheap from " + source,
+                threads,
+                durationMillis,
+                random -> idx.get(random.nextInt(keys))));
+      }
+    }
+
+    System.out.println();
+    System.out.println(
+        "Keys: " + numKeys + ", value size: " + valueSize + ", threads: " + threads);
+    System.out.println(
+        String.format(
+            "%-20s %12s %10s %10s %10s %8s %10s",
+            "lookup",
+            "QPS",
+            "mean us",
+            "p99 us",
+            "max ms",
+            "GCs",
+            "GC ms"));
+    for (String row : rows) {
+      System.out.println(row);
+    }
+  }
+
+  /** Runs random lookups, prints them and returns a summary row with the GC they caused. */
+  private static String measure(
+      String name, int threads, long durationMillis, ClosedLoopRunner.Operation lookup)
+      throws Exception {
+    long[] gcBefore = gc();
+    ClosedLoopRunner.Result result = ClosedLoopRunner.run(name, threads, durationMillis, lookup);
+    long[] gcAfter = gc();
+    long collections = gcAfter[0] - gcBefore[0];
+    long gcMillis = gcAfter[1] - gcBefore[1];
+    System.out.println(
+        name + " QPS: " + result.qps() + ", GCs: " + collections + " (" + gcMillis + "ms)");
+    System.out.println("  Latency: " + result.latency().summary());
+    return String.format(
+        "%-20s %12.0f %10.1f %10.1f %10.1f %8d %10d",
+        name,
+        result.qps(),
+        result.latency().mean() / 1000.0,
+        result.latency().percentile(99) / 1000.0,
+        result.latency().max() / 1e6,
+        collections,
+        gcMillis);
+  }
+
+  /** Writes keys {@code [0, numKeys)} to a new single-bucket table and fully compacts it. */
+  private static FileStoreTable createTable(String path, int numKeys, ValueGenerator values)
+      throws Exception {
+    Path root = new Path(new File(path).toURI().toString());
+    FileIO fileIO = PaimonUtils.fileIO(root);
+    Schema schema =
+        Schema.newBuilder()
+            .column("id", DataTypes.INT())
+            .column("value", DataTypes.BYTES())
+            .primaryKey("id")
+            .option("bucket", "1")
+            .option("file.format", "avro")
+            .build();
+    new SchemaManager(fileIO, root).createTable(schema);
+    FileStoreTable table = FileStoreTableFactory.create(fileIO, root);
+
+    File tmpDir = new File(path + ".tmp");
+    tmpDir.mkdirs();
+    StreamWriteBuilder builder = table.newStreamWriteBuilder();
+    try (PaimonUtils.Resource<IOManager> io =
+            PaimonUtils.resource(IOManager.create(tmpDir.getPath()));
+        PaimonUtils.Resource<StreamTableWrite> write = PaimonUtils.resource(builder.newWrite());
+        PaimonUtils.Resource<StreamTableCommit> commit =
+            PaimonUtils.resource(builder.newCommit())) {
+      write.get().withIOManager(io.get());
+      ThreadLocalRandom random = ThreadLocalRandom.current();
+      for (int key = 0; key < numKeys; key++) {
+        write.get().write(GenericRow.of(key, values.next(random)));
+      }
+      write.get().compact(BinaryRow.EMPTY_ROW, 0, true);
+      commit.get().commit(0, write.get().prepareCommit(true, 0));
+    } finally {
+      Datasets.delete(tmpDir.getPath());
+    }
+    return table;
+  }
+
+  /** Data files of the latest snapshot. */
+  private static List<DataFileMeta> files(FileStoreTable table) {
+    List<DataFileMeta> files = new ArrayList<>();
+    for (Split split : table.newSnapshotReader().read().splits()) {
+      files.addAll(((DataSplit) split).dataFiles());
+    }
+    return files;
+  }
+
+  /** Total collections and collection milliseconds over all collectors. */
+  private static long[] gc() {
+    long[] gc = new long[2];
+    for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+      gc[0] += Math.max(0, bean.getCollectionCount());
+      gc[1] += Math.max(0, bean.getCollectionTime());
+    }
+    return gc;
+  }
+
+  /** Heap in use after a full collection. */
+  private static long heapUsed() {
+    System.gc();
+    Runtime runtime = Runtime.getRuntime();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
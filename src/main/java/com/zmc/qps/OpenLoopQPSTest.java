@@ -0,0 +1,84 @@
+package com.zmc.qps;
+
+import com.zmc.qps.store.KVStore;
+import com.zmc.qps.store.Stores;
+import com.zmc.qps.workload.Datasets;
+import com.zmc.qps.workload.OpenLoopRunner;
+import com.zmc.qps.workload.ValueGenerator;
+
+/**
+ * Answers "what is p99 at N QPS?": issues reads and writes at a fixed or Poisson target rate and
+ * measures latency from the intended start time, see {@link OpenLoopRunner}.
+ *
+ * <p>Usage: {@code OpenLoopQPSTest <rocksdb|duckdb|paimon|all> <path> <numKeys> <targetQps>
+ * <durationSeconds> <fixed|poisson> <pool|virtual> <threads> <readPercent> <valueSize>}. The
+ * {@code virtual} executor needs a Java 21 runtime, build with {@code -Pjava21}. With {@code
+ * all} every engine runs in turn and {@code path} is used as parent directory.
+ */
+public class OpenLoopQPSTest {
+
+  public static void main(String[] args) throws Exception {
+    String engine = "rocksdb";
+    String path = null;
+    int numKeys = 1000000;
+    double targetQps = 50000;
+    int durationSeconds = 30;
+    OpenLoopRunner.Arrival arrival = OpenLoopRunner.Arrival.POISSON;
+    String executor = "pool";
+    int threads = 64;
+    int readPercent = 100;
+    int valueSize = 12;
+    try {
+      engine = args[0];
+      path = args[1];
+      numKeys = Integer.parseInt(args[2]);
+      targetQps = Double.parseDouble(args[3]);
+      durationSeconds = Integer.parseInt(args[4]);
+      arrival = OpenLoopRunner.Arrival.valueOf(args[5].toUpperCase());
+      executor = args[6];
+      threads = Integer.parseInt(args[7]);
+      readPercent = Integer.parseInt(args[8]);
+      valueSize = Integer.parseInt(args[9]);
+    } catch (ArrayIndexOutOfBoundsException e) {
+    }
+
+    String[] engines = "all".equals(engine) ? Stores.ENGINES : new String[] {engine};
+    for (String e : engines) {
+      String storePath =
+          path == null ? Stores.defaultPath(e) : engines.length > 1 ? path + "/" + e : path;
+      Datasets.delete(storePath);
+      ValueGenerator values = ValueGenerator.fixed(valueSize);
+      try (KVStore store = Stores.open(e, storePath)) {
+        Datasets.load(store, 0, numKeys, values);
+
+        int keys = numKeys;
+        int reads = readPercent;
+        OpenLoopRunner.Result result =
+            OpenLoopRunner.run(
+                e,
+                OpenLoopRunner.executor(executor, threads),
+                targetQps,
+                arrival,
+                durationSeconds * 1000L,
+                random -> {
+                  int key = random.nextInt(keys);
+                  if (random.nextInt(100) < reads) {
+                    store.get(key);
+                  } else {
+                    store.put(key, values.next(random));
+                  }
+                });
+        System.out.println(
+            "Engine: "
+                + e
+                + ", arrival: "
+                + arrival
+                + ", executor: "
+                + executor
+                + ", read%: "
+                + readPercent);
+        System.out.println(result.summary());
+      }
+    }
+  }
+}
@@ -0,0 +1,190 @@
+package com.zmc.qps;
+
+import com.zmc.qps.workload.ClosedLoopRunner;
+import com.zmc.qps.workload.Datasets;
+import com.zmc.qps.workload.ValueGenerator;
+
+import org.apache.paimon.mergetree.BatchedLookupLevels;
+import org.apache.paimon.mergetree.PaimonKVStore;
+import org.apache.paimon.options.Options;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Batched Paimon lookups through {@link PaimonKVStore#getBatch}, see {@link BatchedLookupLevels},
+ * against the per-key loop of {@code LookupLevelsTest#testKVReadQPS} through {@link
+ * PaimonKVStore#get}, for several batch sizes and hit rates.
+ *
+ * <p>{@code numKeys} keys are bulk loaded into files of {@code targetFileSize} in the highest
+ * level, then {@code level0Files} level-0 files of random updates to 1% of the keys each are
+ * flushed on top, below the compaction trigger, so lookups of most keys miss every level-0 file
+ * before they hit. Keys are drawn from a key space scaled so that {@code hitRate} percent of them
+ * exist; keys beyond the loaded range miss. Lookup files are built, and both paths warmed up,
+ * before measuring.
+ *
+ * <p>Both paths run on one thread, as {@link org.apache.paimon.mergetree.LookupLevels} is not
+ * thread-safe, and look up the same random batches for a fixed time. Their results for one batch
+ * are compared before measuring. Reported per batch size and hit rate: keys/s of both paths, the
+ * speedup, the p99 latency of a whole batch, and lookup files and key probes per batch.
+ *
+ * <p>Usage: {@code PaimonBatchLookupQPSTest <path> <numKeys> <valueSize> <targetFileSize>
+ * <level0Files> <batchSizes> <hitRates> <durationSeconds>}, e.g. {@code /tmp/batch_lookup
+ * 10000000 100 32mb 3 1,16,256,4096 100,50,10 10}
+ */
+public class PaimonBatchLookupQPSTest {
+
+  public static void main(String[] args) throws Exception {
+    String path = "/tmp/test_batch_lookup";
+    int numKeys = 1000000;
+    int valueSize = 100;
+    String targetFileSize = "8mb";
+    int level0Files = 3;
+    String batchSizes = "1,16,256,4096";
+    String hitRates = "100,50,10";
+    int durationSeconds = 10;
+    try {
+      path = args[0];
+      numKeys = Integer.parseInt(args[1]);
+      valueSize = Integer.parseInt(args[2]);
+      targetFileSize = args[3];
+      level0Files = Integer.parseInt(args[4]);
+      batchSizes = args[5];
+      hitRates = args[6];
+      durationSeconds = Integer.parseInt(args[7]);
+    } catch (ArrayIndexOutOfBoundsException e) {
+    }
+    ValueGenerator values = ValueGenerator.fixed(valueSize);
+
+    Options conf = new Options();
+    conf.setString("target-file-size", targetFileSize);
+    // the bulk-loaded run and the level-0 files stay apart
+    conf.setString("num-sorted-run.compaction-trigger", String.valueOf(level0Files + 2));
+    Datasets.delete(path);
+    List<String> rows = new ArrayList<>();
+    try (PaimonKVStore store = new PaimonKVStore(path, conf)) {
+      long start = System.nanoTime();
+      store.bulkLoad(0, numKeys, 1, key -> values.next(ThreadLocalRandom.current()));
+      ThreadLocalRandom random = ThreadLocalRandom.current();
+      for (int f = 0; f < level0Files; f++) {
+        for (int i = 0; i < numKeys / 100; i++) {
+          store.put(random.nextInt(numKeys), values.next(random));
+        }
+        store.flush();
+      }
+      System.out.println(
+          "Loaded " + numKeys + " keys in " + (System.nanoTime() - start) / 1e9 + "s, files: "
+              + store.levels().allFiles().size() + ", level 0: "
+              + store.levels().level0().size());
+
+      // build every lookup file up front and warm up both paths, so neither pays for it
+      int step = Math.max(1, numKeys / 100000);
+      int[] warmKeys = new int[256];
+      byte[][] warmResults = new byte[warmKeys.length][];
+      for (int key = 0, count = 0; key < numKeys; key += step) {
+        store.get(key);
+        warmKeys[count++] = key;
+        if (count == warmKeys.length) {
+          store.getBatch(warmKeys, count, warmResults);
+          count = 0;
+        }
+      }
+
+      for (String hitRate : hitRates.split(",")) {
+        for (String batchSize : batchSizes.split(",")) {
+          int hit = Integer.parseInt(hitRate.trim());
+          int batch = Integer.parseInt(batchSize.trim());
+          int keySpace = (int) Math.min(Integer.MAX_VALUE, (long) numKeys * 100 / hit);
+          int[] keys = new int[batch];
+          byte[][] results = new byte[batch][];
+
+          for (int i = 0; i < batch; i++) {
+            keys[i] = random.nextInt(keySpace);
+          }
+          store.getBatch(keys, batch, results);
+          for (int i = 0; i < batch; i++) {
+            if (!Arrays.equals(results[i], store.get(keys[i]))) {
+              throw new IllegalStateException("Batched lookup differs for key " + keys[i]);
+            }
+          }
+
+          ClosedLoopRunner.Result perKey =
+              ClosedLoopRunner.run(
+                  "per-key-" + batch + "-hit" + hit,
+                  1,
+                  durationSeconds * 1000L,
+                  r -> {
+                    for (int i = 0; i < batch; i++) {
+                      results[i] = store.get(r.nextInt(keySpace));
+                    }
+                  });
+          long[] probesBefore = store.batchProbes();
+          ClosedLoopRunner.Result batched =
+              ClosedLoopRunner.run(
+                  "batched-" + batch + "-hit" + hit,
+                  1,
+                  durationSeconds * 1000L,
+                  r -> {
+                    for (int i = 0; i < batch; i++) {
+                      keys[i] = r.nextInt(keySpace);
+                    }
+                    store.getBatch(keys, batch, results);
+                  });
+          long[] probesAfter = store.batchProbes();
+          long batches = batched.latency().count();
+          double filesPerBatch = (double) (probesAfter[0] - probesBefore[0]) / batches;
+          double probesPerBatch = (double) (probesAfter[1] - probesBefore[1]) / batches;
+          double perKeyKeys = perKey.qps() * batch;
+          double batchedKeys = batched.qps() * batch;
+
+          System.out.println("Hit rate: " + hit + "%, batch size: " + batch);
+          System.out.println(
+              "  Per-key lookup QPS: " + perKeyKeys + ", batch latency: "
+                  + perKey.latency().summary());
+          System.out.println(
+              "  Batched lookup QPS: " + batchedKeys + ", batch latency: "
+                  + batched.latency().summary());
+          System.out.println(
+              "  Speedup: " + batchedKeys / perKeyKeys + ", files per batch: " + filesPerBatch
+                  + ", key probes per batch: " + probesPerBatch);
+          rows.add(
+              String.format(
+                  "%5d %8d %14.0f %14.0f %8.2f %12.1f %12.1f %10.1f %10.1f",
+                  hit,
+                  batch,
+                  perKeyKeys,
+                  batchedKeys,
+                  batchedKeys / perKeyKeys,
+                  perKey.latency().percentile(99) / 1000.0,
+                  batched.latency().percentile(99) / 1000.0,
+                  filesPerBatch,
+                  probesPerBatch));
+        }
+      }
+    } finally {
+      Datasets.delete(path);
+    }
+
+    System.out.println();
+    System.out.println(
+        "Keys: " + numKeys + ", value size: " + valueSize + ", target file size: "
+            + targetFileSize + ", level-0 files: " + level0Files);
+    System.out.println(
+        String.format(
+            "%5s %8s %14s %14s %8s %12s %12s %10s %10s",
+            "hit %",
+            "batch",
+            "per-key keys/s",
+            "batched keys/s",
+            "speedup",
+            "per-key p99",
+            "batched p99",
+            "files",
+            "probes"));
+    for (String row : rows) {
+      System.out.println(row);
+    }
+  }
+}
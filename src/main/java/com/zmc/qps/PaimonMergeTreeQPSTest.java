@@ -0,0 +1,337 @@
+package com.zmc.qps;
+
+import com.zmc.qps.metrics.LatencyHistogram;
+import com.zmc.qps.workload.ClosedLoopRunner;
+import com.zmc.qps.workload.Datasets;
+import com.zmc.qps.workload.ValueGenerator;
+
+import org.apache.paimon.data.BinaryRow;
+import org.apache.paimon.data.GenericRow;
+import org.apache.paimon.disk.IOManager;
+import org.apache.paimon.fs.FileIO;
+import org.apache.paimon.fs.Path;
+import org.apache.paimon.io.DataFileMeta;
+import org.apache.paimon.mergetree.PaimonUtils;
+import org.apache.paimon.schema.Schema;
+import org.apache.paimon.schema.SchemaManager;
+import org.apache.paimon.table.FileStoreTable;
+import org.apache.paimon.table.FileStoreTableFactory;
+import org.apache.paimon.table.query.LocalTableQuery;
+import org.apache.paimon.table.sink.CommitMessage;
+import org.apache.paimon.table.sink.CommitMessageImpl;
+import org.apache.paimon.table.sink.StreamTableCommit;
+import org.apache.paimon.table.sink.StreamTableWrite;
+import org.apache.paimon.table.sink.StreamWriteBuilder;
+import org.apache.paimon.table.sink.TableWriteImpl;
+import org.apache.paimon.table.source.DataSplit;
+import org.apache.paimon.table.source.Split;
+import org.apache.paimon.types.DataTypes;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives the primary-key write path of a Paimon table end to end, unlike {@code
+ * LookupLevelsTest} and {@code PaimonKVStore}, which write files directly and build {@code
+ * Levels} by hand: {@code MergeTreeWriter} with its write buffer and sort spill, universal
+ * compaction triggered by {@code num-sorted-run.compaction-trigger} and, optionally, the {@code
+ * lookup} changelog producer.
+ *
+ * <p>Random keys from {@code [0, keySpace)} are written by one writer to a table with a single
+ * bucket, committing every {@code commitEvery} rows. For every combination of sorted-run trigger
+ * and changelog producer it reports:
+ *
+ * <ul>
+ *   <li>ingest rows/s and the latency of each commit, which grows when the writer has to wait
+ *       for compaction
+ *   <li>time spent compacting, and bytes compaction read and wrote from the commit messages,
+ *       separately for the ingest phase and for a final full compaction, plus the changelog
+ *       bytes. Compaction time is measured on the compaction thread, which this test provides
+ *       to the writer
+ *   <li>files per level before that compaction, and lookup QPS through {@link LocalTableQuery}
+ *       over the compacted files
+ * </ul>
+ *
+ * <p>Usage: {@code PaimonMergeTreeQPSTest <path> <numRows> <keySpace> <valueSize>
+ * <writeBufferSize> <spillable> <sortedRunTriggers> <changelogProducers> <commitEvery> <threads>
+ * <durationSeconds>}, e.g. {@code /tmp/merge_tree 10000000 1000000 100 64mb true 3,5,10
+ * none,lookup 100000 4 10}
+ */
+public class PaimonMergeTreeQPSTest {
+
+  public static void main(String[] args) throws Exception {
+    String path = "/tmp/test_merge_tree";
+    int numRows = 1000000;
+    int keySpace = 1000000;
+    int valueSize = 100;
+    String writeBufferSize = "64mb";
+    boolean spillable = true;
+    String sortedRunTriggers = "5";
+    String changelogProducers = "none,lookup";
+    int commitEvery = 100000;
+    int threads = 4;
+    int durationSeconds = 10;
+    try {
+      path = args[0];
+      numRows = Integer.parseInt(args[1]);
+      keySpace = Integer.parseInt(args[2]);
+      valueSize = Integer.parseInt(args[3]);
+      writeBufferSize = args[4];
+      spillable = Boolean.parseBoolean(args[5]);
+      sortedRunTriggers = args[6];
+      changelogProducers = args[7];
+      commitEvery = Integer.parseInt(args[8]);
+      threads = Integer.parseInt(args[9]);
+      durationSeconds = Integer.parseInt(args[10]);
+    } catch (ArrayIndexOutOfBoundsException e) {
+    }
+    ValueGenerator values = ValueGenerator.fixed(valueSize);
+
+    List<String> rows = new ArrayList<>();
+    for (String trigger : sortedRunTriggers.split(",")) {
+      for (String producer : changelogProducers.split(",")) {
+        trigger = trigger.trim();
+        producer = producer.trim();
+        String tablePath = path + "/trigger-" + trigger + "-" + producer;
+        Datasets.delete(tablePath);
+        File tmpDir = new File(tablePath + ".tmp");
+        tmpDir.mkdirs();
+
+        Path root = new Path(new File(tablePath).toURI().toString());
+        FileIO fileIO = PaimonUtils.fileIO(root);
+        Schema schema =
+            Schema.newBuilder()
+                .column("id", DataTypes.INT())
+                .column("value", DataTypes.BYTES())
+                .primaryKey("id")
+                .option("bucket", "1")
+                .option("file.format", "avro")
+                .option("write-buffer-size", writeBufferSize)
+                .option("write-buffer-spillable", String.valueOf(spillable))
+                .option("num-sorted-run.compaction-trigger", trigger)
+                .option("changelog-producer", producer)
+                .build();
+        new SchemaManager(fileIO, root).createTable(schema);
+        FileStoreTable table = FileStoreTableFactory.create(fileIO, root);
+
+        LatencyHistogram commitLatency = new LatencyHistogram();
+        long[] ingestBytes = new long[3];
+        long[] fullBytes = new long[3];
+        double ingestSeconds;
+        double ingestCompactSeconds;
+        double fullSeconds;
+        double fullCompactSeconds;
+        String shape;
+        ClosedLoopRunner.Result lookups;
+        TimedExecutor compactExecutor = new TimedExecutor();
+        StreamWriteBuilder builder = table.newStreamWriteBuilder();
+        try (PaimonUtils.Resource<IOManager> io =
+            PaimonUtils.resource(IOManager.create(tmpDir.getPath()))) {
+          List<DataFileMeta> files;
+          try (PaimonUtils.Resource<StreamTableWrite> write =
+                  PaimonUtils.resource(builder.newWrite());
+              PaimonUtils.Resource<StreamTableCommit> commit =
+                  PaimonUtils.resource(builder.newCommit())) {
+            write.get().withIOManager(io.get());
+            ((TableWriteImpl<?>) write.get()).withCompactExecutor(compactExecutor);
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long commitId = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < numRows; i++) {
+              write.get().write(GenericRow.of(random.nextInt(keySpace), values.next(random)));
+              if ((i + 1) % commitEvery == 0 || i == numRows - 1) {
+                long commitStart = System.nanoTime();
+                List<CommitMessage> messages = write.get().prepareCommit(false, commitId);
+                commit.get().commit(commitId++, messages);
+                commitLatency.record(System.nanoTime() - commitStart);
+                count(messages, ingestBytes);
+              }
+            }
+            ingestSeconds = (System.nanoTime() - start) / 1e9;
+            // commit what compactions still running from ingest produce, so it counts there
+            List<CommitMessage> pending = write.get().prepareCommit(true, commitId);
+            commit.get().commit(commitId++, pending);
+            count(pending, ingestBytes);
+            shape = shape(files(table));
+
+            long fullStart = System.nanoTime();
+            compactExecutor.startFullCompaction();
+            write.get().compact(BinaryRow.EMPTY_ROW, 0, true);
+            List<CommitMessage> messages = write.get().prepareCommit(true, commitId);
+            commit.get().commit(commitId, messages);
+            fullSeconds = (System.nanoTime() - fullStart) / 1e9;
+            ingestCompactSeconds = compactExecutor.busySeconds(false);
+            fullCompactSeconds = compactExecutor.busySeconds(true);
+            count(messages, fullBytes);
+            files = files(table);
+          }
+
+          int keys = keySpace;
+          try (LocalTableQuery query = new LocalTableQuery(table).withIOManager(io.get())) {
+            query.refreshFiles(BinaryRow.EMPTY_ROW, 0, Collections.emptyList(), files);
+            lookups =
+                ClosedLoopRunner.run(
+                    "trigger-" + trigger + "-" + producer,
+                    threads,
+                    durationSeconds * 1000L,
+                    random ->
+                        query.lookup(
+                            BinaryRow.EMPTY_ROW, 0, PaimonUtils.row(random.nextInt(keys))));
+          }
+        } finally {
+          compactExecutor.shutdownNow();
+          Datasets.delete(tmpDir.getPath());
+        }
+
+        double ingestQps = numRows / ingestSeconds;
+        System.out.println(
+            "Sorted-run trigger: " + trigger + ", changelog producer: " + producer);
+        System.out.println(
+            "  Ingest QPS: " + ingestQps + ", files before full compaction: " + shape);
+        System.out.println("  Commit latency: " + commitLatency.summary());
+        System.out.println(
+            "  Ingest compaction: " + ingestCompactSeconds + "s, read: "
+                + Datasets.formatBytes(ingestBytes[0]) + ", written: "
+                + Datasets.formatBytes(ingestBytes[1]) + ", changelog: "
+                + Datasets.formatBytes(ingestBytes[2]));
+        System.out.println(
+            "  Full compaction: " + fullCompactSeconds + "s, until committed: " + fullSeconds
+                + "s, read: " + Datasets.formatBytes(fullBytes[0]) + ", written: "
+                + Datasets.formatBytes(fullBytes[1]) + ", changelog: "
+                + Datasets.formatBytes(fullBytes[2]));
+        System.out.println(
+            "  Lookup QPS: " + lookups.qps() + ", latency: " + lookups.latency().summary());
+        rows.add(
+            String.format(
+                "%7s %-8s %12.0f %12.1f %10.2f %10s %10s %10.2f %10s %10s %10s %-20s %12.0f",
+                trigger,
+                producer,
+                ingestQps,
+                commitLatency.percentile(99) / 1e6,
+                ingestCompactSeconds,
+                Datasets.formatBytes(ingestBytes[0]),
+                Datasets.formatBytes(ingestBytes[1]),
+                fullCompactSeconds,
+                Datasets.formatBytes(fullBytes[0]),
+                Datasets.formatBytes(fullBytes[1]),
+                Datasets.formatBytes(ingestBytes[2] + fullBytes[2]),
+                shape,
+                lookups.qps()));
+      }
+    }
+
+    System.out.println();
+    System.out.println(
+        "Rows: " + numRows + ", key space: " + keySpace + ", value size: " + valueSize
+            + ", write buffer: " + writeBufferSize + ", spillable: " + spillable
+            + ", commit every: " + commitEvery);
+    System.out.println(
+        String.format(
+            "%7s %-8s %12s %12s %10s %10s %10s %10s %10s %10s %10s %-20s %12s",
+            "trigger",
+            "producer",
+            "ingest/s",
+            "commit p99ms",
+            "comp s",
+            "comp read",
+            "comp write",
+            "full s",
+            "full read",
+            "full write",
+            "changelog",
+            "files per level",
+            "lookup QPS"));
+    for (String row : rows) {
+      System.out.println(row);
+    }
+  }
+
+  /**
+   * Single compaction thread that adds up the time it spends running compactions, which Paimon
+   * 0.8 does not report on its own, per phase: a compaction counts towards the phase it was
+   * submitted in, even if it finishes in a later one.
+   */
+  private static class TimedExecutor extends ThreadPoolExecutor {
+
+    private final AtomicLong[] busyNanos = {new AtomicLong(), new AtomicLong()};
+    private volatile int phase;
+
+    TimedExecutor() {
+      super(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+    }
+
+    @Override
+    public void execute(Runnable command) {
+      AtomicLong busy = busyNanos[phase];
+      super.execute(
+          () -> {
+            long start = System.nanoTime();
+            try {
+              command.run();
+            } finally {
+              busy.addAndGet(System.nanoTime() - start);
+            }
+          });
+    }
+
+    /** Counts compactions submitted from now on towards the full-compaction phase. */
+    void startFullCompaction() {
+      phase = 1;
+    }
+
+    /** Time spent in finished compactions of the ingest phase, or of the full compaction. */
+    double busySeconds(boolean fullCompaction) {
+      return busyNanos[fullCompaction ? 1 : 0].get() / 1e9;
+    }
+  }
+
+  /** Adds compacted-away, compacted and changelog bytes of {@code messages} to {@code bytes}. */
+  private static void count(List<CommitMessage> messages, long[] bytes) {
+    for (CommitMessage message : messages) {
+      CommitMessageImpl m = (CommitMessageImpl) message;
+      bytes[0] += size(m.compactIncrement().compactBefore());
+      bytes[1] += size(m.compactIncrement().compactAfter());
+      bytes[2] += size(m.compactIncrement().changelogFiles());
+      bytes[2] += size(m.newFilesIncrement().changelogFiles());
+    }
+  }
+
+  private static long size(List<DataFileMeta> files) {
+    long size = 0;
+    for (DataFileMeta file : files) {
+      size += file.fileSize();
+    }
+    return size;
+  }
+
+  /** Data files of the latest snapshot. */
+  private static List<DataFileMeta> files(FileStoreTable table) {
+    List<DataFileMeta> files = new ArrayList<>();
+    for (Split split : table.newSnapshotReader().read().splits()) {
+      files.addAll(((DataSplit) split).dataFiles());
+    }
+    return files;
+  }
+
+  /** File counts per level, e.g. {@code L0:3 L4:1 L5:2}. */
+  private static String shape(List<DataFileMeta> files) {
+    TreeMap<Integer, Integer> levels = new TreeMap<>();
+    for (DataFileMeta file : files) {
+      levels.merge(file.level(), 1, Integer::sum);
+    }
+    StringBuilder sb = new StringBuilder();
+    levels.forEach(
+        (level, count) ->
+            sb.append(sb.length() == 0 ? "" : " ").append('L').append(level).append(':')
+                .append(count));
+    return sb.toString();
+  }
+}
@@ -0,0 +1,163 @@
+package com.zmc.qps;
+
+import com.zmc.qps.fs.SimulatedRemoteFileIO;
+import com.zmc.qps.workload.ClosedLoopRunner;
+import com.zmc.qps.workload.Datasets;
+import com.zmc.qps.workload.ValueGenerator;
+
+import org.apache.paimon.mergetree.PaimonKVStore;
+import org.apache.paimon.options.Options;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Paimon lookups against data files on a remote store, simulated with {@link
+ * SimulatedRemoteFileIO} so it runs offline.
+ *
+ * <p>The data is bulk loaded once into files of {@code target-file-size} through the simulated
+ * store. Then the store is reopened for every combination of read-ahead (the prefetch of each
+ * remote read request), {@code lookup.cache-max-disk-size} and {@code
+ * lookup.cache-file-retention}, and random lookups run for a fixed time. A lookup on a file that
+ * has no local lookup file yet reads the whole data file remotely to build one, so a disk cache
+ * that cannot hold all lookup files, or a retention that expires them, shows up as remote bytes
+ * read per lookup.
+ *
+ * <p>Usage: {@code PaimonRemoteLookupQPSTest <path> <numKeys> <valueSize> <targetFileSize>
+ * <latencyMicros> <bandwidthMB> <readAheads> <maxDiskSizes> <retentions> <threads>
+ * <durationSeconds>}, e.g. {@code /tmp/remote 10000000 100 16mb 2000 100 0,1048576
+ * 64mb,unlimited "1 h,10 s" 4 30}
+ */
+public class PaimonRemoteLookupQPSTest {
+
+  public static void main(String[] args) throws Exception {
+    String path = "/tmp/test_remote_lookup";
+    int numKeys = 1000000;
+    int valueSize = 100;
+    String targetFileSize = "8mb";
+    long latencyMicros = 2000;
+    long bandwidthMB = 100;
+    String readAheads = "0,1048576";
+    String maxDiskSizes = "unlimited";
+    String retentions = "1 h";
+    int threads = 4;
+    int durationSeconds = 10;
+    try {
+      path = args[0];
+      numKeys = Integer.parseInt(args[1]);
+      valueSize = Integer.parseInt(args[2]);
+      targetFileSize = args[3];
+      latencyMicros = Long.parseLong(args[4]);
+      bandwidthMB = Long.parseLong(args[5]);
+      readAheads = args[6];
+      maxDiskSizes = args[7];
+      retentions = args[8];
+      threads = Integer.parseInt(args[9]);
+      durationSeconds = Integer.parseInt(args[10]);
+    } catch (ArrayIndexOutOfBoundsException e) {
+    }
+    ValueGenerator values = ValueGenerator.fixed(valueSize);
+
+    Datasets.delete(path);
+    SimulatedRemoteFileIO.configure(latencyMicros, bandwidthMB << 20, 0);
+    SimulatedRemoteFileIO.resetCounters();
+    long loadStart = System.nanoTime();
+    int files;
+    try (PaimonKVStore store = new PaimonKVStore(path, conf(targetFileSize, null, null))) {
+      store.bulkLoad(0, numKeys, 1, key -> values.next(ThreadLocalRandom.current()));
+      files = store.levels().allFiles().size();
+    }
+    double loadSeconds = (System.nanoTime() - loadStart) / 1e9;
+    System.out.println(
+        "Loaded " + numKeys + " keys into " + files + " files in " + loadSeconds
+            + "s, write QPS: " + numKeys / loadSeconds + ", remote requests: "
+            + SimulatedRemoteFileIO.requests() + ", written: "
+            + Datasets.formatBytes(SimulatedRemoteFileIO.bytesWritten()));
+
+    List<String> rows = new ArrayList<>();
+    for (String readAhead : readAheads.split(",")) {
+      for (String maxDiskSize : maxDiskSizes.split(",")) {
+        for (String retention : retentions.split(",")) {
+          readAhead = readAhead.trim();
+          maxDiskSize = maxDiskSize.trim();
+          retention = retention.trim();
+          SimulatedRemoteFileIO.configure(
+              latencyMicros, bandwidthMB << 20, Integer.parseInt(readAhead));
+          SimulatedRemoteFileIO.resetCounters();
+          ClosedLoopRunner.Result lookups;
+          long localBytes;
+          int keys = numKeys;
+          try (PaimonKVStore store =
+              new PaimonKVStore(path, conf(targetFileSize, maxDiskSize, retention))) {
+            lookups =
+                ClosedLoopRunner.run(
+                    "read-ahead-" + readAhead + "-" + maxDiskSize + "-" + retention,
+                    threads,
+                    durationSeconds * 1000L,
+                    random -> store.get(random.nextInt(keys)));
+            localBytes = Datasets.sizeOf(new File(path, "lookup"));
+          }
+          long requests = SimulatedRemoteFileIO.requests();
+          long bytesRead = SimulatedRemoteFileIO.bytesRead();
+          long count = lookups.latency().count();
+
+          System.out.println(
+              "Read-ahead: " + readAhead + ", max disk size: " + maxDiskSize + ", retention: "
+                  + retention);
+          System.out.println(
+              "  Lookup QPS: " + lookups.qps() + ", remote requests: " + requests
+                  + ", remote read: " + Datasets.formatBytes(bytesRead)
+                  + ", local lookup files: " + Datasets.formatBytes(localBytes));
+          System.out.println("  Latency: " + lookups.latency().summary());
+          rows.add(
+              String.format(
+                  "%10s %10s %10s %12.0f %10.1f %10.1f %12d %12s %12.1f",
+                  readAhead,
+                  maxDiskSize,
+                  retention,
+                  lookups.qps(),
+                  lookups.latency().percentile(99) / 1000.0,
+                  lookups.latency().max() / 1e6,
+                  requests,
+                  Datasets.formatBytes(bytesRead),
+                  (double) bytesRead / count));
+        }
+      }
+    }
+
+    System.out.println();
+    System.out.println(
+        "Keys: " + numKeys + ", files: " + files + ", latency: " + latencyMicros
+            + "us, bandwidth: " + bandwidthMB + "MB/s, threads: " + threads);
+    System.out.println(
+        String.format(
+            "%10s %10s %10s %12s %10s %10s %12s %12s %12s",
+            "read-ahead",
+            "disk max",
+            "retention",
+            "lookup QPS",
+            "p99 us",
+            "max ms",
+            "requests",
+            "remote read",
+            "B/lookup"));
+    for (String row : rows) {
+      System.out.println(row);
+    }
+  }
+
+  private static Options conf(String targetFileSize, String maxDiskSize, String retention) {
+    Options conf = new Options();
+    conf.set(PaimonKVStore.DATA_FILE_SCHEME, SimulatedRemoteFileIO.SCHEME);
+    conf.setString("target-file-size", targetFileSize);
+    if (maxDiskSize != null && !"unlimited".equals(maxDiskSize)) {
+      conf.setString("lookup.cache-max-disk-size", maxDiskSize);
+    }
+    if (retention != null) {
+      conf.setString("lookup.cache-file-retention", retention);
+    }
+    return conf;
+  }
+}
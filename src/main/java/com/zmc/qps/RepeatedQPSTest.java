@@ -0,0 +1,103 @@
+package com.zmc.qps;
+
+import com.zmc.qps.store.KVStore;
+import com.zmc.qps.store.Stores;
+import com.zmc.qps.workload.ClosedLoopRunner;
+import com.zmc.qps.workload.Datasets;
+import com.zmc.qps.workload.RunProtocol;
+import com.zmc.qps.workload.ValueGenerator;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Load, read and scan QPS of one engine under {@link RunProtocol}: warmup iterations, repeated
+ * measured iterations and mean, stddev, min/max and 95% confidence interval per metric.
+ *
+ * <p>Usage: {@code RepeatedQPSTest <rocksdb|duckdb|paimon|offheap> <path> <numKeys> <warmup>
+ * <iterations> <fresh|reuse> <threads> <durationSeconds> <valueSize> <noisePercent>}
+ */
+public class RepeatedQPSTest {
+
+  private static final int SCAN_LENGTH = 100;
+
+  public static void main(String[] args) throws Exception {
+    String engine = "rocksdb";
+    String path = null;
+    int numKeys = 1000000;
+    int warmup = 2;
+    int iterations = 10;
+    boolean fresh = true;
+    int threads = 1;
+    int durationSeconds = 10;
+    int valueSize = 12;
+    double noisePercent = 5;
+    try {
+      engine = args[0];
+      path = args[1];
+      numKeys = Integer.parseInt(args[2]);
+      warmup = Integer.parseInt(args[3]);
+      iterations = Integer.parseInt(args[4]);
+      fresh = "fresh".equals(args[5]);
+      threads = Integer.parseInt(args[6]);
+      durationSeconds = Integer.parseInt(args[7]);
+      valueSize = Integer.parseInt(args[8]);
+      noisePercent = Double.parseDouble(args[9]);
+    } catch (ArrayIndexOutOfBoundsException e) {
+    }
+    if (path == null) {
+      path = Stores.defaultPath(engine);
+    }
+
+    String storeEngine = engine;
+    int keys = numKeys;
+    int readThreads = threads;
+    long durationMillis = durationSeconds * 1000L;
+    ValueGenerator values = ValueGenerator.fixed(valueSize);
+    RunProtocol protocol = new RunProtocol(warmup, iterations, fresh, noisePercent);
+    protocol.run(
+        path,
+        new RunProtocol.Trial() {
+          private KVStore store;
+
+          @Override
+          public Map<String, Double> setup(String path) throws Exception {
+            store = Stores.open(storeEngine, path);
+            long start = System.nanoTime();
+            Datasets.load(store, 0, keys, values);
+            Map<String, Double> metrics = new LinkedHashMap<>();
+            metrics.put("load", keys / ((System.nanoTime() - start) / 1e9));
+            return metrics;
+          }
+
+          @Override
+          public Map<String, Double> measure() throws Exception {
+            Map<String, Double> metrics = new LinkedHashMap<>();
+            metrics.put(
+                "read",
+                ClosedLoopRunner.run(
+                        storeEngine + "-get",
+                        readThreads,
+                        durationMillis,
+                        random -> store.get(random.nextInt(keys)))
+                    .qps());
+            if (store.supportsScan()) {
+              metrics.put(
+                  "scan",
+                  ClosedLoopRunner.run(
+                          storeEngine + "-scan",
+                          readThreads,
+                          durationMillis,
+                          random -> store.scan(random.nextInt(keys), SCAN_LENGTH))
+                      .qps());
+            }
+            return metrics;
+          }
+
+          @Override
+          public void teardown() throws Exception {
+            store.close();
+          }
+        });
+  }
+}
@@ -0,0 +1,300 @@
+package com.zmc.qps;
+
+import com.zmc.qps.store.RocksDBArrowReader;
+import com.zmc.qps.store.RocksDBStore;
+import com.zmc.qps.workload.Datasets;
+import com.zmc.qps.workload.ValueGenerator;
+
+import org.apache.arrow.c.ArrowArrayStream;
+import org.apache.arrow.c.Data;
+import org.apache.arrow.memory.RootAllocator;
+import org.duckdb.DuckDBConnection;
+import org.rocksdb.RocksIterator;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Exports a RocksDB snapshot for analytics through a streaming Arrow pipeline, see {@link
+ * RocksDBArrowReader}, and compares it to row-at-a-time JDBC inserts.
+ *
+ * <p>Sinks:
+ *
+ * <ul>
+ *   <li>{@code count}: drains the batches, the pipeline alone
+ *   <li>{@code parquet}: the batches are exported through the Arrow C stream interface,
+ *       registered with DuckDB and written with {@code COPY ... TO ... (FORMAT PARQUET)}
+ *   <li>{@code duckdb}: the same stream, stored with {@code CREATE TABLE ... AS SELECT} in an
+ *       attached {@code .duckdb} file
+ *   <li>{@code jdbc}: one iterator and batched {@code INSERT}s into an attached {@code .duckdb}
+ *       file, the current way of moving data
+ * </ul>
+ *
+ * <p>Reported per sink: end-to-end rows/s and MB/s, peak Arrow memory, peak resident memory of
+ * the process (VmHWM, reset before every export where the kernel allows it), and per stage the
+ * time producers spent reading and decoding and blocked on the consumer, averaged over the
+ * producers, and the time the sink waited for batches. For the Arrow sinks also the batch buffers
+ * producers allocated: count, bytes and time per producer, which is part of decoding; buffers are
+ * allocated per batch rather than reused, see {@link RocksDBArrowReader}. On Java 9+ Arrow needs
+ * {@code --add-opens=java.base/java.nio=ALL-UNNAMED}.
+ *
+ * <p>Usage: {@code RocksDBExportQPSTest <path> <numKeys> <valueSize> <sinks> <parallelism>
+ * <ranges> <batchRows> <queueDepth>}, e.g. {@code /tmp/export 10000000 100
+ * count,parquet,duckdb,jdbc 4 64 65536 8}
+ */
+public class RocksDBExportQPSTest {
+
+  private static final String STREAM = "rocksdb_export";
+
+  public static void main(String[] args) throws Exception {
+    String path = "/tmp/test_export";
+    int numKeys = 1000000;
+    int valueSize = 100;
+    String sinks = "count,parquet,duckdb,jdbc";
+    int parallelism = 4;
+    int ranges = 64;
+    int batchRows = 65536;
+    int queueDepth = 8;
+    try {
+      path = args[0];
+      numKeys = Integer.parseInt(args[1]);
+      valueSize = Integer.parseInt(args[2]);
+      sinks = args[3];
+      parallelism = Integer.parseInt(args[4]);
+      ranges = Integer.parseInt(args[5]);
+      batchRows = Integer.parseInt(args[6]);
+      queueDepth = Integer.parseInt(args[7]);
+    } catch (ArrayIndexOutOfBoundsException e) {
+    }
+    ValueGenerator values = ValueGenerator.fixed(valueSize);
+    Datasets.delete(path);
+    new File(path).mkdirs();
+
+    List<String> rows = new ArrayList<>();
+    try (DuckDBConnection duckdb =
+            (DuckDBConnection) DriverManager.getConnection("jdbc:duckdb:");
+        Statement stmt = duckdb.createStatement()) {
+      try (RocksDBStore store = new RocksDBStore(path + "/rocksdb")) {
+        long start = System.nanoTime();
+        store.bulkLoad(
+            0, numKeys, parallelism, 1000000, key -> values.next(ThreadLocalRandom.current()));
+        System.out.println(
+            "Loaded " + numKeys + " keys in " + (System.nanoTime() - start) / 1e9 + "s");
+
+        for (String sink : sinks.split(",")) {
+          sink = sink.trim();
+          String target = path + "/export-" + sink + ("parquet".equals(sink) ? ".parquet" : "");
+          Datasets.delete(target);
+          Datasets.delete(target + ".wal");
+          resetPeakResident();
+          long exported = 0;
+          long bytes = 0;
+          double[] stages = {Double.NaN, Double.NaN, Double.NaN};
+          long allocations = 0;
+          long allocatedBytes = 0;
+          double allocateSeconds = Double.NaN;
+          long peakArrow = 0;
+          start = System.nanoTime();
+          if ("jdbc".equals(sink)) {
+            stmt.execute("ATTACH '" + target + "' AS export");
+            stmt.execute("CREATE TABLE export.kv (id INTEGER, value BLOB)");
+            duckdb.setAutoCommit(false);
+            try (PreparedStatement insert =
+                    duckdb.prepareStatement("INSERT INTO export.kv VALUES (?, ?)");
+                RocksIterator iterator = store.db().newIterator()) {
+              for (iterator.seekToFirst(); iterator.isValid(); iterator.next()) {
+                byte[] value = iterator.value();
+                insert.setInt(1, ByteBuffer.wrap(iterator.key()).getInt());
+                insert.setBytes(2, value);
+                insert.addBatch();
+                bytes += 4 + value.length;
+                if (++exported % batchRows == 0) {
+                  insert.executeBatch();
+                  duckdb.commit();
+                }
+              }
+              insert.executeBatch();
+              duckdb.commit();
+            } finally {
+              duckdb.setAutoCommit(true);
+            }
+            stmt.execute("DETACH export");
+          } else {
+            try (RootAllocator allocator = new RootAllocator();
+                RocksDBArrowReader reader =
+                    new RocksDBArrowReader(
+                        allocator,
+                        store.db(),
+                        0,
+                        numKeys,
+                        ranges,
+                        parallelism,
+                        batchRows,
+                        queueDepth)) {
+              switch (sink) {
+                case "count":
+                  while (reader.loadNextBatch()) {
+                    exported += reader.getVectorSchemaRoot().getRowCount();
+                  }
+                  break;
+                case "parquet":
+                  export(
+                      allocator,
+                      reader,
+                      duckdb,
+                      "COPY (SELECT * FROM " + STREAM + ") TO '" + target
+                          + "' (FORMAT PARQUET)");
+                  exported = count(stmt, "read_parquet('" + target + "')");
+                  break;
+                case "duckdb":
+                  stmt.execute("ATTACH '" + target + "' AS export");
+                  export(
+                      allocator,
+                      reader,
+                      duckdb,
+                      "CREATE TABLE export.kv AS SELECT * FROM " + STREAM);
+                  exported = count(stmt, "export.kv");
+                  stmt.execute("DETACH export");
+                  break;
+                default:
+                  throw new IllegalArgumentException("Unknown sink: " + sink);
+              }
+              bytes = reader.bytesRead();
+              stages[0] = reader.produceNanos() / 1e9 / parallelism;
+              stages[1] = reader.blockedNanos() / 1e9 / parallelism;
+              stages[2] = reader.waitNanos() / 1e9;
+              allocations = reader.allocations();
+              allocatedBytes = reader.allocatedBytes();
+              allocateSeconds = reader.allocateNanos() / 1e9 / parallelism;
+              peakArrow = allocator.getPeakMemoryAllocation();
+            }
+          }
+          double seconds = (System.nanoTime() - start) / 1e9;
+          long output = Datasets.sizeOf(new File(target));
+          long peakResident = peakResident();
+          Datasets.delete(target);
+          Datasets.delete(target + ".wal");
+          if (exported != numKeys) {
+            throw new IllegalStateException("Exported " + exported + " of " + numKeys + " rows");
+          }
+
+          System.out.println("Sink: " + sink);
+          System.out.println(
+              "  Export rows/s: " + exported / seconds + ", " + seconds + "s, "
+                  + Datasets.formatBytes(bytes / seconds) + "/s, output "
+                  + Datasets.formatBytes(output));
+          System.out.println(
+              "  Stages per producer: read+decode " + stages[0] + "s, blocked " + stages[1]
+                  + "s; sink waited " + stages[2] + "s");
+          if (allocations > 0) {
+            System.out.println(
+                "  Batch allocations: " + allocations + ", "
+                    + Datasets.formatBytes(allocatedBytes) + ", " + allocateSeconds
+                    + "s per producer");
+          }
+          System.out.println(
+              "  Peak memory: arrow " + Datasets.formatBytes(peakArrow) + ", resident "
+                  + Datasets.formatBytes(peakResident));
+          rows.add(
+              String.format(
+                  "%-8s %12.0f %10s %8.2f %10.2f %10.2f %10.2f %10s %10.2f %10s %10s %10s",
+                  sink,
+                  exported / seconds,
+                  Datasets.formatBytes(bytes / seconds),
+                  seconds,
+                  stages[0],
+                  stages[1],
+                  stages[2],
+                  Datasets.formatBytes(allocatedBytes),
+                  allocateSeconds,
+                  Datasets.formatBytes(peakArrow),
+                  Datasets.formatBytes(peakResident),
+                  Datasets.formatBytes(output)));
+        }
+      }
+    } finally {
+      Datasets.delete(path);
+    }
+
+    System.out.println();
+    System.out.println(
+        "Keys: " + numKeys + ", value size: " + valueSize + ", parallelism: " + parallelism
+            + ", ranges: " + ranges + ", batch rows: " + batchRows + ", queue depth: "
+            + queueDepth);
+    System.out.println(
+        String.format(
+            "%-8s %12s %10s %8s %10s %10s %10s %10s %10s %10s %10s %10s",
+            "sink",
+            "rows/s",
+            "MB/s",
+            "total s",
+            "decode s",
+            "blocked s",
+            "wait s",
+            "allocated",
+            "alloc s",
+            "arrow peak",
+            "rss peak",
+            "output"));
+    for (String row : rows) {
+      System.out.println(row);
+    }
+  }
+
+  /** Hands the batches of {@code reader} to DuckDB as a stream and runs {@code sql} over it. */
+  private static void export(
+      RootAllocator allocator, RocksDBArrowReader reader, DuckDBConnection duckdb, String sql)
+      throws Exception {
+    try (ArrowArrayStream stream = ArrowArrayStream.allocateNew(allocator);
+        Statement stmt = duckdb.createStatement()) {
+      Data.exportArrayStream(allocator, reader, stream);
+      duckdb.registerArrowStream(STREAM, stream);
+      stmt.execute(sql);
+    }
+  }
+
+  /** Rows of {@code relation} as stored by the sink, to check the export is complete. */
+  private static long count(Statement stmt, String relation) throws SQLException {
+    try (ResultSet rs = stmt.executeQuery("SELECT count(*) FROM " + relation)) {
+      rs.next();
+      return rs.getLong(1);
+    }
+  }
+
+  /** Resets VmHWM to the current resident size, ignored where the kernel does not support it. */
+  private static void resetPeakResident() {
+    try (FileOutputStream out = new FileOutputStream("/proc/self/clear_refs")) {
+      out.write('5');
+    } catch (IOException e) {
+      // not Linux, or not allowed
+    }
+  }
+
+  /** VmHWM of this process, or -1 where {@code /proc} is not available. */
+  private static long peakResident() {
+    try {
+      for (String line :
+          Files.readAllLines(Paths.get("/proc/self/status"), StandardCharsets.US_ASCII)) {
+        if (line.startsWith("VmHWM:")) {
+          return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+        }
+      }
+    } catch (IOException e) {
+      // not Linux
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,305 @@
+package com.zmc.qps;
+
+import com.zmc.qps.store.RocksDBStore;
+import com.zmc.qps.workload.ClosedLoopRunner;
+import com.zmc.qps.workload.Datasets;
+import com.zmc.qps.workload.ValueGenerator;
+
+import org.rocksdb.Options;
+import org.rocksdb.RocksDB;
+import org.rocksdb.RocksDBException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Point-read and scan QPS of RocksDB for controlled LSM shapes, unlike {@link RocksDBReadQPSTest}
+ * which reads whatever shape a fresh load leaves behind.
+ *
+ * <p>States:
+ *
+ * <ul>
+ *   <li>{@code memtable}: a write buffer large enough for all keys, nothing flushed
+ *   <li>{@code l0}: {@code l0Files} flushed files that each span the whole key range, with
+ *       automatic compaction off, so a point read may have to check every file
+ *   <li>{@code compacted}: loaded and compacted into the bottom level with {@code compactRange}
+ *   <li>{@code overlapping}: compacted, then {@code l0Files} rounds that each update 10% of the
+ *       keys and flush, with small levels and automatic compaction on, so versions of a key are
+ *       spread over L0 and several levels; the last round stays in the memtable
+ * </ul>
+ *
+ * <p>For every state it prints the compaction stats of {@code rocksdb.stats}, measures reads,
+ * then runs a full {@code compactRange} and measures again: the compaction time against the QPS
+ * it buys is what a manual compaction trigger has to weigh. "sorted runs" counts the memtable,
+ * every L0 file and every non-empty deeper level, the places a point read may have to look.
+ *
+ * <p>Usage: {@code RocksDBLsmShapeQPSTest <path> <numKeys> <valueSize> <states> <threads>
+ * <durationSeconds> <l0Files> <scanLength>}, e.g. {@code /tmp/lsm 1000000 100
+ * memtable,l0,compacted,overlapping 4 10 16 100}
+ */
+public class RocksDBLsmShapeQPSTest {
+
+  private static final int BATCH_SIZE = 10000;
+  // RocksDB's default num_levels
+  private static final int NUM_LEVELS = 7;
+
+  public static void main(String[] args) throws Exception {
+    RocksDBStore.loadLibrary();
+    String path = "/tmp/test_lsm";
+    int numKeys = 1000000;
+    int valueSize = 100;
+    String states = "memtable,l0,compacted,overlapping";
+    int threads = 4;
+    int durationSeconds = 10;
+    int l0Files = 16;
+    int scanLength = 100;
+    try {
+      path = args[0];
+      numKeys = Integer.parseInt(args[1]);
+      valueSize = Integer.parseInt(args[2]);
+      states = args[3];
+      threads = Integer.parseInt(args[4]);
+      durationSeconds = Integer.parseInt(args[5]);
+      l0Files = Integer.parseInt(args[6]);
+      scanLength = Integer.parseInt(args[7]);
+    } catch (ArrayIndexOutOfBoundsException e) {
+    }
+    new File(path).mkdirs();
+    ValueGenerator values = ValueGenerator.fixed(valueSize);
+    long durationMillis = durationSeconds * 1000L;
+    // rough bytes of the whole data set in a memtable, including per-entry overhead
+    long dataBytes = (long) numKeys * (valueSize + 4 + 32);
+
+    List<String> rows = new ArrayList<>();
+    for (String state : states.split(",")) {
+      state = state.trim();
+      String storePath = path + "/" + state;
+      Datasets.delete(storePath);
+      try (RocksDBStore store = new RocksDBStore(options(state, dataBytes), storePath)) {
+        long loadStart = System.nanoTime();
+        load(store, state, numKeys, l0Files, values);
+        double loadSeconds = (System.nanoTime() - loadStart) / 1e9;
+
+        System.out.println("State: " + state + ", loaded in " + loadSeconds + "s");
+        System.out.print(compactionStats(store.db()));
+        String shape = shape(store.db());
+        int runs = sortedRuns(store.db());
+        ClosedLoopRunner.Result gets = gets(store, threads, durationMillis, numKeys);
+        ClosedLoopRunner.Result scans = scans(store, threads, durationMillis, numKeys, scanLength);
+        System.out.println(
+            "  Before compaction: " + shape + ", read QPS: " + gets.qps() + ", scan QPS: "
+                + scans.qps());
+        System.out.println("  Read latency: " + gets.latency().summary());
+
+        long compactStart = System.nanoTime();
+        store.flush();
+        store.db().compactRange();
+        double compactSeconds = (System.nanoTime() - compactStart) / 1e9;
+        ClosedLoopRunner.Result compactedGets = gets(store, threads, durationMillis, numKeys);
+        ClosedLoopRunner.Result compactedScans =
+            scans(store, threads, durationMillis, numKeys, scanLength);
+        System.out.println(
+            "  After compaction (" + compactSeconds + "s): " + shape(store.db())
+                + ", read QPS: " + compactedGets.qps() + ", scan QPS: " + compactedScans.qps());
+
+        rows.add(
+            String.format(
+                "%-12s %-28s %6d %12.0f %10.1f %12.0f %10.2f %12.0f %12.0f",
+                state,
+                shape,
+                runs,
+                gets.qps(),
+                gets.latency().percentile(99) / 1000.0,
+                scans.qps(),
+                compactSeconds,
+                compactedGets.qps(),
+                compactedScans.qps()));
+      }
+    }
+
+    System.out.println();
+    System.out.println(
+        "Keys: " + numKeys + ", value size: " + valueSize + ", threads: " + threads
+            + ", scan length: " + scanLength);
+    System.out.println(
+        String.format(
+            "%-12s %-28s %6s %12s %10s %12s %10s %12s %12s",
+            "state",
+            "files per level",
+            "runs",
+            "read QPS",
+            "p99 us",
+            "scan QPS",
+            "compact s",
+            "read after",
+            "scan after"));
+    for (String row : rows) {
+      System.out.println(row);
+    }
+  }
+
+  private static Options options(String state, long dataBytes) {
+    Options options = new Options().setCreateIfMissing(true);
+    switch (state) {
+      case "memtable":
+        return options
+            .setWriteBufferSize(Math.max(64L << 20, dataBytes * 2))
+            .setDisableAutoCompactions(true);
+      case "l0":
+        return options
+            .setDisableAutoCompactions(true)
+            .setLevel0FileNumCompactionTrigger(Integer.MAX_VALUE)
+            .setLevel0SlowdownWritesTrigger(Integer.MAX_VALUE)
+            .setLevel0StopWritesTrigger(Integer.MAX_VALUE);
+      case "compacted":
+        return options;
+      case "overlapping":
+        long writeBuffer = Math.max(1L << 20, dataBytes / 32);
+        return options
+            .setWriteBufferSize(writeBuffer)
+            .setTargetFileSizeBase(writeBuffer)
+            .setMaxBytesForLevelBase(Math.max(4L << 20, dataBytes / 8))
+            .setMaxBytesForLevelMultiplier(4);
+      default:
+        throw new IllegalArgumentException("Unknown state: " + state);
+    }
+  }
+
+  private static void load(
+      RocksDBStore store, String state, int numKeys, int l0Files, ValueGenerator values)
+      throws IOException, RocksDBException, InterruptedException {
+    switch (state) {
+      case "memtable":
+        write(store, 0, numKeys, 1, values);
+        break;
+      case "l0":
+        // file f holds keys f, f + l0Files, f + 2 * l0Files, ...: every file spans all keys
+        for (int f = 0; f < l0Files; f++) {
+          write(store, f, numKeys, l0Files, values);
+          store.flush();
+        }
+        break;
+      case "compacted":
+        write(store, 0, numKeys, 1, values);
+        store.flush();
+        store.db().compactRange();
+        break;
+      case "overlapping":
+        write(store, 0, numKeys, 1, values);
+        store.flush();
+        store.db().compactRange();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int[] keys = new int[BATCH_SIZE];
+        byte[][] batch = new byte[BATCH_SIZE][];
+        for (int round = 0; round < l0Files; round++) {
+          for (int i = 0; i < numKeys / 10; i += BATCH_SIZE) {
+            int n = Math.min(BATCH_SIZE, numKeys / 10 - i);
+            for (int j = 0; j < n; j++) {
+              keys[j] = random.nextInt(numKeys);
+              batch[j] = values.next(random);
+            }
+            store.putBatch(keys, batch, n);
+          }
+          if (round < l0Files - 1) {
+            store.flush();
+          }
+        }
+        awaitCompactions(store.db());
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown state: " + state);
+    }
+  }
+
+  /** Writes keys {@code from, from + step, ...} below {@code to} without flushing. */
+  private static void write(RocksDBStore store, int from, int to, int step, ValueGenerator values)
+      throws IOException {
+    int[] keys = new int[BATCH_SIZE];
+    byte[][] batch = new byte[BATCH_SIZE][];
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int n = 0;
+    for (int key = from; key < to; key += step) {
+      keys[n] = key;
+      batch[n] = values.next(random);
+      if (++n == BATCH_SIZE) {
+        store.putBatch(keys, batch, n);
+        n = 0;
+      }
+    }
+    if (n > 0) {
+      store.putBatch(keys, batch, n);
+    }
+  }
+
+  private static void awaitCompactions(RocksDB db)
+      throws RocksDBException, InterruptedException {
+    while (db.getLongProperty("rocksdb.compaction-pending") > 0
+        || db.getLongProperty("rocksdb.num-running-compactions") > 0
+        || db.getLongProperty("rocksdb.num-running-flushes") > 0) {
+      Thread.sleep(50);
+    }
+  }
+
+  private static ClosedLoopRunner.Result gets(
+      RocksDBStore store, int threads, long durationMillis, int numKeys) throws Exception {
+    return ClosedLoopRunner.run(
+        "lsm-get", threads, durationMillis, random -> store.get(random.nextInt(numKeys)));
+  }
+
+  private static ClosedLoopRunner.Result scans(
+      RocksDBStore store, int threads, long durationMillis, int numKeys, int scanLength)
+      throws Exception {
+    return ClosedLoopRunner.run(
+        "lsm-scan",
+        threads,
+        durationMillis,
+        random -> store.scan(random.nextInt(numKeys), scanLength));
+  }
+
+  /** Non-empty levels with their file counts, e.g. {@code mem L0:8 L6:3}. */
+  private static String shape(RocksDB db) throws RocksDBException {
+    StringBuilder sb = new StringBuilder();
+    if (db.getLongProperty("rocksdb.num-entries-active-mem-table") > 0) {
+      sb.append("mem");
+    }
+    for (int level = 0; level < NUM_LEVELS; level++) {
+      String files = db.getProperty("rocksdb.num-files-at-level" + level);
+      if (!"0".equals(files)) {
+        sb.append(sb.length() == 0 ? "" : " ").append('L').append(level).append(':');
+        sb.append(files);
+      }
+    }
+    return sb.toString();
+  }
+
+  private static int sortedRuns(RocksDB db) throws RocksDBException {
+    int runs = db.getLongProperty("rocksdb.num-entries-active-mem-table") > 0 ? 1 : 0;
+    runs += Integer.parseInt(db.getProperty("rocksdb.num-files-at-level0"));
+    for (int level = 1; level < NUM_LEVELS; level++) {
+      if (!"0".equals(db.getProperty("rocksdb.num-files-at-level" + level))) {
+        runs++;
+      }
+    }
+    return runs;
+  }
+
+  /** The per-level table at the top of {@code rocksdb.stats}. */
+  private static String compactionStats(RocksDB db) throws RocksDBException {
+    StringBuilder sb = new StringBuilder();
+    boolean inTable = false;
+    for (String line : db.getProperty("rocksdb.stats").split("\n")) {
+      if (line.startsWith("** Compaction Stats")) {
+        inTable = true;
+      } else if (inTable && line.trim().isEmpty()) {
+        break;
+      }
+      if (inTable) {
+        sb.append("  ").append(line).append('\n');
+      }
+    }
+    return sb.toString();
+  }
+}
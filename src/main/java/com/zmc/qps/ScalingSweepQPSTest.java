@@ -0,0 +1,146 @@
+package com.zmc.qps;
+
+import com.zmc.qps.store.KVStore;
+import com.zmc.qps.store.Stores;
+import com.zmc.qps.workload.ClosedLoopRunner;
+import com.zmc.qps.workload.Datasets;
+import com.zmc.qps.workload.ValueGenerator;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Grows one store through a list of dataset sizes and measures read, scan and write QPS at every
+ * size, with the engine's caches capped at a fixed memory limit. Keys are loaded incrementally, so
+ * the 10M step reuses the rows of the 1M step.
+ *
+ * <p>Usage: {@code ScalingSweepQPSTest <rocksdb|duckdb|paimon|offheap> <path> <sizes> <valueSpec>
+ * <memoryMB> <threads> <durationSeconds>}, e.g. {@code rocksdb /data/sweep
+ * 1000000,10000000,100000000,1000000000 uniform:16:16k 1024 8 30}. See {@link ValueGenerator}
+ * for value specs.
+ */
+public class ScalingSweepQPSTest {
+
+  private static final int SCAN_LENGTH = 100;
+
+  public static void main(String[] args) throws Exception {
+    String engine = "rocksdb";
+    String path = null;
+    String sizes = "1000000,10000000,100000000,1000000000";
+    ValueGenerator values = ValueGenerator.fixed(100);
+    long memoryMB = 256;
+    int threads = 8;
+    int durationSeconds = 30;
+    try {
+      engine = args[0];
+      path = args[1];
+      sizes = args[2];
+      values = ValueGenerator.parse(args[3]);
+      memoryMB = Long.parseLong(args[4]);
+      threads = Integer.parseInt(args[5]);
+      durationSeconds = Integer.parseInt(args[6]);
+    } catch (ArrayIndexOutOfBoundsException e) {
+    }
+    if (path == null) {
+      path = Stores.defaultPath(engine);
+    }
+    long memoryLimit = memoryMB << 20;
+    long durationMillis = durationSeconds * 1000L;
+
+    // Always start from an empty store, the sweep relies on knowing the row count
+    Datasets.delete(path);
+    List<String> rows = new ArrayList<>();
+    try (KVStore store = Stores.open(engine, path, memoryLimit)) {
+      int loaded = 0;
+      for (String size : sizes.split(",")) {
+        int numKeys = Integer.parseInt(size.trim());
+        long start = System.nanoTime();
+        try {
+          Datasets.load(store, loaded, numKeys, values);
+        } catch (Exception e) {
+          // e.g. DuckDB cannot keep its primary key index within memory_limit
+          rows.add(String.format("%,14d failed to load: %s", numKeys, Datasets.rootCause(e)));
+          break;
+        }
+        double loadSeconds = (System.nanoTime() - start) / 1e9;
+        double loadQps = (numKeys - loaded) / loadSeconds;
+        loaded = numKeys;
+        long dataBytes = Datasets.sizeOf(new File(path));
+
+        ClosedLoopRunner.Result read;
+        ClosedLoopRunner.Result scan = null;
+        ClosedLoopRunner.Result write;
+        ValueGenerator writeValues = values;
+        String label = engine + "-" + numKeys;
+        try {
+          read =
+              ClosedLoopRunner.run(
+                  label + "-get",
+                  threads,
+                  durationMillis,
+                  random -> store.get(random.nextInt(numKeys)));
+          if (store.supportsScan()) {
+            scan =
+                ClosedLoopRunner.run(
+                    label + "-scan",
+                    threads,
+                    durationMillis,
+                    random -> store.scan(random.nextInt(numKeys), SCAN_LENGTH));
+          }
+          write =
+              ClosedLoopRunner.run(
+                  label + "-put",
+                  threads,
+                  durationMillis,
+                  random -> store.put(random.nextInt(numKeys), writeValues.next(random)));
+        } catch (Exception e) {
+          rows.add(String.format("%,14d failed: %s", numKeys, Datasets.rootCause(e)));
+          break;
+        }
+
+        String row =
+            String.format(
+                "%,14d %10s %8.1fx %12.0f %12.0f %10.1f %12s %12.0f %10.1f",
+                numKeys,
+                Datasets.formatBytes(dataBytes),
+                (double) dataBytes / memoryLimit,
+                loadQps,
+                read.qps(),
+                read.latency().percentile(99) / 1000.0,
+                scan == null ? "n/a" : String.format("%.0f", scan.qps()),
+                write.qps(),
+                write.latency().percentile(99) / 1000.0);
+        rows.add(row);
+        System.out.println("Keys: " + numKeys + ", data: " + Datasets.formatBytes(dataBytes));
+        System.out.println("  Read QPS: " + read.qps() + ", latency: " + read.latency().summary());
+        if (scan != null) {
+          System.out.println(
+              "  Scan QPS: " + scan.qps() + " (" + SCAN_LENGTH + " rows per scan), latency: "
+                  + scan.latency().summary());
+        }
+        System.out.println(
+            "  Write QPS: " + write.qps() + ", latency: " + write.latency().summary());
+      }
+    }
+
+    System.out.println();
+    System.out.println(
+        "Engine: " + engine + ", values: " + values + ", memory limit: " + memoryMB + "MB");
+    System.out.println(
+        String.format(
+            "%14s %10s %9s %12s %12s %10s %12s %12s %10s",
+            "keys",
+            "data",
+            "data/mem",
+            "load/s",
+            "read QPS",
+            "read p99us",
+            "scan QPS",
+            "write QPS",
+            "write p99us"));
+    for (String row : rows) {
+      System.out.println(row);
+    }
+  }
+}
@@ -0,0 +1,187 @@
+package com.zmc.qps;
+
+import com.zmc.qps.store.ShardedRocksDBStore;
+import com.zmc.qps.workload.ClosedLoopRunner;
+import com.zmc.qps.workload.Datasets;
+import com.zmc.qps.workload.ValueGenerator;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Scale-out of {@link ShardedRocksDBStore}: the shard count and the thread count grow together,
+ * {@code threadsPerShard} threads per shard, and write, read and scan QPS are measured at every
+ * step. Scaling is QPS relative to the first shard count of the same configuration, divided by
+ * the growth in threads, so 1.0 is linear.
+ *
+ * <p>Every combination of layout ({@code instances} or {@code column_families}), partitioning
+ * ({@code hash} or {@code range}) and block cache ({@code shared} or {@code per-shard}, {@code
+ * cacheMB} in total) gets a fresh store with {@code numKeys} keys. Writes are random puts into
+ * the loaded key range with the WAL on. Shards are spread over the comma-separated {@code dirs},
+ * e.g. one per disk.
+ *
+ * <p>Usage: {@code ShardedRocksDBQPSTest <dirs> <numKeys> <valueSize> <shardCounts> <layouts>
+ * <partitionings> <caches> <cacheMB> <backgroundThreads> <threadsPerShard> <durationSeconds>},
+ * e.g. {@code /disk1/sharded,/disk2/sharded 10000000 100 1,2,4,8,16 instances,column_families
+ * hash,range shared,per-shard 1024 8 2 30}
+ */
+public class ShardedRocksDBQPSTest {
+
+  private static final int SCAN_LENGTH = 100;
+
+  public static void main(String[] args) throws Exception {
+    String dirs = "/tmp/test_sharded_rocksdb";
+    int numKeys = 1000000;
+    int valueSize = 100;
+    String shardCounts = "1,2,4,8";
+    String layouts = "instances,column_families";
+    String partitionings = "hash,range";
+    String caches = "shared";
+    long cacheMB = 256;
+    int backgroundThreads = 4;
+    int threadsPerShard = 2;
+    int durationSeconds = 10;
+    try {
+      dirs = args[0];
+      numKeys = Integer.parseInt(args[1]);
+      valueSize = Integer.parseInt(args[2]);
+      shardCounts = args[3];
+      layouts = args[4];
+      partitionings = args[5];
+      caches = args[6];
+      cacheMB = Long.parseLong(args[7]);
+      backgroundThreads = Integer.parseInt(args[8]);
+      threadsPerShard = Integer.parseInt(args[9]);
+      durationSeconds = Integer.parseInt(args[10]);
+    } catch (ArrayIndexOutOfBoundsException e) {
+    }
+    String[] roots = dirs.split(",");
+    ValueGenerator values = ValueGenerator.fixed(valueSize);
+    int keys = numKeys;
+    long durationMillis = durationSeconds * 1000L;
+
+    List<String> rows = new ArrayList<>();
+    for (String layoutName : layouts.split(",")) {
+      for (String partitioningName : partitionings.split(",")) {
+        for (String cache : caches.split(",")) {
+          ShardedRocksDBStore.Layout layout =
+              ShardedRocksDBStore.Layout.valueOf(layoutName.trim().toUpperCase());
+          ShardedRocksDBStore.Partitioning partitioning =
+              ShardedRocksDBStore.Partitioning.valueOf(partitioningName.trim().toUpperCase());
+          boolean sharedCache = "shared".equals(cache.trim());
+          // QPS of the first shard count, the base of the scaling factors
+          double[] base = null;
+          int baseThreads = 0;
+          for (String count : shardCounts.split(",")) {
+            int shards = Integer.parseInt(count.trim());
+            int threads = shards * threadsPerShard;
+            String[] shardDirs = new String[roots.length];
+            for (int i = 0; i < roots.length; i++) {
+              shardDirs[i] = roots[i].trim() + "/" + layoutName.trim() + "-" + shards;
+              Datasets.delete(shardDirs[i]);
+            }
+
+            String label =
+                layoutName.trim() + "-" + partitioningName.trim() + "-" + cache.trim() + "-"
+                    + shards;
+            ClosedLoopRunner.Result write;
+            ClosedLoopRunner.Result read;
+            ClosedLoopRunner.Result scan;
+            double loadSeconds;
+            long dataBytes = 0;
+            try (ShardedRocksDBStore store =
+                new ShardedRocksDBStore(
+                    shardDirs,
+                    shards,
+                    partitioning,
+                    numKeys,
+                    layout,
+                    cacheMB << 20,
+                    sharedCache,
+                    backgroundThreads)) {
+              long start = System.nanoTime();
+              Datasets.load(store, 0, numKeys, values);
+              loadSeconds = (System.nanoTime() - start) / 1e9;
+              write =
+                  ClosedLoopRunner.run(
+                      label + "-put",
+                      threads,
+                      durationMillis,
+                      random -> store.put(random.nextInt(keys), values.next(random)));
+              read =
+                  ClosedLoopRunner.run(
+                      label + "-get",
+                      threads,
+                      durationMillis,
+                      random -> store.get(random.nextInt(keys)));
+              scan =
+                  ClosedLoopRunner.run(
+                      label + "-scan",
+                      threads,
+                      durationMillis,
+                      random -> store.scan(random.nextInt(keys), SCAN_LENGTH));
+            } finally {
+              for (String dir : shardDirs) {
+                dataBytes += Datasets.sizeOf(new File(dir));
+                Datasets.delete(dir);
+              }
+            }
+
+            if (base == null) {
+              base = new double[] {write.qps(), read.qps(), scan.qps()};
+              baseThreads = threads;
+            }
+            double growth = (double) threads / baseThreads;
+            System.out.println(
+                layout + ", " + partitioning + ", " + cache.trim() + " cache, " + shards
+                    + " shards, " + threads + " threads: loaded " + numKeys + " keys in "
+                    + loadSeconds + "s, " + Datasets.formatBytes(dataBytes));
+            System.out.println("  Write QPS: " + write.qps() + ", " + write.latency().summary());
+            System.out.println("  Read QPS: " + read.qps() + ", " + read.latency().summary());
+            System.out.println("  Scan QPS: " + scan.qps() + ", " + scan.latency().summary());
+            rows.add(
+                String.format(
+                    "%-16s %-6s %-10s %6d %7d %12.0f %6.2f %12.0f %6.2f %12.0f %6.2f %10.1f",
+                    layoutName.trim(),
+                    partitioningName.trim(),
+                    cache.trim(),
+                    shards,
+                    threads,
+                    write.qps(),
+                    write.qps() / base[0] / growth,
+                    read.qps(),
+                    read.qps() / base[1] / growth,
+                    scan.qps(),
+                    scan.qps() / base[2] / growth,
+                    write.latency().percentile(99) / 1000.0));
+          }
+        }
+      }
+    }
+
+    System.out.println();
+    System.out.println(
+        "Keys: " + numKeys + ", value size: " + valueSize + ", dirs: " + roots.length
+            + ", cache: " + cacheMB + "MB, background threads: " + backgroundThreads
+            + ", threads per shard: " + threadsPerShard);
+    System.out.println(
+        String.format(
+            "%-16s %-6s %-10s %6s %7s %12s %6s %12s %6s %12s %6s %10s",
+            "layout",
+            "part",
+            "cache",
+            "shards",
+            "threads",
+            "write QPS",
+            "scale",
+            "read QPS",
+            "scale",
+            "scan QPS",
+            "scale",
+            "put p99us"));
+    for (String row : rows) {
+      System.out.println(row);
+    }
+  }
+}
@@ -0,0 +1,245 @@
+package com.zmc.qps;
+
+import com.zmc.qps.store.DuckDBStore;
+import com.zmc.qps.store.KVStore;
+import com.zmc.qps.store.RocksDBStore;
+import com.zmc.qps.store.Stores;
+import com.zmc.qps.workload.ClosedLoopRunner;
+import com.zmc.qps.workload.Datasets;
+import com.zmc.qps.workload.ValueGenerator;
+
+import org.apache.paimon.mergetree.PaimonKVStore;
+import org.apache.paimon.types.RowKind;
+import org.rocksdb.Options;
+import org.rocksdb.StringAppendOperator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Writes that change existing keys, and what the versions and tombstones they leave behind cost
+ * reads until compaction removes them.
+ *
+ * <p>Every engine and workload gets a fresh store with {@code numKeys} keys, compacted so reads
+ * start from a clean state, and then:
+ *
+ * <ol>
+ *   <li>random reads over all keys: the baseline
+ *   <li>the workload for {@code durationSeconds} on random existing keys: write QPS
+ *   <li>a flush, so new versions and tombstones sit in files next to the old data, and random
+ *       reads again: read QPS before compaction
+ *   <li>a full compaction and random reads once more: read QPS after compaction
+ * </ol>
+ *
+ * <p>Workloads, skipped for engines that have no such operation:
+ *
+ * <ul>
+ *   <li>{@code upsert}: RocksDB {@code put} over an existing key, DuckDB {@code INSERT OR
+ *       REPLACE}, Paimon {@code KeyValue} with {@link RowKind#UPDATE_AFTER}
+ *   <li>{@code update}: DuckDB {@code UPDATE ... WHERE id = ?}
+ *   <li>{@code merge}: RocksDB {@code merge} with the string append operator, so reads have to
+ *       combine the base value with every operand until compaction
+ *   <li>{@code delete}: RocksDB {@code delete}, DuckDB {@code DELETE}, Paimon {@link
+ *       RowKind#DELETE}
+ *   <li>{@code delete_range}: RocksDB {@code deleteRange} over {@value #RANGE} keys
+ * </ul>
+ *
+ * <p>Paimon reads go through {@link org.apache.paimon.mergetree.LookupLevels}, which returns the
+ * newest version of a key across levels. The hit rate of the reads shows how much was deleted.
+ *
+ * <p>Usage: {@code UpdateDeleteQPSTest <engines> <path> <numKeys> <valueSize> <workloads>
+ * <threads> <durationSeconds>}, e.g. {@code duckdb,rocksdb,paimon /tmp/update_delete 1000000 100
+ * upsert,update,merge,delete,delete_range 8 10}
+ */
+public class UpdateDeleteQPSTest {
+
+  private static final int RANGE = 100;
+
+  public static void main(String[] args) throws Exception {
+    String engines = "duckdb,rocksdb,paimon";
+    String path = "/tmp/test_update_delete";
+    int numKeys = 1000000;
+    int valueSize = 100;
+    String workloads = "upsert,update,merge,delete,delete_range";
+    int threads = 8;
+    int durationSeconds = 10;
+    try {
+      engines = args[0];
+      path = args[1];
+      numKeys = Integer.parseInt(args[2]);
+      valueSize = Integer.parseInt(args[3]);
+      workloads = args[4];
+      threads = Integer.parseInt(args[5]);
+      durationSeconds = Integer.parseInt(args[6]);
+    } catch (ArrayIndexOutOfBoundsException e) {
+    }
+    ValueGenerator values = ValueGenerator.fixed(valueSize);
+    long durationMillis = durationSeconds * 1000L;
+    int keys = numKeys;
+
+    List<String> rows = new ArrayList<>();
+    for (String engine : engines.split(",")) {
+      engine = engine.trim();
+      for (String workload : workloads.split(",")) {
+        workload = workload.trim();
+        String storePath = path + "/" + engine + "-" + workload;
+        clean(storePath);
+        try (KVStore store = open(engine, storePath)) {
+          ClosedLoopRunner.Operation write = operation(store, workload, keys, values);
+          if (write == null) {
+            System.out.println("Engine: " + engine + ", workload: " + workload + ": skipped");
+            continue;
+          }
+          Datasets.load(store, 0, numKeys, values);
+          compact(store);
+
+          String label = engine + "-" + workload;
+          LongAdder[] hits = {new LongAdder(), new LongAdder(), new LongAdder()};
+          ClosedLoopRunner.Result base =
+              read(label + "-base", store, threads, durationMillis, keys, hits[0]);
+          ClosedLoopRunner.Result writes =
+              ClosedLoopRunner.run(label + "-write", threads, durationMillis, write);
+          store.flush();
+          long diskBefore = Datasets.sizeOf(new File(storePath));
+          ClosedLoopRunner.Result before =
+              read(label + "-before", store, threads, durationMillis, keys, hits[1]);
+          long compactStart = System.nanoTime();
+          compact(store);
+          double compactSeconds = (System.nanoTime() - compactStart) / 1e9;
+          long diskAfter = Datasets.sizeOf(new File(storePath));
+          ClosedLoopRunner.Result after =
+              read(label + "-after", store, threads, durationMillis, keys, hits[2]);
+
+          System.out.println("Engine: " + engine + ", workload: " + workload);
+          System.out.println("  Base read QPS: " + base.qps() + ", " + base.latency().summary());
+          System.out.println("  Write QPS: " + writes.qps() + ", " + writes.latency().summary());
+          System.out.println(
+              "  Read QPS before compaction: " + before.qps() + ", " + before.latency().summary());
+          System.out.println(
+              "  Read QPS after compaction: " + after.qps() + ", " + after.latency().summary());
+          System.out.println(
+              "  Compaction: " + compactSeconds + "s, disk " + Datasets.formatBytes(diskBefore)
+                  + " -> " + Datasets.formatBytes(diskAfter));
+          rows.add(
+              String.format(
+                  "%-8s %-13s %12.0f %12.0f %12.0f %7.1f %12.0f %7.1f %10s %10s",
+                  engine,
+                  workload,
+                  writes.qps(),
+                  base.qps(),
+                  before.qps(),
+                  100.0 * hits[1].sum() / Math.max(1, before.latency().count()),
+                  after.qps(),
+                  100.0 * hits[2].sum() / Math.max(1, after.latency().count()),
+                  Datasets.formatBytes(diskBefore),
+                  Datasets.formatBytes(diskAfter)));
+        } finally {
+          clean(storePath);
+        }
+      }
+    }
+
+    System.out.println();
+    System.out.println(
+        "Keys: " + numKeys + ", value size: " + valueSize + ", threads: " + threads
+            + ", duration: " + durationSeconds + "s");
+    System.out.println(
+        String.format(
+            "%-8s %-13s %12s %12s %12s %7s %12s %7s %10s %10s",
+            "engine",
+            "workload",
+            "write QPS",
+            "base read",
+            "read before",
+            "hit%",
+            "read after",
+            "hit%",
+            "disk",
+            "compacted"));
+    for (String row : rows) {
+      System.out.println(row);
+    }
+  }
+
+  /** Opens RocksDB with a merge operator, the other engines like {@link Stores#open}. */
+  private static KVStore open(String engine, String path) throws IOException {
+    if ("rocksdb".equals(engine)) {
+      new File(path).getParentFile().mkdirs();
+      return new RocksDBStore(
+          new Options().setCreateIfMissing(true).setMergeOperator(new StringAppendOperator()),
+          path);
+    }
+    return Stores.open(engine, path);
+  }
+
+  /** The write of {@code workload} on {@code store}, or null if the engine has no such write. */
+  private static ClosedLoopRunner.Operation operation(
+      KVStore store, String workload, int keys, ValueGenerator values) {
+    switch (workload) {
+      case "upsert":
+        if (store instanceof PaimonKVStore) {
+          PaimonKVStore paimon = (PaimonKVStore) store;
+          return random ->
+              paimon.put(random.nextInt(keys), values.next(random), RowKind.UPDATE_AFTER);
+        }
+        return random -> store.put(random.nextInt(keys), values.next(random));
+      case "update":
+        if (store instanceof DuckDBStore) {
+          DuckDBStore duckDB = (DuckDBStore) store;
+          return random -> duckDB.update(random.nextInt(keys), values.next(random));
+        }
+        return null;
+      case "merge":
+        if (store instanceof RocksDBStore) {
+          RocksDBStore rocksDB = (RocksDBStore) store;
+          return random -> rocksDB.merge(random.nextInt(keys), values.next(random));
+        }
+        return null;
+      case "delete":
+        return random -> store.delete(random.nextInt(keys));
+      case "delete_range":
+        if (store instanceof RocksDBStore) {
+          RocksDBStore rocksDB = (RocksDBStore) store;
+          return random -> {
+            int from = random.nextInt(keys);
+            rocksDB.deleteRange(from, from + RANGE);
+          };
+        }
+        return null;
+      default:
+        throw new IllegalArgumentException("Unknown workload: " + workload);
+    }
+  }
+
+  private static ClosedLoopRunner.Result read(
+      String label, KVStore store, int threads, long durationMillis, int keys, LongAdder hits)
+      throws Exception {
+    return ClosedLoopRunner.run(
+        label,
+        threads,
+        durationMillis,
+        random -> {
+          if (store.get(random.nextInt(keys)) != null) {
+            hits.increment();
+          }
+        });
+  }
+
+  /** Removes old versions and tombstones: RocksDB and Paimon compact, DuckDB checkpoints. */
+  private static void compact(KVStore store) throws IOException {
+    store.flush();
+    if (store instanceof RocksDBStore) {
+      ((RocksDBStore) store).compact();
+    } else if (store instanceof PaimonKVStore) {
+      ((PaimonKVStore) store).compact();
+    }
+  }
+
+  private static void clean(String path) {
+    Datasets.delete(path);
+    Datasets.delete(path + ".wal");
+  }
+}
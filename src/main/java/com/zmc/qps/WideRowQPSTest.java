@@ -0,0 +1,356 @@
+package com.zmc.qps;
+
+import com.zmc.qps.codec.RowCodec;
+import com.zmc.qps.codec.RowCodecs;
+import com.zmc.qps.codec.RowSchema;
+import com.zmc.qps.store.RocksDBStore;
+import com.zmc.qps.workload.ClosedLoopRunner;
+import com.zmc.qps.workload.Datasets;
+
+import org.duckdb.DuckDBAppender;
+import org.duckdb.DuckDBConnection;
+import org.rocksdb.RocksIterator;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Wide rows of many mixed-type columns: RocksDB with the row encoded by each {@link RowCodec},
+ * against DuckDB storing the same rows as real columns.
+ *
+ * <p>Per codec it reports bytes per row, encode and decode cost, data size on disk, point read
+ * QPS fetching the full row vs a single column, and full scan rows/s decoding every column vs one.
+ * DuckDB reports the same reads as {@code SELECT *} vs a projection of that column.
+ *
+ * <p>Usage: {@code WideRowQPSTest <path> <numRows> <schema> <codecs> <threads> <durationSeconds>
+ * <column> <stringLength> <nullPercent>}, e.g. {@code /tmp/wide 1000000 40
+ * fixed,binaryrow,varint,arrow 8 10 37 16 10}. See {@link RowSchema} for schema specs. On Java
+ * 9+ the {@code arrow} codec needs {@code --add-opens=java.base/java.nio=ALL-UNNAMED}.
+ */
+public class WideRowQPSTest {
+
+  private static final int BATCH_SIZE = 10000;
+  private static final int SAMPLE_ROWS = 10000;
+
+  public static void main(String[] args) throws Exception {
+    String path = "/tmp/test_wide";
+    int numRows = 1000000;
+    String schemaSpec = "40";
+    String codecs = String.join(",", RowCodecs.CODECS);
+    int threads = 8;
+    int durationSeconds = 10;
+    int column = -1;
+    int stringLength = 16;
+    int nullPercent = 10;
+    try {
+      path = args[0];
+      numRows = Integer.parseInt(args[1]);
+      schemaSpec = args[2];
+      codecs = args[3];
+      threads = Integer.parseInt(args[4]);
+      durationSeconds = Integer.parseInt(args[5]);
+      column = Integer.parseInt(args[6]);
+      stringLength = Integer.parseInt(args[7]);
+      nullPercent = Integer.parseInt(args[8]);
+    } catch (ArrayIndexOutOfBoundsException e) {
+    }
+    RowSchema schema = RowSchema.parse(schemaSpec, stringLength, nullPercent);
+    if (column < 0) {
+      // the last column, the most expensive one to reach for formats without fixed offsets
+      column = schema.size() - 1;
+    }
+    long durationMillis = durationSeconds * 1000L;
+    new File(path).mkdirs();
+    System.out.println(
+        "Schema: " + schema + ", rows: " + numRows + ", column: " + column + " ("
+            + schema.type(column) + ")");
+
+    List<String> rows = new ArrayList<>();
+    rows.add(duckDB(path + "/wide.duckdb", schema, numRows, threads, durationMillis, column));
+    for (String name : codecs.split(",")) {
+      try (RowCodec codec = RowCodecs.create(name.trim(), schema)) {
+        rows.add(
+            rocksDB(
+                path + "/" + codec.name(),
+                codec,
+                schema,
+                numRows,
+                threads,
+                durationMillis,
+                column));
+      }
+    }
+
+    System.out.println();
+    System.out.println(
+        String.format(
+            "%-10s %9s %9s %9s %9s %10s %12s %12s %12s %12s",
+            "format",
+            "bytes/row",
+            "enc ns",
+            "dec ns",
+            "col ns",
+            "disk",
+            "row QPS",
+            "column QPS",
+            "row scan/s",
+            "col scan/s"));
+    for (String row : rows) {
+      System.out.println(row);
+    }
+  }
+
+  private static String rocksDB(
+      String path,
+      RowCodec codec,
+      RowSchema schema,
+      int numRows,
+      int threads,
+      long durationMillis,
+      int column)
+      throws Exception {
+    int samples = Math.min(numRows, SAMPLE_ROWS);
+    Object[][] sample = new Object[samples][];
+    byte[][] encoded = new byte[samples][];
+    for (int i = 0; i < samples; i++) {
+      sample[i] = schema.row(i);
+      encoded[i] = codec.encode(sample[i]);
+      if (!Arrays.equals(sample[i], codec.decode(encoded[i]))
+          || !Objects.equals(sample[i][column], codec.decodeColumn(encoded[i], column))) {
+        throw new IllegalStateException(codec.name() + " does not round-trip row " + i);
+      }
+    }
+
+    // Codec cost alone, over rows that are already in memory
+    long encodedBytes = 0;
+    long start = System.nanoTime();
+    for (int i = 0; i < numRows; i++) {
+      encodedBytes += codec.encode(sample[i % samples]).length;
+    }
+    double encodeNanos = (System.nanoTime() - start) / (double) numRows;
+    start = System.nanoTime();
+    for (int i = 0; i < numRows; i++) {
+      codec.decode(encoded[i % samples]);
+    }
+    double decodeNanos = (System.nanoTime() - start) / (double) numRows;
+    start = System.nanoTime();
+    for (int i = 0; i < numRows; i++) {
+      codec.decodeColumn(encoded[i % samples], column);
+    }
+    double columnNanos = (System.nanoTime() - start) / (double) numRows;
+
+    Datasets.delete(path);
+    try (RocksDBStore store = new RocksDBStore(path)) {
+      int[] keys = new int[BATCH_SIZE];
+      byte[][] values = new byte[BATCH_SIZE][];
+      int n = 0;
+      for (int i = 0; i < numRows; i++) {
+        keys[n] = i;
+        values[n] = codec.encode(schema.row(i));
+        if (++n == BATCH_SIZE || i == numRows - 1) {
+          store.putBatch(keys, values, n);
+          n = 0;
+        }
+      }
+      store.flush();
+      long diskBytes = Datasets.sizeOf(new File(path));
+
+      int col = column;
+      ClosedLoopRunner.Result rowReads =
+          ClosedLoopRunner.run(
+              codec.name() + "-row",
+              threads,
+              durationMillis,
+              random -> codec.decode(store.get(random.nextInt(numRows))));
+      ClosedLoopRunner.Result columnReads =
+          ClosedLoopRunner.run(
+              codec.name() + "-column",
+              threads,
+              durationMillis,
+              random -> codec.decodeColumn(store.get(random.nextInt(numRows)), col));
+      double rowScan = scanRocksDB(store, value -> codec.decode(value));
+      double columnScan = scanRocksDB(store, value -> codec.decodeColumn(value, col));
+
+      System.out.println("Codec: " + codec.name() + ", bytes/row: " + encodedBytes / numRows);
+      System.out.println(
+          "  Encode ns/row: " + encodeNanos + ", decode ns/row: " + decodeNanos
+              + ", column decode ns/row: " + columnNanos);
+      System.out.println(
+          "  Row read QPS: " + rowReads.qps() + ", latency: " + rowReads.latency().summary());
+      System.out.println(
+          "  Column read QPS: " + columnReads.qps() + ", latency: "
+              + columnReads.latency().summary());
+      System.out.println("  Row scan rows/s: " + rowScan + ", column scan rows/s: " + columnScan);
+      return String.format(
+          "%-10s %9d %9.0f %9.0f %9.0f %10s %12.0f %12.0f %12.0f %12.0f",
+          codec.name(),
+          encodedBytes / numRows,
+          encodeNanos,
+          decodeNanos,
+          columnNanos,
+          Datasets.formatBytes(diskBytes),
+          rowReads.qps(),
+          columnReads.qps(),
+          rowScan,
+          columnScan);
+    }
+  }
+
+  private interface Decoder {
+    void decode(byte[] value);
+  }
+
+  /** Reads all rows in key order and returns rows/s. */
+  private static double scanRocksDB(RocksDBStore store, Decoder decoder) {
+    long start = System.nanoTime();
+    long count = 0;
+    try (RocksIterator iterator = store.db().newIterator()) {
+      for (iterator.seekToFirst(); iterator.isValid(); iterator.next()) {
+        decoder.decode(iterator.value());
+        count++;
+      }
+    }
+    return count / ((System.nanoTime() - start) / 1e9);
+  }
+
+  private static String duckDB(
+      String path, RowSchema schema, int numRows, int threads, long durationMillis, int column)
+      throws Exception {
+    Datasets.delete(path);
+    StringBuilder ddl = new StringBuilder("CREATE TABLE wide (id INTEGER PRIMARY KEY");
+    for (int i = 0; i < schema.size(); i++) {
+      ddl.append(", ").append(schema.columnName(i)).append(' ').append(schema.duckDBType(i));
+    }
+    ddl.append(')');
+
+    try (DuckDBConnection connection =
+        (DuckDBConnection) DriverManager.getConnection("jdbc:duckdb:" + path)) {
+      try (Statement stmt = connection.createStatement()) {
+        stmt.execute(ddl.toString());
+      }
+      try (DuckDBAppender appender =
+          connection.createAppender(DuckDBConnection.DEFAULT_SCHEMA, "wide")) {
+        for (int i = 0; i < numRows; i++) {
+          appender.beginRow();
+          appender.append(i);
+          for (Object value : schema.row(i)) {
+            if (value == null) {
+              // the appender has no typed null, a null String appends NULL to any column
+              appender.append((String) null);
+            } else if (value instanceof Integer) {
+              appender.append((int) (Integer) value);
+            } else if (value instanceof Long) {
+              appender.append((long) (Long) value);
+            } else if (value instanceof Double) {
+              appender.append((double) (Double) value);
+            } else {
+              appender.append((String) value);
+            }
+          }
+          appender.endRow();
+        }
+      }
+      try (Statement stmt = connection.createStatement()) {
+        stmt.execute("CHECKPOINT");
+      }
+      long diskBytes = Datasets.sizeOf(new File(path));
+
+      String columnName = schema.columnName(column);
+      List<Connection> connections = new CopyOnWriteArrayList<>();
+      ThreadLocal<PreparedStatement[]> statements =
+          ThreadLocal.withInitial(
+              () -> {
+                try {
+                  Connection c = connection.duplicate();
+                  connections.add(c);
+                  return new PreparedStatement[] {
+                    c.prepareStatement("SELECT * FROM wide WHERE id = ?"),
+                    c.prepareStatement("SELECT " + columnName + " FROM wide WHERE id = ?")
+                  };
+                } catch (SQLException e) {
+                  throw new IllegalStateException(e);
+                }
+              });
+      try {
+        ClosedLoopRunner.Result rowReads =
+            ClosedLoopRunner.run(
+                "duckdb-row",
+                threads,
+                durationMillis,
+                random -> pointRead(statements.get()[0], random.nextInt(numRows)));
+        ClosedLoopRunner.Result columnReads =
+            ClosedLoopRunner.run(
+                "duckdb-column",
+                threads,
+                durationMillis,
+                random -> pointRead(statements.get()[1], random.nextInt(numRows)));
+        double rowScan = scanDuckDB(connection, "SELECT * FROM wide");
+        double columnScan = scanDuckDB(connection, "SELECT " + columnName + " FROM wide");
+
+        System.out.println("DuckDB columns, data: " + Datasets.formatBytes(diskBytes));
+        System.out.println(
+            "  Row read QPS: " + rowReads.qps() + ", latency: " + rowReads.latency().summary());
+        System.out.println(
+            "  Column read QPS: " + columnReads.qps() + ", latency: "
+                + columnReads.latency().summary());
+        System.out.println(
+            "  Row scan rows/s: " + rowScan + ", column scan rows/s: " + columnScan);
+        return String.format(
+            "%-10s %9s %9s %9s %9s %10s %12.0f %12.0f %12.0f %12.0f",
+            "duckdb",
+            "n/a",
+            "n/a",
+            "n/a",
+            "n/a",
+            Datasets.formatBytes(diskBytes),
+            rowReads.qps(),
+            columnReads.qps(),
+            rowScan,
+            columnScan);
+      } finally {
+        for (Connection c : connections) {
+          c.close();
+        }
+      }
+    }
+  }
+
+  private static void pointRead(PreparedStatement stmt, int id) throws SQLException {
+    stmt.setInt(1, id);
+    try (ResultSet rs = stmt.executeQuery()) {
+      int columns = rs.getMetaData().getColumnCount();
+      while (rs.next()) {
+        for (int i = 1; i <= columns; i++) {
+          rs.getObject(i);
+        }
+      }
+    }
+  }
+
+  /** Reads every row of {@code sql} and returns rows/s. */
+  private static double scanDuckDB(Connection connection, String sql) throws SQLException {
+    long start = System.nanoTime();
+    long count = 0;
+    try (Statement stmt = connection.createStatement();
+        ResultSet rs = stmt.executeQuery(sql)) {
+      int columns = rs.getMetaData().getColumnCount();
+      while (rs.next()) {
+        for (int i = 1; i <= columns; i++) {
+          rs.getObject(i);
+        }
+        count++;
+      }
+    }
+    return count / ((System.nanoTime() - start) / 1e9);
+  }
+}
@@ -0,0 +1,155 @@
+package com.zmc.qps.codec;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.types.Types;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Every row as a one-row Arrow IPC stream: schema message, record batch and end of stream. This
+ * is what storing Arrow per key costs; Arrow only pays off for batches of many rows.
+ */
+public class ArrowRowCodec implements RowCodec {
+
+  private final RowSchema schema;
+  private final Schema arrowSchema;
+  private final BufferAllocator allocator = new RootAllocator();
+
+  public ArrowRowCodec(RowSchema schema) {
+    this.schema = schema;
+    List<Field> fields = new ArrayList<>();
+    for (int i = 0; i < schema.size(); i++) {
+      fields.add(Field.nullable(schema.columnName(i), minorType(schema.type(i)).getType()));
+    }
+    this.arrowSchema = new Schema(fields);
+  }
+
+  private static Types.MinorType minorType(RowSchema.Type type) {
+    switch (type) {
+      case INT:
+        return Types.MinorType.INT;
+      case BIGINT:
+        return Types.MinorType.BIGINT;
+      case DOUBLE:
+        return Types.MinorType.FLOAT8;
+      default:
+        return Types.MinorType.VARCHAR;
+    }
+  }
+
+  @Override
+  public String name() {
+    return "arrow";
+  }
+
+  @Override
+  public byte[] encode(Object[] row) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (VectorSchemaRoot root = VectorSchemaRoot.create(arrowSchema, allocator)) {
+      root.allocateNew();
+      for (int i = 0; i < row.length; i++) {
+        FieldVector vector = root.getVector(i);
+        Object value = row[i];
+        switch (schema.type(i)) {
+          case INT:
+            if (value == null) {
+              ((IntVector) vector).setNull(0);
+            } else {
+              ((IntVector) vector).setSafe(0, (Integer) value);
+            }
+            break;
+          case BIGINT:
+            if (value == null) {
+              ((BigIntVector) vector).setNull(0);
+            } else {
+              ((BigIntVector) vector).setSafe(0, (Long) value);
+            }
+            break;
+          case DOUBLE:
+            if (value == null) {
+              ((Float8Vector) vector).setNull(0);
+            } else {
+              ((Float8Vector) vector).setSafe(0, (Double) value);
+            }
+            break;
+          default:
+            if (value == null) {
+              ((VarCharVector) vector).setNull(0);
+            } else {
+              ((VarCharVector) vector)
+                  .setSafe(0, ((String) value).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+      }
+      root.setRowCount(1);
+      try (ArrowStreamWriter writer = new ArrowStreamWriter(root, null, out)) {
+        writer.start();
+        writer.writeBatch();
+        writer.end();
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return out.toByteArray();
+  }
+
+  @Override
+  public Object[] decode(byte[] bytes) {
+    try (ArrowStreamReader reader =
+        new ArrowStreamReader(new ByteArrayInputStream(bytes), allocator)) {
+      reader.loadNextBatch();
+      VectorSchemaRoot root = reader.getVectorSchemaRoot();
+      Object[] row = new Object[schema.size()];
+      for (int i = 0; i < row.length; i++) {
+        row[i] = read(root.getVector(i), i);
+      }
+      return row;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** The IPC stream has to be read as a whole, only materializing the value is saved. */
+  @Override
+  public Object decodeColumn(byte[] bytes, int column) {
+    try (ArrowStreamReader reader =
+        new ArrowStreamReader(new ByteArrayInputStream(bytes), allocator)) {
+      reader.loadNextBatch();
+      return read(reader.getVectorSchemaRoot().getVector(column), column);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private Object read(FieldVector vector, int column) {
+    if (vector.isNull(0)) {
+      return null;
+    }
+    if (schema.type(column) == RowSchema.Type.STRING) {
+      return new String(((VarCharVector) vector).get(0), StandardCharsets.UTF_8);
+    }
+    return vector.getObject(0);
+  }
+
+  @Override
+  public void close() {
+    allocator.close();
+  }
+}
@@ -0,0 +1,89 @@
+package com.zmc.qps.codec;
+
+import org.apache.paimon.data.BinaryRow;
+import org.apache.paimon.data.BinaryRowWriter;
+import org.apache.paimon.data.BinaryString;
+import org.apache.paimon.memory.MemorySegment;
+
+/**
+ * Paimon's {@link BinaryRow}, the layout Paimon keeps keys and values in: null bits, an 8-byte
+ * slot per field and a variable part, where strings of up to 7 bytes live inside their slot.
+ */
+public class BinaryRowCodec implements RowCodec {
+
+  private final RowSchema schema;
+
+  public BinaryRowCodec(RowSchema schema) {
+    this.schema = schema;
+  }
+
+  @Override
+  public String name() {
+    return "binaryrow";
+  }
+
+  @Override
+  public byte[] encode(Object[] row) {
+    BinaryRow binaryRow = new BinaryRow(schema.size());
+    BinaryRowWriter writer = new BinaryRowWriter(binaryRow);
+    for (int i = 0; i < row.length; i++) {
+      Object value = row[i];
+      if (value == null) {
+        writer.setNullAt(i);
+        continue;
+      }
+      switch (schema.type(i)) {
+        case INT:
+          writer.writeInt(i, (Integer) value);
+          break;
+        case BIGINT:
+          writer.writeLong(i, (Long) value);
+          break;
+        case DOUBLE:
+          writer.writeDouble(i, (Double) value);
+          break;
+        default:
+          writer.writeString(i, BinaryString.fromString((String) value));
+      }
+    }
+    writer.complete();
+    return binaryRow.toBytes();
+  }
+
+  @Override
+  public Object[] decode(byte[] bytes) {
+    BinaryRow binaryRow = wrap(bytes);
+    Object[] row = new Object[schema.size()];
+    for (int i = 0; i < row.length; i++) {
+      row[i] = read(binaryRow, i);
+    }
+    return row;
+  }
+
+  @Override
+  public Object decodeColumn(byte[] bytes, int column) {
+    return read(wrap(bytes), column);
+  }
+
+  private BinaryRow wrap(byte[] bytes) {
+    BinaryRow binaryRow = new BinaryRow(schema.size());
+    binaryRow.pointTo(MemorySegment.wrap(bytes), 0, bytes.length);
+    return binaryRow;
+  }
+
+  private Object read(BinaryRow row, int column) {
+    if (row.isNullAt(column)) {
+      return null;
+    }
+    switch (schema.type(column)) {
+      case INT:
+        return row.getInt(column);
+      case BIGINT:
+        return row.getLong(column);
+      case DOUBLE:
+        return row.getDouble(column);
+      default:
+        return row.getString(column).toString();
+    }
+  }
+}
@@ -0,0 +1,104 @@
+package com.zmc.qps.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Hand-rolled fixed layout: a null bitmap, then one fixed-width slot per column at an offset
+ * known from the schema, then the string bytes. A string slot holds offset and length of its
+ * bytes, so any column is read without looking at the others.
+ */
+public class FixedRowCodec implements RowCodec {
+
+  private final RowSchema schema;
+  private final int[] offsets;
+  private final int fixedSize;
+
+  public FixedRowCodec(RowSchema schema) {
+    this.schema = schema;
+    this.offsets = new int[schema.size()];
+    int offset = (schema.size() + 7) / 8;
+    for (int i = 0; i < schema.size(); i++) {
+      offsets[i] = offset;
+      offset += schema.type(i) == RowSchema.Type.INT ? 4 : 8;
+    }
+    this.fixedSize = offset;
+  }
+
+  @Override
+  public String name() {
+    return "fixed";
+  }
+
+  @Override
+  public byte[] encode(Object[] row) {
+    byte[][] strings = new byte[row.length][];
+    int size = fixedSize;
+    for (int i = 0; i < row.length; i++) {
+      if (row[i] != null && schema.type(i) == RowSchema.Type.STRING) {
+        strings[i] = ((String) row[i]).getBytes(StandardCharsets.UTF_8);
+        size += strings[i].length;
+      }
+    }
+    byte[] bytes = new byte[size];
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    int var = fixedSize;
+    for (int i = 0; i < row.length; i++) {
+      Object value = row[i];
+      if (value == null) {
+        bytes[i >>> 3] |= (byte) (1 << (i & 7));
+        continue;
+      }
+      switch (schema.type(i)) {
+        case INT:
+          buffer.putInt(offsets[i], (Integer) value);
+          break;
+        case BIGINT:
+          buffer.putLong(offsets[i], (Long) value);
+          break;
+        case DOUBLE:
+          buffer.putDouble(offsets[i], (Double) value);
+          break;
+        default:
+          buffer.putInt(offsets[i], var);
+          buffer.putInt(offsets[i] + 4, strings[i].length);
+          System.arraycopy(strings[i], 0, bytes, var, strings[i].length);
+          var += strings[i].length;
+      }
+    }
+    return bytes;
+  }
+
+  @Override
+  public Object[] decode(byte[] bytes) {
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    Object[] row = new Object[schema.size()];
+    for (int i = 0; i < row.length; i++) {
+      row[i] = read(buffer, bytes, i);
+    }
+    return row;
+  }
+
+  @Override
+  public Object decodeColumn(byte[] bytes, int column) {
+    return read(ByteBuffer.wrap(bytes), bytes, column);
+  }
+
+  private Object read(ByteBuffer buffer, byte[] bytes, int column) {
+    if ((bytes[column >>> 3] & (1 << (column & 7))) != 0) {
+      return null;
+    }
+    int offset = offsets[column];
+    switch (schema.type(column)) {
+      case INT:
+        return buffer.getInt(offset);
+      case BIGINT:
+        return buffer.getLong(offset);
+      case DOUBLE:
+        return buffer.getDouble(offset);
+      default:
+        return new String(
+            bytes, buffer.getInt(offset), buffer.getInt(offset + 4), StandardCharsets.UTF_8);
+    }
+  }
+}
@@ -0,0 +1,22 @@
+package com.zmc.qps.codec;
+
+import java.io.Closeable;
+
+/**
+ * Encodes rows of a {@link RowSchema} into the value bytes of a key/value store. Implementations
+ * are thread-safe.
+ */
+public interface RowCodec extends Closeable {
+
+  String name();
+
+  byte[] encode(Object[] row);
+
+  Object[] decode(byte[] bytes);
+
+  /** Decodes a single column, reading no more of {@code bytes} than the format requires. */
+  Object decodeColumn(byte[] bytes, int column);
+
+  @Override
+  default void close() {}
+}
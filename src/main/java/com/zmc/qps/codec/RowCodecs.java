@@ -0,0 +1,27 @@
+package com.zmc.qps.codec;
+
+/**
+ * Creates a {@link RowCodec} by name: {@code fixed}, {@code binaryrow}, {@code varint} or {@code
+ * arrow}.
+ */
+public class RowCodecs {
+
+  public static final String[] CODECS = {"fixed", "binaryrow", "varint", "arrow"};
+
+  private RowCodecs() {}
+
+  public static RowCodec create(String name, RowSchema schema) {
+    switch (name) {
+      case "fixed":
+        return new FixedRowCodec(schema);
+      case "binaryrow":
+        return new BinaryRowCodec(schema);
+      case "varint":
+        return new VarintRowCodec(schema);
+      case "arrow":
+        return new ArrowRowCodec(schema);
+      default:
+        throw new IllegalArgumentException("Unknown codec: " + name);
+    }
+  }
+}
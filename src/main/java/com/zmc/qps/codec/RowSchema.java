@@ -0,0 +1,128 @@
+package com.zmc.qps.codec;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Column types of a wide row plus how its random values look. Rows are {@code Object[]} with
+ * {@link Integer}, {@link Long}, {@link Double}, {@link String} or null per column.
+ *
+ * <p>Specs: {@code 40} for 40 columns cycling through all types, or a list of {@code type:count}
+ * such as {@code int:10,bigint:10,double:10,string:10}.
+ */
+public class RowSchema {
+
+  /** Supported column types. */
+  public enum Type {
+    INT,
+    BIGINT,
+    DOUBLE,
+    STRING
+  }
+
+  private final Type[] types;
+  private final int stringLength;
+  private final int nullPercent;
+
+  public RowSchema(Type[] types, int stringLength, int nullPercent) {
+    this.types = types.clone();
+    this.stringLength = stringLength;
+    this.nullPercent = nullPercent;
+  }
+
+  public static RowSchema parse(String spec, int stringLength, int nullPercent) {
+    List<Type> types = new ArrayList<>();
+    if (spec.indexOf(':') < 0) {
+      Type[] all = Type.values();
+      int columns = Integer.parseInt(spec.trim());
+      for (int i = 0; i < columns; i++) {
+        types.add(all[i % all.length]);
+      }
+    } else {
+      for (String part : spec.split(",")) {
+        String[] typeAndCount = part.split(":");
+        Type type = Type.valueOf(typeAndCount[0].trim().toUpperCase());
+        for (int i = Integer.parseInt(typeAndCount[1].trim()); i > 0; i--) {
+          types.add(type);
+        }
+      }
+    }
+    return new RowSchema(types.toArray(new Type[0]), stringLength, nullPercent);
+  }
+
+  public int size() {
+    return types.length;
+  }
+
+  public Type type(int column) {
+    return types[column];
+  }
+
+  public String columnName(int column) {
+    return "c" + column;
+  }
+
+  public String duckDBType(int column) {
+    switch (types[column]) {
+      case INT:
+        return "INTEGER";
+      case BIGINT:
+        return "BIGINT";
+      case DOUBLE:
+        return "DOUBLE";
+      default:
+        return "VARCHAR";
+    }
+  }
+
+  /**
+   * Returns the row of {@code id}. Values depend only on the id, so every engine and codec sees
+   * the same data. Strings are ASCII of 1 to {@code 2 * stringLength} characters.
+   */
+  public Object[] row(int id) {
+    Random random = new Random(id);
+    Object[] row = new Object[types.length];
+    for (int i = 0; i < types.length; i++) {
+      if (random.nextInt(100) < nullPercent) {
+        continue;
+      }
+      switch (types[i]) {
+        case INT:
+          row[i] = random.nextInt();
+          break;
+        case BIGINT:
+          row[i] = random.nextLong() >> random.nextInt(64);
+          break;
+        case DOUBLE:
+          row[i] = random.nextDouble();
+          break;
+        default:
+          char[] chars = new char[1 + random.nextInt(2 * stringLength)];
+          for (int c = 0; c < chars.length; c++) {
+            chars[c] = (char) ('a' + random.nextInt(26));
+          }
+          row[i] = new String(chars);
+      }
+    }
+    return row;
+  }
+
+  @Override
+  public String toString() {
+    int[] counts = new int[Type.values().length];
+    for (Type type : types) {
+      counts[type.ordinal()]++;
+    }
+    StringBuilder sb = new StringBuilder();
+    for (Type type : Type.values()) {
+      if (counts[type.ordinal()] > 0) {
+        sb.append(sb.length() == 0 ? "" : ",")
+            .append(type.name().toLowerCase())
+            .append(':')
+            .append(counts[type.ordinal()]);
+      }
+    }
+    return sb + " (string length " + stringLength + ", " + nullPercent + "% null)";
+  }
+}
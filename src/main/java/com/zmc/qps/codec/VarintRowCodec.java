@@ -0,0 +1,187 @@
+package com.zmc.qps.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Compact layout: a null bitmap, then only the non-null values in column order, ints and longs
+ * as zigzag varints, doubles as 8 bytes and strings as varint length plus UTF-8 bytes. Smallest
+ * of the codecs, but reading one column walks all columns before it.
+ */
+public class VarintRowCodec implements RowCodec {
+
+  private final RowSchema schema;
+  private final int bitmapSize;
+
+  public VarintRowCodec(RowSchema schema) {
+    this.schema = schema;
+    this.bitmapSize = (schema.size() + 7) / 8;
+  }
+
+  @Override
+  public String name() {
+    return "varint";
+  }
+
+  @Override
+  public byte[] encode(Object[] row) {
+    Output out = new Output(bitmapSize + row.length * 4);
+    out.position = bitmapSize;
+    for (int i = 0; i < row.length; i++) {
+      Object value = row[i];
+      if (value == null) {
+        out.bytes[i >>> 3] |= (byte) (1 << (i & 7));
+        continue;
+      }
+      switch (schema.type(i)) {
+        case INT:
+          int v = (Integer) value;
+          out.writeVarLong(((v << 1) ^ (v >> 31)) & 0xFFFFFFFFL);
+          break;
+        case BIGINT:
+          long l = (Long) value;
+          out.writeVarLong((l << 1) ^ (l >> 63));
+          break;
+        case DOUBLE:
+          out.writeFixedLong(Double.doubleToRawLongBits((Double) value));
+          break;
+        default:
+          byte[] string = ((String) value).getBytes(StandardCharsets.UTF_8);
+          out.writeVarLong(string.length);
+          out.write(string);
+      }
+    }
+    return Arrays.copyOf(out.bytes, out.position);
+  }
+
+  @Override
+  public Object[] decode(byte[] bytes) {
+    Input in = new Input(bytes, bitmapSize);
+    Object[] row = new Object[schema.size()];
+    for (int i = 0; i < row.length; i++) {
+      row[i] = read(in, i);
+    }
+    return row;
+  }
+
+  @Override
+  public Object decodeColumn(byte[] bytes, int column) {
+    Input in = new Input(bytes, bitmapSize);
+    for (int i = 0; i < column; i++) {
+      skip(in, i);
+    }
+    return read(in, column);
+  }
+
+  private boolean isNull(byte[] bytes, int column) {
+    return (bytes[column >>> 3] & (1 << (column & 7))) != 0;
+  }
+
+  private Object read(Input in, int column) {
+    if (isNull(in.bytes, column)) {
+      return null;
+    }
+    switch (schema.type(column)) {
+      case INT:
+        int v = (int) in.readVarLong();
+        return (v >>> 1) ^ -(v & 1);
+      case BIGINT:
+        long l = in.readVarLong();
+        return (l >>> 1) ^ -(l & 1);
+      case DOUBLE:
+        return Double.longBitsToDouble(in.readFixedLong());
+      default:
+        int length = (int) in.readVarLong();
+        String s = new String(in.bytes, in.position, length, StandardCharsets.UTF_8);
+        in.position += length;
+        return s;
+    }
+  }
+
+  private void skip(Input in, int column) {
+    if (isNull(in.bytes, column)) {
+      return;
+    }
+    switch (schema.type(column)) {
+      case INT:
+      case BIGINT:
+        in.readVarLong();
+        break;
+      case DOUBLE:
+        in.position += 8;
+        break;
+      default:
+        int length = (int) in.readVarLong();
+        in.position += length;
+    }
+  }
+
+  private static class Output {
+
+    private byte[] bytes;
+    private int position;
+
+    Output(int capacity) {
+      this.bytes = new byte[capacity];
+    }
+
+    private void ensure(int extra) {
+      if (position + extra > bytes.length) {
+        bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, position + extra));
+      }
+    }
+
+    void writeVarLong(long value) {
+      ensure(10);
+      while ((value & ~0x7FL) != 0) {
+        bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      bytes[position++] = (byte) value;
+    }
+
+    void writeFixedLong(long value) {
+      ensure(8);
+      for (int i = 0; i < 8; i++) {
+        bytes[position++] = (byte) (value >>> (i * 8));
+      }
+    }
+
+    void write(byte[] value) {
+      ensure(value.length);
+      System.arraycopy(value, 0, bytes, position, value.length);
+      position += value.length;
+    }
+  }
+
+  private static class Input {
+
+    private final byte[] bytes;
+    private int position;
+
+    Input(byte[] bytes, int position) {
+      this.bytes = bytes;
+      this.position = position;
+    }
+
+    long readVarLong() {
+      long value = 0;
+      int shift = 0;
+      byte b;
+      do {
+        b = bytes[position++];
+        value |= (long) (b & 0x7F) << shift;
+        shift += 7;
+      } while (b < 0);
+      return value;
+    }
+
+    long readFixedLong() {
+      long value = 0;
+      for (int i = 0; i < 8; i++) {
+        value |= (bytes[position++] & 0xFFL) << (i * 8);
+      }
+      return value;
+    }
+  }
+}
@@ -0,0 +1,280 @@
+package com.zmc.qps.fs;
+
+import org.apache.paimon.catalog.CatalogContext;
+import org.apache.paimon.fs.FileIO;
+import org.apache.paimon.fs.FileStatus;
+import org.apache.paimon.fs.Path;
+import org.apache.paimon.fs.PositionOutputStream;
+import org.apache.paimon.fs.SeekableInputStream;
+import org.apache.paimon.fs.local.LocalFileIO;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link FileIO} for {@code simulated://} paths: local files that cost what they would on a
+ * remote object store, so remote reads can be benchmarked offline.
+ *
+ * <p>Every request waits {@code latency}: a metadata call, creating a file, and every read that
+ * falls outside the range fetched by the previous request. A read request fetches at least
+ * {@code readAhead} bytes from the read position, like the read-ahead of an S3 or HDFS client,
+ * and all transferred bytes are throttled to {@code bandwidth} per stream. Requests and bytes
+ * are counted for all instances together.
+ *
+ * <p>Settings are global, taken from the system properties {@code simulated.latency-micros},
+ * {@code simulated.bandwidth-mb} (MB/s, 0 for unlimited) and {@code simulated.read-ahead}
+ * (bytes) and changeable with {@link #configure(long, long, int)}, so every {@link FileIO#get}
+ * caller sees the same remote store. Registered for the scheme by {@link
+ * SimulatedRemoteFileIOLoader}.
+ */
+public class SimulatedRemoteFileIO implements FileIO {
+
+  public static final String SCHEME = "simulated";
+
+  private static final long serialVersionUID = 1L;
+
+  private static volatile long latencyNanos =
+      Long.getLong("simulated.latency-micros", 0) * 1000;
+  private static volatile long bytesPerSecond = Long.getLong("simulated.bandwidth-mb", 0) << 20;
+  private static volatile int readAhead = Integer.getInteger("simulated.read-ahead", 0);
+
+  private static final LongAdder REQUESTS = new LongAdder();
+  private static final LongAdder BYTES_READ = new LongAdder();
+  private static final LongAdder BYTES_WRITTEN = new LongAdder();
+
+  private final LocalFileIO local = LocalFileIO.create();
+
+  /**
+   * Sets the cost of the simulated store for all instances; a bandwidth of 0 is unlimited, a
+   * read-ahead of 0 fetches exactly what is read.
+   */
+  public static void configure(
+      long latencyMicros, long bandwidthBytesPerSecond, int readAheadBytes) {
+    latencyNanos = latencyMicros * 1000;
+    bytesPerSecond = bandwidthBytesPerSecond;
+    readAhead = readAheadBytes;
+  }
+
+  public static void resetCounters() {
+    REQUESTS.reset();
+    BYTES_READ.reset();
+    BYTES_WRITTEN.reset();
+  }
+
+  public static long requests() {
+    return REQUESTS.sum();
+  }
+
+  public static long bytesRead() {
+    return BYTES_READ.sum();
+  }
+
+  public static long bytesWritten() {
+    return BYTES_WRITTEN.sum();
+  }
+
+  @Override
+  public boolean isObjectStore() {
+    return true;
+  }
+
+  @Override
+  public void configure(CatalogContext context) {}
+
+  @Override
+  public SeekableInputStream newInputStream(Path path) throws IOException {
+    request();
+    return new RemoteInputStream(local.newInputStream(path), local.getFileSize(path));
+  }
+
+  @Override
+  public PositionOutputStream newOutputStream(Path path, boolean overwrite) throws IOException {
+    request();
+    return new RemoteOutputStream(local.newOutputStream(path, overwrite));
+  }
+
+  @Override
+  public FileStatus getFileStatus(Path path) throws IOException {
+    request();
+    return new RemoteFileStatus(local.getFileStatus(path));
+  }
+
+  @Override
+  public FileStatus[] listStatus(Path path) throws IOException {
+    request();
+    FileStatus[] statuses = local.listStatus(path);
+    for (int i = 0; i < statuses.length; i++) {
+      statuses[i] = new RemoteFileStatus(statuses[i]);
+    }
+    return statuses;
+  }
+
+  @Override
+  public boolean exists(Path path) throws IOException {
+    request();
+    return local.exists(path);
+  }
+
+  @Override
+  public boolean delete(Path path, boolean recursive) throws IOException {
+    request();
+    return local.delete(path, recursive);
+  }
+
+  @Override
+  public boolean mkdirs(Path path) throws IOException {
+    request();
+    return local.mkdirs(path);
+  }
+
+  @Override
+  public boolean rename(Path src, Path dst) throws IOException {
+    request();
+    return local.rename(src, dst);
+  }
+
+  private static void request() {
+    REQUESTS.increment();
+    pause(latencyNanos);
+  }
+
+  private static void transfer(long bytes) {
+    long rate = bytesPerSecond;
+    if (rate > 0) {
+      pause(bytes * 1_000_000_000L / rate);
+    }
+  }
+
+  private static void pause(long nanos) {
+    long deadline = System.nanoTime() + nanos;
+    for (long remaining = nanos; remaining > 0; remaining = deadline - System.nanoTime()) {
+      LockSupport.parkNanos(remaining);
+    }
+  }
+
+  /** Reads the local file, paying for a request whenever a read leaves the fetched range. */
+  private static class RemoteInputStream extends SeekableInputStream {
+
+    private final SeekableInputStream in;
+    private final long length;
+    // range fetched by the last request
+    private long fetchedFrom;
+    private long fetchedTo;
+
+    private RemoteInputStream(SeekableInputStream in, long length) {
+      this.in = in;
+      this.length = length;
+    }
+
+    @Override
+    public void seek(long pos) throws IOException {
+      in.seek(pos);
+    }
+
+    @Override
+    public long getPos() throws IOException {
+      return in.getPos();
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      long pos = in.getPos();
+      if (len == 0 || pos >= length) {
+        return in.read(b, off, len);
+      }
+      if (pos < fetchedFrom || pos >= fetchedTo) {
+        fetchedFrom = pos;
+        fetchedTo = Math.min(length, pos + Math.max(len, readAhead));
+        request();
+        transfer(fetchedTo - fetchedFrom);
+        BYTES_READ.add(fetchedTo - fetchedFrom);
+      }
+      return in.read(b, off, (int) Math.min(len, fetchedTo - pos));
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+
+  private static class RemoteOutputStream extends PositionOutputStream {
+
+    private final PositionOutputStream out;
+
+    private RemoteOutputStream(PositionOutputStream out) {
+      this.out = out;
+    }
+
+    @Override
+    public long getPos() throws IOException {
+      return out.getPos();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      transfer(1);
+      BYTES_WRITTEN.increment();
+      out.write(b);
+    }
+
+    @Override
+    public void write(byte[] b) throws IOException {
+      write(b, 0, b.length);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      transfer(len);
+      BYTES_WRITTEN.add(len);
+      out.write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      out.close();
+    }
+  }
+
+  /** Local file status under the simulated scheme. */
+  private static class RemoteFileStatus implements FileStatus {
+
+    private final FileStatus status;
+
+    private RemoteFileStatus(FileStatus status) {
+      this.status = status;
+    }
+
+    @Override
+    public long getLen() {
+      return status.getLen();
+    }
+
+    @Override
+    public boolean isDir() {
+      return status.isDir();
+    }
+
+    @Override
+    public Path getPath() {
+      return new Path(SCHEME, null, status.getPath().toUri().getPath());
+    }
+
+    @Override
+    public long getModificationTime() {
+      return status.getModificationTime();
+    }
+  }
+}
@@ -0,0 +1,19 @@
+package com.zmc.qps.fs;
+
+import org.apache.paimon.fs.FileIO;
+import org.apache.paimon.fs.FileIOLoader;
+import org.apache.paimon.fs.Path;
+
+/** Makes {@link FileIO#get} resolve {@code simulated://} paths to {@link SimulatedRemoteFileIO}. */
+public class SimulatedRemoteFileIOLoader implements FileIOLoader {
+
+  @Override
+  public String getScheme() {
+    return SimulatedRemoteFileIO.SCHEME;
+  }
+
+  @Override
+  public FileIO load(Path path) {
+    return new SimulatedRemoteFileIO();
+  }
+}
@@ -0,0 +1,419 @@
+package com.zmc.qps.metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Optional JDK Flight Recorder capture of a measured phase. Enabled by {@code -Dqps.jfr=<dir>};
+ * {@link com.zmc.qps.workload.ClosedLoopRunner} and {@link
+ * com.zmc.qps.workload.OpenLoopRunner} record every run, so loading is never part of a
+ * recording.
+ *
+ * <p>At the end of a run the recording is written to {@code <dir>/<time>-<n>-<label>.jfr} and
+ * summarized next to it in a {@code .txt} file, which is also printed:
+ *
+ * <ul>
+ *   <li>CPU and JNI samples per component: RocksDB JNI, DuckDB JDBC, Paimon lookup ({@code
+ *       HashLookupStore}, {@code LookupLevels} and the rest of {@code org.apache.paimon.lookup}),
+ *       other Paimon code and everything else, by the innermost engine frame of each stack
+ *   <li>top frames of Java execution samples, and of native samples, i.e. time in JNI calls
+ *   <li>top allocation sites by sampled bytes
+ *   <li>monitor and {@code park} waits over 1ms, by the first non-JDK frame
+ * </ul>
+ *
+ * <p>Sampling runs at 10ms, set {@code -Dqps.jfr.top} for the number of rows per section.
+ */
+public class JfrProfiler {
+
+  private static final String DIR = System.getProperty("qps.jfr");
+  private static final int TOP = Integer.getInteger("qps.jfr.top", 15);
+  private static final AtomicInteger RUNS = new AtomicInteger();
+  private static final String[] COMPONENTS = {
+    "rocksdb-jni", "duckdb-jdbc", "paimon-lookup", "paimon", "other"
+  };
+
+  private final String label;
+  private final Object recording;
+
+  private JfrProfiler(String label, Object recording) {
+    this.label = label;
+    this.recording = recording;
+  }
+
+  public static boolean enabled() {
+    return DIR != null;
+  }
+
+  /**
+   * Starts a recording if enabled, otherwise returns a profiler that does nothing. {@code label}
+   * names the files, characters other than letters, digits, {@code .}, {@code _} and {@code -}
+   * are replaced by {@code _}.
+   */
+  public static JfrProfiler start(String label) {
+    String name = label.replaceAll("[^A-Za-z0-9._-]", "_");
+    if (!enabled()) {
+      return new JfrProfiler(name, null);
+    }
+    try {
+      Object recording =
+          Jfr.NEW_RECORDING.newInstance(call(Jfr.GET_CONFIGURATION, null, "profile"));
+      Duration sample = Duration.ofMillis(10);
+      Duration wait = Duration.ofMillis(1);
+      call(Jfr.WITH_PERIOD, call(Jfr.ENABLE, recording, "jdk.ExecutionSample"), sample);
+      call(Jfr.WITH_PERIOD, call(Jfr.ENABLE, recording, "jdk.NativeMethodSample"), sample);
+      for (String event : new String[] {"jdk.JavaMonitorEnter", "jdk.ThreadPark"}) {
+        Object settings = call(Jfr.WITH_THRESHOLD, call(Jfr.ENABLE, recording, event), wait);
+        call(Jfr.WITH_STACK_TRACE, settings);
+      }
+      call(Jfr.START, recording);
+      return new JfrProfiler(name, recording);
+    } catch (Exception | LinkageError e) {
+      System.err.println("Cannot start JFR recording: " + e);
+      return new JfrProfiler(name, null);
+    }
+  }
+
+  /** Stops the recording, writes it and its summary and returns the summary, or null. */
+  public String stop() {
+    if (recording == null) {
+      return null;
+    }
+    try {
+      call(Jfr.STOP, recording);
+      File dir = new File(DIR);
+      dir.mkdirs();
+      String name =
+          LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"))
+              + "-" + RUNS.incrementAndGet() + "-" + label;
+      File jfr = new File(dir, name + ".jfr");
+      call(Jfr.DUMP, recording, jfr.toPath());
+      String summary = summarize(jfr);
+      Files.write(new File(dir, name + ".txt").toPath(), summary.getBytes(StandardCharsets.UTF_8));
+      System.out.println(summary);
+      return summary;
+    } catch (IOException | IllegalStateException e) {
+      System.err.println("Cannot write JFR recording: " + e);
+      return null;
+    } finally {
+      try {
+        call(Jfr.CLOSE, recording);
+      } catch (IOException | IllegalStateException e) {
+        System.err.println("Cannot close JFR recording: " + e);
+      }
+    }
+  }
+
+  /**
+   * Summarizes a recording file, see the class comment. Events are read one at a time, so the
+   * recording is never held in memory as a whole.
+   */
+  public static String summarize(File jfr) throws IOException {
+    Map<String, long[]> components = new LinkedHashMap<>();
+    for (String component : COMPONENTS) {
+      // execution samples, native samples
+      components.put(component, new long[2]);
+    }
+    Map<String, Long> cpuFrames = new HashMap<>();
+    Map<String, Long> nativeFrames = new HashMap<>();
+    Map<String, Long> sampledAllocations = new HashMap<>();
+    Map<String, Long> tlabAllocations = new HashMap<>();
+    Map<String, Long> waits = new HashMap<>();
+    long executionSamples = 0;
+    long nativeSamples = 0;
+
+    Object file;
+    try {
+      file = Jfr.NEW_RECORDING_FILE.newInstance(jfr.toPath());
+    } catch (InvocationTargetException e) {
+      throw rethrow(e.getCause());
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException(e);
+    }
+    try {
+      while ((Boolean) call(Jfr.HAS_MORE_EVENTS, file)) {
+        Object event = call(Jfr.READ_EVENT, file);
+        Object stack = call(Jfr.GET_STACK_TRACE, event);
+        if (stack == null) {
+          continue;
+        }
+        List<?> frames = (List<?>) call(Jfr.GET_FRAMES, stack);
+        if (frames.isEmpty()) {
+          continue;
+        }
+        String type = (String) call(Jfr.EVENT_TYPE_NAME, call(Jfr.GET_EVENT_TYPE, event));
+        switch (type) {
+          case "jdk.ExecutionSample":
+            executionSamples++;
+            components.get(component(frames))[0]++;
+            cpuFrames.merge(frame(frames.get(0)), 1L, Long::sum);
+            break;
+          case "jdk.NativeMethodSample":
+            nativeSamples++;
+            components.get(component(frames))[1]++;
+            nativeFrames.merge(nativeFrame(frames), 1L, Long::sum);
+            break;
+          case "jdk.ObjectAllocationSample":
+            sampledAllocations.merge(site(frames), getLong(event, "weight"), Long::sum);
+            break;
+          case "jdk.ObjectAllocationInNewTLAB":
+            tlabAllocations.merge(site(frames), getLong(event, "tlabSize"), Long::sum);
+            break;
+          case "jdk.ObjectAllocationOutsideTLAB":
+            tlabAllocations.merge(site(frames), getLong(event, "allocationSize"), Long::sum);
+            break;
+          case "jdk.JavaMonitorEnter":
+          case "jdk.ThreadPark":
+            String caller = firstNonJdkFrame(frames);
+            if (caller != null) {
+              waits.merge(
+                  type.substring(4) + " " + caller,
+                  ((Duration) call(Jfr.GET_DURATION, event)).toNanos(),
+                  Long::sum);
+            }
+            break;
+          default:
+        }
+      }
+    } finally {
+      call(Jfr.CLOSE_RECORDING_FILE, file);
+    }
+
+    StringBuilder sb = new StringBuilder();
+    sb.append("JFR summary of ").append(jfr.getPath()).append('\n');
+    long samples = Math.max(1, executionSamples + nativeSamples);
+    sb.append(String.format("%-16s %10s %10s %8s%n", "component", "cpu", "native", "share"));
+    for (Map.Entry<String, long[]> component : components.entrySet()) {
+      long[] counts = component.getValue();
+      sb.append(
+          String.format(
+              "%-16s %10d %10d %7.1f%%%n",
+              component.getKey(),
+              counts[0],
+              counts[1],
+              100.0 * (counts[0] + counts[1]) / samples));
+    }
+    top(sb, "Top CPU frames (execution samples)", cpuFrames, executionSamples, "");
+    top(sb, "Top JNI frames (native samples)", nativeFrames, nativeSamples, "");
+    Map<String, Long> allocations =
+        sampledAllocations.isEmpty() ? tlabAllocations : sampledAllocations;
+    long allocated = 0;
+    for (long bytes : allocations.values()) {
+      allocated += bytes;
+    }
+    top(sb, "Top allocation sites (bytes)", allocations, allocated, "B");
+    long waited = 0;
+    for (long nanos : waits.values()) {
+      waited += nanos;
+    }
+    top(sb, "Lock contention and parking > 1ms (ns)", waits, waited, "ns");
+    return sb.toString();
+  }
+
+  private static void top(
+      StringBuilder sb, String title, Map<String, Long> counts, long total, String unit) {
+    sb.append(title).append(", total ").append(total).append(unit).append('\n');
+    List<Map.Entry<String, Long>> entries = new ArrayList<>(counts.entrySet());
+    entries.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+    for (Map.Entry<String, Long> entry : entries.subList(0, Math.min(TOP, entries.size()))) {
+      sb.append(
+          String.format(
+              "  %6.1f%% %14d%s  %s%n",
+              100.0 * entry.getValue() / Math.max(1, total),
+              entry.getValue(),
+              unit,
+              entry.getKey()));
+    }
+  }
+
+  /** Component of the innermost engine frame, so JDK code called by an engine counts for it. */
+  private static String component(List<?> frames) throws IOException {
+    for (Object frame : frames) {
+      String type = typeName(frame);
+      if (type.startsWith("org.rocksdb.")) {
+        return "rocksdb-jni";
+      }
+      if (type.startsWith("org.duckdb.")) {
+        return "duckdb-jdbc";
+      }
+      if (type.startsWith("org.apache.paimon.lookup.")
+          || type.contains("HashLookupStore")
+          || type.contains("LookupLevels")) {
+        return "paimon-lookup";
+      }
+      if (type.startsWith("org.apache.paimon.")) {
+        return "paimon";
+      }
+    }
+    return "other";
+  }
+
+  /** Top native frame with its Java caller, e.g. {@code RocksDB.get <- RocksDBStore.get}. */
+  private static String nativeFrame(List<?> frames) throws IOException {
+    for (int i = 0; i < frames.size(); i++) {
+      Object method = call(Jfr.GET_METHOD, frames.get(i));
+      if (Modifier.isNative((Integer) call(Jfr.METHOD_MODIFIERS, method))) {
+        String caller = i + 1 < frames.size() ? " <- " + frame(frames.get(i + 1)) : "";
+        return frame(frames.get(i)) + caller;
+      }
+    }
+    return frame(frames.get(0));
+  }
+
+  /** Allocating frame, followed by the first non-JDK caller if the allocation is in the JDK. */
+  private static String site(List<?> frames) throws IOException {
+    String top = frame(frames.get(0));
+    if (!isJdk(frames.get(0))) {
+      return top;
+    }
+    String caller = firstNonJdkFrame(frames);
+    return caller == null ? top : top + " <- " + caller;
+  }
+
+  private static String firstNonJdkFrame(List<?> frames) throws IOException {
+    for (Object frame : frames) {
+      if (!isJdk(frame)) {
+        return frame(frame);
+      }
+    }
+    return null;
+  }
+
+  private static boolean isJdk(Object frame) throws IOException {
+    String type = typeName(frame);
+    return type.startsWith("java.") || type.startsWith("jdk.") || type.startsWith("sun.");
+  }
+
+  private static String frame(Object frame) throws IOException {
+    String type = typeName(frame);
+    Object method = call(Jfr.GET_METHOD, frame);
+    int line = (Integer) call(Jfr.LINE_NUMBER, frame);
+    return type.substring(type.lastIndexOf('.') + 1)
+        + "."
+        + call(Jfr.METHOD_NAME, method)
+        + (line > 0 ? ":" + line : "");
+  }
+
+  private static String typeName(Object frame) throws IOException {
+    return (String) call(Jfr.CLASS_NAME, call(Jfr.METHOD_TYPE, call(Jfr.GET_METHOD, frame)));
+  }
+
+  private static long getLong(Object event, String field) throws IOException {
+    return (Long) call(Jfr.GET_LONG, event, field);
+  }
+
+  /** Invokes a JFR method, rethrowing what it throws; other failures are illegal states. */
+  private static Object call(Method method, Object target, Object... args) throws IOException {
+    try {
+      return method.invoke(target, args);
+    } catch (InvocationTargetException e) {
+      throw rethrow(e.getCause());
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static IllegalStateException rethrow(Throwable t) throws IOException {
+    if (t instanceof IOException) {
+      throw (IOException) t;
+    }
+    if (t instanceof RuntimeException) {
+      throw (RuntimeException) t;
+    }
+    if (t instanceof Error) {
+      throw (Error) t;
+    }
+    return new IllegalStateException(t);
+  }
+
+  /**
+   * The {@code jdk.jfr} API, looked up reflectively so that the default 1.8 build still compiles
+   * on JDKs without it. Loading fails if the runtime has no JFR, which {@link #start} reports.
+   */
+  private static class Jfr {
+
+    static final Method GET_CONFIGURATION;
+    static final Constructor<?> NEW_RECORDING;
+    static final Method ENABLE;
+    static final Method WITH_PERIOD;
+    static final Method WITH_THRESHOLD;
+    static final Method WITH_STACK_TRACE;
+    static final Method START;
+    static final Method STOP;
+    static final Method DUMP;
+    static final Method CLOSE;
+
+    static final Constructor<?> NEW_RECORDING_FILE;
+    static final Method HAS_MORE_EVENTS;
+    static final Method READ_EVENT;
+    static final Method CLOSE_RECORDING_FILE;
+    static final Method GET_EVENT_TYPE;
+    static final Method EVENT_TYPE_NAME;
+    static final Method GET_STACK_TRACE;
+    static final Method GET_DURATION;
+    static final Method GET_LONG;
+    static final Method GET_FRAMES;
+    static final Method GET_METHOD;
+    static final Method LINE_NUMBER;
+    static final Method METHOD_TYPE;
+    static final Method METHOD_NAME;
+    static final Method METHOD_MODIFIERS;
+    static final Method CLASS_NAME;
+
+    static {
+      try {
+        Class<?> configuration = Class.forName("jdk.jfr.Configuration");
+        Class<?> recording = Class.forName("jdk.jfr.Recording");
+        Class<?> settings = Class.forName("jdk.jfr.EventSettings");
+        GET_CONFIGURATION = configuration.getMethod("getConfiguration", String.class);
+        NEW_RECORDING = recording.getConstructor(configuration);
+        ENABLE = recording.getMethod("enable", String.class);
+        WITH_PERIOD = settings.getMethod("withPeriod", Duration.class);
+        WITH_THRESHOLD = settings.getMethod("withThreshold", Duration.class);
+        WITH_STACK_TRACE = settings.getMethod("withStackTrace");
+        START = recording.getMethod("start");
+        STOP = recording.getMethod("stop");
+        DUMP = recording.getMethod("dump", Path.class);
+        CLOSE = recording.getMethod("close");
+
+        Class<?> file = Class.forName("jdk.jfr.consumer.RecordingFile");
+        Class<?> event = Class.forName("jdk.jfr.consumer.RecordedEvent");
+        Class<?> frame = Class.forName("jdk.jfr.consumer.RecordedFrame");
+        Class<?> method = Class.forName("jdk.jfr.consumer.RecordedMethod");
+        NEW_RECORDING_FILE = file.getConstructor(Path.class);
+        HAS_MORE_EVENTS = file.getMethod("hasMoreEvents");
+        READ_EVENT = file.getMethod("readEvent");
+        CLOSE_RECORDING_FILE = file.getMethod("close");
+        GET_EVENT_TYPE = event.getMethod("getEventType");
+        EVENT_TYPE_NAME = Class.forName("jdk.jfr.EventType").getMethod("getName");
+        GET_STACK_TRACE = event.getMethod("getStackTrace");
+        GET_DURATION = event.getMethod("getDuration");
+        GET_LONG = event.getMethod("getLong", String.class);
+        GET_FRAMES = Class.forName("jdk.jfr.consumer.RecordedStackTrace").getMethod("getFrames");
+        GET_METHOD = frame.getMethod("getMethod");
+        LINE_NUMBER = frame.getMethod("getLineNumber");
+        METHOD_TYPE = method.getMethod("getType");
+        METHOD_NAME = method.getMethod("getName");
+        METHOD_MODIFIERS = method.getMethod("getModifiers");
+        CLASS_NAME = Class.forName("jdk.jfr.consumer.RecordedClass").getMethod("getName");
+      } catch (ReflectiveOperationException e) {
+        throw new ExceptionInInitializerError(e);
+      }
+    }
+  }
+}
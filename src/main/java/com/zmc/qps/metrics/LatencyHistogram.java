@@ -0,0 +1,126 @@
+package com.zmc.qps.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Log-linear latency histogram in nanoseconds with roughly 1% value precision.
+ *
+ * <p>Not thread-safe: every worker thread records into its own instance and the results are
+ * combined with {@link #add(LatencyHistogram)} once the workers are done.
+ */
+public class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 7;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int HALF_SUB_BUCKET_COUNT = SUB_BUCKET_COUNT >> 1;
+  private static final int BUCKET_COUNT =
+      SUB_BUCKET_COUNT + (64 - SUB_BUCKET_BITS) * HALF_SUB_BUCKET_COUNT;
+
+  private final long[] counts = new long[BUCKET_COUNT];
+  private long count;
+  private long sum;
+  private long min = Long.MAX_VALUE;
+  private long max;
+
+  public void record(long nanos) {
+    if (nanos < 0) {
+      nanos = 0;
+    }
+    counts[indexOf(nanos)]++;
+    count++;
+    sum += nanos;
+    if (nanos < min) {
+      min = nanos;
+    }
+    if (nanos > max) {
+      max = nanos;
+    }
+  }
+
+  public void add(LatencyHistogram other) {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      counts[i] += other.counts[i];
+    }
+    count += other.count;
+    sum += other.sum;
+    min = Math.min(min, other.min);
+    max = Math.max(max, other.max);
+  }
+
+  public void reset() {
+    Arrays.fill(counts, 0);
+    count = 0;
+    sum = 0;
+    min = Long.MAX_VALUE;
+    max = 0;
+  }
+
+  public long count() {
+    return count;
+  }
+
+  public long min() {
+    return count == 0 ? 0 : min;
+  }
+
+  public long max() {
+    return max;
+  }
+
+  public double mean() {
+    return count == 0 ? 0 : (double) sum / count;
+  }
+
+  /** Returns the latency in nanoseconds at the given percentile, e.g. 99.9. */
+  public long percentile(double percentile) {
+    if (count == 0) {
+      return 0;
+    }
+    long rank = (long) Math.ceil(percentile / 100 * count);
+    rank = Math.max(1, Math.min(rank, count));
+    long seen = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return Math.min(highestValueOf(i), max);
+      }
+    }
+    return max;
+  }
+
+  /** One-line summary in microseconds, used by all benchmark reports. */
+  public String summary() {
+    return String.format(
+        "count=%d mean=%.1fus p50=%.1fus p95=%.1fus p99=%.1fus p999=%.1fus max=%.1fus",
+        count,
+        mean() / 1000,
+        micros(percentile(50)),
+        micros(percentile(95)),
+        micros(percentile(99)),
+        micros(percentile(99.9)),
+        micros(max));
+  }
+
+  public static double micros(long nanos) {
+    return (double) nanos / TimeUnit.MICROSECONDS.toNanos(1);
+  }
+
+  static int indexOf(long value) {
+    if (value < SUB_BUCKET_COUNT) {
+      return (int) value;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS + 1;
+    int subBucket = (int) (value >>> shift);
+    return SUB_BUCKET_COUNT + (shift - 1) * HALF_SUB_BUCKET_COUNT + subBucket - HALF_SUB_BUCKET_COUNT;
+  }
+
+  static long highestValueOf(int index) {
+    if (index < SUB_BUCKET_COUNT) {
+      return index;
+    }
+    int shift = (index - SUB_BUCKET_COUNT) / HALF_SUB_BUCKET_COUNT + 1;
+    long subBucket = (index - SUB_BUCKET_COUNT) % HALF_SUB_BUCKET_COUNT + HALF_SUB_BUCKET_COUNT;
+    return ((subBucket + 1) << shift) - 1;
+  }
+}
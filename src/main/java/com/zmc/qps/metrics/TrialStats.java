@@ -0,0 +1,104 @@
+package com.zmc.qps.metrics;
+
+/** Summary statistics over the results of repeated measured iterations. */
+public class TrialStats {
+
+  // two-sided 95% Student t quantiles for 1..30 degrees of freedom
+  private static final double[] T_95 = {
+    12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228, 2.201, 2.179, 2.160,
+    2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086, 2.080, 2.074, 2.069, 2.064, 2.060, 2.056,
+    2.052, 2.048, 2.045, 2.042
+  };
+
+  private final double[] samples;
+  private final double mean;
+  private final double stddev;
+  private final double min;
+  private final double max;
+
+  public TrialStats(double[] samples) {
+    this.samples = samples.clone();
+    int n = samples.length;
+    double sum = 0;
+    double lo = Double.MAX_VALUE;
+    double hi = -Double.MAX_VALUE;
+    for (double s : samples) {
+      sum += s;
+      lo = Math.min(lo, s);
+      hi = Math.max(hi, s);
+    }
+    this.mean = n == 0 ? 0 : sum / n;
+    double squares = 0;
+    for (double s : samples) {
+      squares += (s - mean) * (s - mean);
+    }
+    this.stddev = n < 2 ? 0 : Math.sqrt(squares / (n - 1));
+    this.min = n == 0 ? 0 : lo;
+    this.max = n == 0 ? 0 : hi;
+  }
+
+  public int count() {
+    return samples.length;
+  }
+
+  public double mean() {
+    return mean;
+  }
+
+  public double stddev() {
+    return stddev;
+  }
+
+  public double min() {
+    return min;
+  }
+
+  public double max() {
+    return max;
+  }
+
+  /** Coefficient of variation in percent. */
+  public double cvPercent() {
+    return mean == 0 ? 0 : 100 * stddev / mean;
+  }
+
+  /** Half width of the 95% confidence interval of the mean. */
+  public double ci95() {
+    int n = samples.length;
+    if (n < 2) {
+      return Double.NaN;
+    }
+    double t = n - 1 <= T_95.length ? T_95[n - 2] : 1.96;
+    return t * stddev / Math.sqrt(n);
+  }
+
+  /** Half width of the 95% confidence interval relative to the mean, in percent. */
+  public double ci95Percent() {
+    return mean == 0 ? 0 : 100 * ci95() / mean;
+  }
+
+  /**
+   * A run is noisy when its iterations vary by more than {@code thresholdPercent}, either as
+   * coefficient of variation or as relative confidence interval, or when there are too few
+   * iterations to tell.
+   */
+  public boolean isNoisy(double thresholdPercent) {
+    return samples.length < 2
+        || cvPercent() > thresholdPercent
+        || ci95Percent() > thresholdPercent;
+  }
+
+  public String summary() {
+    return String.format(
+        "mean=%.1f stddev=%.1f min=%.1f max=%.1f 95%%CI=[%.1f, %.1f] (+-%.2f%%) cv=%.2f%% n=%d",
+        mean,
+        stddev,
+        min,
+        max,
+        mean - ci95(),
+        mean + ci95(),
+        ci95Percent(),
+        cvPercent(),
+        samples.length);
+  }
+}
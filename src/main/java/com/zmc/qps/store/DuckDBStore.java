@@ -0,0 +1,287 @@
+package com.zmc.qps.store;
+
+import org.duckdb.DuckDBConnection;
+
+import java.io.IOException;
+import java.sql.Blob;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * {@link KVStore} over a DuckDB table {@code kv (id INTEGER PRIMARY KEY, value BLOB)}.
+ *
+ * <p>Every operation borrows a {@link DuckDBConnection#duplicate() duplicated} connection to the
+ * same database from a pool, so concurrent threads, including virtual threads, never share one.
+ * DuckDB runs a single writer at a time, so writes are serialized with a lock and readers keep
+ * going while a write is in progress.
+ */
+public class DuckDBStore implements KVStore {
+
+  private static final String TABLE = "kv";
+
+  private final DuckDBConnection connection;
+  private final List<Session> sessions = new CopyOnWriteArrayList<>();
+  private final Queue<Session> idleSessions = new ConcurrentLinkedQueue<>();
+  private final ReentrantLock writeLock = new ReentrantLock();
+
+  public DuckDBStore(String path) throws IOException {
+    this(path, 0);
+  }
+
+  /** Opens the store with DuckDB's {@code memory_limit} set, or the default if it is 0. */
+  public DuckDBStore(String path, long memoryLimit) throws IOException {
+    try {
+      this.connection = (DuckDBConnection) DriverManager.getConnection("jdbc:duckdb:" + path);
+      try (Statement stmt = connection.createStatement()) {
+        if (memoryLimit > 0) {
+          stmt.execute("SET memory_limit = '" + (memoryLimit >> 20) + "MB'");
+        }
+        stmt.execute(
+            "CREATE TABLE IF NOT EXISTS "
+                + TABLE
+                + " (id INTEGER PRIMARY KEY, value BLOB)");
+      }
+    } catch (SQLException e) {
+      throw new IOException(e);
+    }
+  }
+
+  public DuckDBConnection connection() {
+    return connection;
+  }
+
+  @Override
+  public String name() {
+    return "duckdb";
+  }
+
+  @Override
+  public void put(int key, byte[] value) throws IOException {
+    Session s = borrow();
+    writeLock.lock();
+    try {
+      s.upsert.setInt(1, key);
+      s.upsert.setBytes(2, value);
+      s.upsert.execute();
+    } catch (SQLException e) {
+      throw new IOException(e);
+    } finally {
+      writeLock.unlock();
+      idleSessions.add(s);
+    }
+  }
+
+  @Override
+  public void putBatch(int[] keys, byte[][] values, int count) throws IOException {
+    Session s = borrow();
+    writeLock.lock();
+    boolean committed = false;
+    try {
+      s.connection.setAutoCommit(false);
+      for (int i = 0; i < count; i++) {
+        s.upsert.setInt(1, keys[i]);
+        s.upsert.setBytes(2, values[i]);
+        s.upsert.addBatch();
+      }
+      s.upsert.executeBatch();
+      s.connection.commit();
+      committed = true;
+    } catch (SQLException e) {
+      throw new IOException(e);
+    } finally {
+      boolean reusable = true;
+      try {
+        if (!committed) {
+          // restoring auto-commit would commit the rows applied so far, and the pooled
+          // statement would keep the rest of the batch
+          s.connection.rollback();
+          s.upsert.clearBatch();
+          // the driver closes a statement whose execution failed
+          reusable = !s.upsert.isClosed();
+        }
+        s.connection.setAutoCommit(true);
+      } catch (SQLException e) {
+        reusable = false;
+      }
+      writeLock.unlock();
+      if (reusable) {
+        idleSessions.add(s);
+      } else {
+        discard(s);
+      }
+    }
+  }
+
+  /** Updates an existing key in place with {@code UPDATE}, a no-op if the key is missing. */
+  public void update(int key, byte[] value) throws IOException {
+    Session s = borrow();
+    writeLock.lock();
+    try {
+      s.update.setBytes(1, value);
+      s.update.setInt(2, key);
+      s.update.execute();
+    } catch (SQLException e) {
+      throw new IOException(e);
+    } finally {
+      writeLock.unlock();
+      idleSessions.add(s);
+    }
+  }
+
+  @Override
+  public void delete(int key) throws IOException {
+    Session s = borrow();
+    writeLock.lock();
+    try {
+      s.delete.setInt(1, key);
+      s.delete.execute();
+    } catch (SQLException e) {
+      throw new IOException(e);
+    } finally {
+      writeLock.unlock();
+      idleSessions.add(s);
+    }
+  }
+
+  @Override
+  public byte[] get(int key) throws IOException {
+    Session s = borrow();
+    try {
+      s.get.setInt(1, key);
+      try (ResultSet rs = s.get.executeQuery()) {
+        return rs.next() ? bytes(rs.getBlob(1)) : null;
+      }
+    } catch (SQLException e) {
+      throw new IOException(e);
+    } finally {
+      idleSessions.add(s);
+    }
+  }
+
+  @Override
+  public int scan(int startKey, int count) throws IOException {
+    Session s = borrow();
+    int read = 0;
+    try {
+      s.scan.setInt(1, startKey);
+      s.scan.setInt(2, count);
+      try (ResultSet rs = s.scan.executeQuery()) {
+        while (rs.next()) {
+          int id = rs.getInt(1);
+          byte[] value = bytes(rs.getBlob(2));
+          read++;
+        }
+      }
+    } catch (SQLException e) {
+      throw new IOException(e);
+    } finally {
+      idleSessions.add(s);
+    }
+    return read;
+  }
+
+  @Override
+  public void flush() throws IOException {
+    Session s = borrow();
+    writeLock.lock();
+    try (Statement stmt = s.connection.createStatement()) {
+      stmt.execute("CHECKPOINT");
+    } catch (SQLException e) {
+      throw new IOException(e);
+    } finally {
+      writeLock.unlock();
+      idleSessions.add(s);
+    }
+  }
+
+  @Override
+  public boolean supportsScan() {
+    return true;
+  }
+
+  @Override
+  public boolean supportsConcurrentWrites() {
+    return false;
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      for (Session s : sessions) {
+        s.close();
+      }
+      connection.close();
+    } catch (SQLException e) {
+      throw new IOException(e);
+    }
+  }
+
+  /** The DuckDB driver does not implement {@code ResultSet#getBytes}, so go through the blob. */
+  private static byte[] bytes(Blob blob) throws SQLException {
+    return blob == null ? null : blob.getBytes(1, (int) blob.length());
+  }
+
+  private void discard(Session s) {
+    sessions.remove(s);
+    try {
+      s.close();
+    } catch (SQLException ignored) {
+    }
+  }
+
+  private Session borrow() throws IOException {
+    Session s = idleSessions.poll();
+    if (s != null) {
+      return s;
+    }
+    try {
+      s = new Session(connection.duplicate());
+      sessions.add(s);
+      return s;
+    } catch (SQLException e) {
+      throw new IOException(e);
+    }
+  }
+
+  /** Pooled connection with its prepared statements. */
+  private static class Session {
+
+    private final Connection connection;
+    private final PreparedStatement upsert;
+    private final PreparedStatement update;
+    private final PreparedStatement delete;
+    private final PreparedStatement get;
+    private final PreparedStatement scan;
+
+    private Session(Connection connection) throws SQLException {
+      this.connection = connection;
+      this.upsert =
+          connection.prepareStatement("INSERT OR REPLACE INTO " + TABLE + " VALUES (?, ?)");
+      this.update =
+          connection.prepareStatement("UPDATE " + TABLE + " SET value = ? WHERE id = ?");
+      this.delete = connection.prepareStatement("DELETE FROM " + TABLE + " WHERE id = ?");
+      this.get = connection.prepareStatement("SELECT value FROM " + TABLE + " WHERE id = ?");
+      this.scan =
+          connection.prepareStatement(
+              "SELECT id, value FROM " + TABLE + " WHERE id >= ? ORDER BY id LIMIT ?");
+    }
+
+    private void close() throws SQLException {
+      upsert.close();
+      update.close();
+      delete.close();
+      get.close();
+      scan.close();
+      connection.close();
+    }
+  }
+}
@@ -0,0 +1,176 @@
+package com.zmc.qps.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Coalesces single-record writes of many producer threads into batch commits on one flusher
+ * thread.
+ *
+ * <p>Producers add records to a lock-free queue and get a future that completes once the batch
+ * holding the record is committed with {@link KVStore#putBatch}. The flusher takes up to {@code
+ * maxBatch} records per commit. When fewer are queued it lingers for more, but never longer than
+ * a recent commit took, capped at {@code maxLinger}: under heavy load batches fill before the
+ * linger runs out, and a record waits for at most about one extra commit. The linger shrinks
+ * towards zero while batches hold a single record, so a lone producer does not wait at all.
+ */
+public class GroupCommitWriter implements Closeable {
+
+  private static final long POLL_NANOS = TimeUnit.MICROSECONDS.toNanos(20);
+
+  private final KVStore store;
+  private final int maxBatch;
+  private final long maxLingerNanos;
+  private final ConcurrentLinkedQueue<Request> queue = new ConcurrentLinkedQueue<>();
+  private final LongAdder batches = new LongAdder();
+  private final LongAdder records = new LongAdder();
+  private final Thread flusher;
+
+  private volatile boolean closed;
+  private volatile boolean idle;
+  // flusher thread only
+  private long lingerNanos;
+
+  public GroupCommitWriter(KVStore store, int maxBatch, long maxLinger, TimeUnit unit) {
+    this.store = store;
+    this.maxBatch = maxBatch;
+    this.maxLingerNanos = unit.toNanos(maxLinger);
+    this.flusher = new Thread(this::flushLoop, "group-commit-" + store.name());
+    flusher.setDaemon(true);
+    flusher.start();
+  }
+
+  /**
+   * Queues a write, the future completes when it is committed. Throws {@link
+   * IllegalStateException} if the writer is closed.
+   */
+  public CompletableFuture<Void> put(int key, byte[] value) {
+    if (closed) {
+      throw new IllegalStateException("Writer is closed");
+    }
+    Request request = new Request(key, value);
+    queue.add(request);
+    // close() may have run since the check; if the flusher or close() did not take the request,
+    // nobody will complete it
+    if (closed && queue.remove(request)) {
+      throw new IllegalStateException("Writer is closed");
+    }
+    if (idle) {
+      LockSupport.unpark(flusher);
+    }
+    return request.future;
+  }
+
+  public long batches() {
+    return batches.sum();
+  }
+
+  public long records() {
+    return records.sum();
+  }
+
+  public double averageBatchSize() {
+    long b = batches.sum();
+    return b == 0 ? 0 : (double) records.sum() / b;
+  }
+
+  private void flushLoop() {
+    Request[] requests = new Request[maxBatch];
+    int[] keys = new int[maxBatch];
+    byte[][] values = new byte[maxBatch][];
+    while (!closed || !queue.isEmpty()) {
+      Request first = queue.poll();
+      if (first == null) {
+        idle = true;
+        // re-check after announcing idle, a producer may have missed it
+        if (queue.isEmpty() && !closed) {
+          LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        idle = false;
+        continue;
+      }
+      requests[0] = first;
+      int n = 1;
+      long deadline = System.nanoTime() + lingerNanos;
+      while (n < maxBatch) {
+        Request next = queue.poll();
+        if (next != null) {
+          requests[n++] = next;
+          continue;
+        }
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+          break;
+        }
+        LockSupport.parkNanos(Math.min(remaining, POLL_NANOS));
+      }
+
+      for (int i = 0; i < n; i++) {
+        keys[i] = requests[i].key;
+        values[i] = requests[i].value;
+      }
+      long start = System.nanoTime();
+      Throwable failure = null;
+      try {
+        store.putBatch(keys, values, n);
+      } catch (Throwable e) {
+        failure = e;
+      }
+      long commitNanos = System.nanoTime() - start;
+      if (n > 1) {
+        lingerNanos = Math.min(maxLingerNanos, (lingerNanos * 7 + commitNanos) / 8);
+      } else {
+        // nobody else is writing, stop waiting for company
+        lingerNanos /= 2;
+      }
+      batches.increment();
+      records.add(n);
+      for (int i = 0; i < n; i++) {
+        if (failure == null) {
+          requests[i].future.complete(null);
+        } else {
+          requests[i].future.completeExceptionally(failure);
+        }
+        requests[i] = null;
+        values[i] = null;
+      }
+    }
+  }
+
+  /**
+   * Commits everything queued so far and stops the flusher. Writes queued by a racing {@link
+   * #put} after the flusher stopped fail with {@link IllegalStateException}. Does not close the
+   * store.
+   */
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    LockSupport.unpark(flusher);
+    try {
+      flusher.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    }
+    for (Request request = queue.poll(); request != null; request = queue.poll()) {
+      request.future.completeExceptionally(new IllegalStateException("Writer is closed"));
+    }
+  }
+
+  private static class Request {
+
+    private final int key;
+    private final byte[] value;
+    private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+    private Request(int key, byte[] value) {
+      this.key = key;
+      this.value = value;
+    }
+  }
+}
@@ -0,0 +1,43 @@
+package com.zmc.qps.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Minimal int-keyed key/value view over one engine, so that the same workload can be driven
+ * against RocksDB, DuckDB and Paimon.
+ *
+ * <p>{@link #get} and {@link #scan} may be called from many threads at once; {@link #scan} only on
+ * stores that {@link #supportsScan()}. Whether writes may
+ * run concurrently is engine specific, see {@link #supportsConcurrentWrites()}; stores that do
+ * not support it serialize writers internally.
+ */
+public interface KVStore extends Closeable {
+
+  String name();
+
+  void put(int key, byte[] value) throws IOException;
+
+  /** Writes the first {@code count} entries of {@code keys}/{@code values} as one batch. */
+  void putBatch(int[] keys, byte[][] values, int count) throws IOException;
+
+  /** Returns the value of {@code key}, or null if it does not exist. */
+  byte[] get(int key) throws IOException;
+
+  /** Removes {@code key}; removing a key that does not exist is not an error. */
+  void delete(int key) throws IOException;
+
+  /**
+   * Reads up to {@code count} entries in key order starting at {@code startKey}, throws {@link
+   * UnsupportedOperationException} if the store does not {@link #supportsScan()}.
+   */
+  int scan(int startKey, int count) throws IOException;
+
+  /** Whether the store keeps keys in order and can {@link #scan}. */
+  boolean supportsScan();
+
+  /** Makes pending writes durable in the engine's on-disk structures. */
+  void flush() throws IOException;
+
+  boolean supportsConcurrentWrites();
+}
@@ -0,0 +1,422 @@
+package com.zmc.qps.store;
+
+import org.apache.paimon.data.BinaryRow;
+import org.apache.paimon.data.BinaryRowWriter;
+import org.apache.paimon.data.InternalRow;
+import org.apache.paimon.memory.MemorySegment;
+import org.apache.paimon.reader.RecordReader;
+import org.apache.paimon.table.Table;
+import org.apache.paimon.table.source.ReadBuilder;
+import org.rocksdb.RocksDB;
+import org.rocksdb.RocksIterator;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.apache.paimon.memory.MemorySegment.UNSAFE;
+
+/**
+ * In-memory {@link KVStore}: an open-addressing hash table on primitive int keys, entirely off
+ * heap, as a baseline for the disk-based engines when the data fits in memory.
+ *
+ * <p>Each entry is stored as a serialized {@link BinaryRow} {@code (key INT, value BYTES)},
+ * appended to off-heap data segments. The slot table maps a key to the row's address with linear
+ * probing; a slot is 16 bytes: the address, the key and an occupied flag. A deleted key keeps its
+ * slot with a tombstone address until the table grows. The table doubles when three quarters of
+ * its slots are used. Neither keys nor values live on the Java heap, so the GC has nothing to
+ * trace however many entries there are; the memory counts against {@code
+ * -XX:MaxDirectMemorySize} instead.
+ *
+ * <p>Lookups take no lock and may run concurrently with each other and with a writer. Writes are
+ * serialized. A writer fills in a new slot's key and address and then sets its occupied flag with
+ * a release store ({@code Unsafe.putOrderedInt}), and replaces the address of an existing slot
+ * with a release store too; lookups read both with acquire loads ({@code Unsafe.getIntVolatile},
+ * {@code getLongVolatile}), so a lookup that sees an address also sees the row and the data
+ * segment it points to. A grown table is swapped in once it is complete; replaced tables
+ * are left to the garbage collector, as lookups may still read them. The bytes of overwritten
+ * values are not reclaimed. Keys cannot be scanned in order.
+ */
+public class OffHeapHashIndex implements KVStore {
+
+  private static final int SLOT_BYTES = 16;
+  // slots per slot segment, 64MB each
+  private static final int SEGMENT_SLOTS_SHIFT = 22;
+  private static final int DATA_SEGMENT_SIZE = 32 << 20;
+  private static final double LOAD_FACTOR = 0.75;
+  // slot addresses: a key that is not in the table, and a deleted key
+  private static final long ABSENT = -1;
+  private static final long TOMBSTONE = Long.MAX_VALUE;
+
+  // Buffer.address, read through Unsafe like Paimon's MemoryUtils does
+  private static final long BUFFER_ADDRESS_OFFSET;
+  // Unsafe.invokeCleaner on Java 9+, null on Java 8; looked up reflectively so that the default
+  // 1.8 build still compiles
+  private static final Method INVOKE_CLEANER;
+
+  static {
+    try {
+      BUFFER_ADDRESS_OFFSET = UNSAFE.objectFieldOffset(Buffer.class.getDeclaredField("address"));
+    } catch (NoSuchFieldException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+    Method invokeCleaner;
+    try {
+      invokeCleaner = UNSAFE.getClass().getMethod("invokeCleaner", ByteBuffer.class);
+    } catch (NoSuchMethodException e) {
+      invokeCleaner = null;
+    }
+    INVOKE_CLEANER = invokeCleaner;
+  }
+
+  private final ReentrantLock writeLock = new ReentrantLock();
+  // writer only
+  private final BinaryRow row = new BinaryRow(2);
+  private final BinaryRowWriter rowWriter = new BinaryRowWriter(row);
+  private final List<ByteBuffer> dataBuffers = new ArrayList<>();
+  private int dataOffset;
+  // live keys, and slots in use including tombstones
+  private long size;
+  private long usedSlots;
+
+  private volatile SlotTable table;
+  private volatile MemorySegment[] dataSegments = new MemorySegment[0];
+
+  public OffHeapHashIndex() {
+    this(1 << 16);
+  }
+
+  /** Creates an index sized for {@code expectedKeys} keys without growing. */
+  public OffHeapHashIndex(long expectedKeys) {
+    long capacity = 16;
+    while (capacity * LOAD_FACTOR < expectedKeys) {
+      capacity <<= 1;
+    }
+    this.table = new SlotTable(capacity);
+  }
+
+  /** Builds an index from all entries of a RocksDB database with 4-byte big-endian int keys. */
+  public static OffHeapHashIndex load(RocksDB db, long expectedKeys) {
+    OffHeapHashIndex index = new OffHeapHashIndex(expectedKeys);
+    try (RocksIterator iterator = db.newIterator()) {
+      for (iterator.seekToFirst(); iterator.isValid(); iterator.next()) {
+        index.put(ByteBuffer.wrap(iterator.key()).getInt(), iterator.value());
+      }
+    }
+    return index;
+  }
+
+  /**
+   * Builds an index from the latest snapshot of a Paimon table whose first column is the INT
+   * primary key and whose second column is the BYTES value.
+   */
+  public static OffHeapHashIndex load(Table table, long expectedKeys) throws IOException {
+    OffHeapHashIndex index = new OffHeapHashIndex(expectedKeys);
+    ReadBuilder readBuilder = table.newReadBuilder().withProjection(new int[] {0, 1});
+    try (RecordReader<InternalRow> reader =
+        readBuilder.newRead().createReader(readBuilder.newScan().plan())) {
+      reader.forEachRemaining(
+          r -> index.put(r.getInt(0), r.isNullAt(1) ? null : r.getBinary(1)));
+    }
+    return index;
+  }
+
+  /** Keys in the index, not counting deleted ones. */
+  public long size() {
+    return size;
+  }
+
+  /** Off-heap bytes held by the slot table and the data segments. */
+  public long memoryBytes() {
+    return table.capacity * SLOT_BYTES + (long) dataSegments.length * DATA_SEGMENT_SIZE;
+  }
+
+  @Override
+  public String name() {
+    return "offheap";
+  }
+
+  @Override
+  public void put(int key, byte[] value) {
+    writeLock.lock();
+    try {
+      insert(key, append(key, value));
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  @Override
+  public void putBatch(int[] keys, byte[][] values, int count) {
+    writeLock.lock();
+    try {
+      for (int i = 0; i < count; i++) {
+        insert(keys[i], append(keys[i], values[i]));
+      }
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  @Override
+  public byte[] get(int key) {
+    long address = table.find(key);
+    return address == ABSENT || address == TOMBSTONE ? null : value(address);
+  }
+
+  /** Points the key at a tombstone, which reads as missing; missing keys are left alone. */
+  @Override
+  public void delete(int key) {
+    writeLock.lock();
+    try {
+      insert(key, TOMBSTONE);
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  @Override
+  public int scan(int startKey, int count) {
+    throw new UnsupportedOperationException("A hash index has no key order");
+  }
+
+  @Override
+  public void flush() {}
+
+  @Override
+  public boolean supportsScan() {
+    return false;
+  }
+
+  @Override
+  public boolean supportsConcurrentWrites() {
+    return false;
+  }
+
+  /**
+   * Frees the slot table and the data segments right away, leaving an empty index. Must not run
+   * concurrently with lookups, which would read freed memory.
+   */
+  @Override
+  public void close() {
+    writeLock.lock();
+    try {
+      SlotTable old = table;
+      table = new SlotTable(16);
+      dataSegments = new MemorySegment[0];
+      old.free();
+      for (ByteBuffer buffer : dataBuffers) {
+        free(buffer);
+      }
+      dataBuffers.clear();
+      dataOffset = 0;
+      size = 0;
+      usedSlots = 0;
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Writes the row for an entry to the data segments and returns its address, or {@link
+   * #TOMBSTONE} for a null value.
+   */
+  private long append(int key, byte[] value) {
+    if (value == null) {
+      return TOMBSTONE;
+    }
+    rowWriter.reset();
+    rowWriter.writeInt(0, key);
+    rowWriter.writeBinary(1, value);
+    rowWriter.complete();
+    int rowSize = row.getSizeInBytes();
+    if (4 + rowSize > DATA_SEGMENT_SIZE) {
+      throw new IllegalArgumentException("Row of " + rowSize + " bytes does not fit a segment");
+    }
+
+    MemorySegment[] segments = dataSegments;
+    if (segments.length == 0 || dataOffset + 4 + rowSize > DATA_SEGMENT_SIZE) {
+      ByteBuffer buffer = allocate(DATA_SEGMENT_SIZE);
+      dataBuffers.add(buffer);
+      segments = Arrays.copyOf(segments, segments.length + 1);
+      segments[segments.length - 1] = MemorySegment.wrapOffHeapMemory(buffer);
+      dataSegments = segments;
+      dataOffset = 0;
+    }
+    MemorySegment segment = segments[segments.length - 1];
+    segment.putInt(dataOffset, rowSize);
+    row.getSegments()[0].copyTo(row.getOffset(), segment, dataOffset + 4, rowSize);
+    long address = ((long) (segments.length - 1) << 32) | dataOffset;
+    dataOffset += 4 + rowSize;
+    return address;
+  }
+
+  private void insert(int key, long address) {
+    if (address == TOMBSTONE) {
+      long previous = table.replace(key, TOMBSTONE);
+      if (previous != ABSENT && previous != TOMBSTONE) {
+        size--;
+      }
+      return;
+    }
+    if (usedSlots + 1 > table.capacity * LOAD_FACTOR) {
+      table = grow(table);
+      usedSlots = size;
+    }
+    long previous = table.insert(key, address);
+    if (previous == ABSENT) {
+      usedSlots++;
+      size++;
+    } else if (previous == TOMBSTONE) {
+      size++;
+    }
+  }
+
+  private byte[] value(long address) {
+    MemorySegment segment = dataSegments[(int) (address >>> 32)];
+    int offset = (int) address;
+    BinaryRow r = new BinaryRow(2);
+    r.pointTo(segment, offset + 4, segment.getInt(offset));
+    return r.getBinary(1);
+  }
+
+  /** Copies the live keys into a table of twice the capacity, dropping tombstones. */
+  private static SlotTable grow(SlotTable old) {
+    SlotTable grown = new SlotTable(old.capacity << 1);
+    for (long slot = 0; slot < old.capacity; slot++) {
+      long slotAddress = old.address(slot);
+      long address = UNSAFE.getLong(slotAddress);
+      if (UNSAFE.getInt(slotAddress + 12) != 0 && address != TOMBSTONE) {
+        grown.insert(UNSAFE.getInt(slotAddress + 8), address);
+      }
+    }
+    return grown;
+  }
+
+  /** Allocates zeroed direct memory that {@link #free} can release before it is collected. */
+  private static ByteBuffer allocate(int bytes) {
+    return ByteBuffer.allocateDirect(bytes);
+  }
+
+  private static long addressOf(ByteBuffer buffer) {
+    return UNSAFE.getLong(buffer, BUFFER_ADDRESS_OFFSET);
+  }
+
+  /** Releases the memory of a direct buffer from {@link #allocate} now. */
+  private static void free(ByteBuffer buffer) {
+    try {
+      if (INVOKE_CLEANER != null) {
+        INVOKE_CLEANER.invoke(UNSAFE, buffer);
+      } else {
+        Method cleaner = buffer.getClass().getMethod("cleaner");
+        cleaner.setAccessible(true);
+        Object c = cleaner.invoke(buffer);
+        c.getClass().getMethod("clean").invoke(c);
+      }
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("Cannot free direct memory", e);
+    }
+  }
+
+  /** Murmur3 finalizer, spreads sequential keys over the table. */
+  private static int hash(int key) {
+    int h = key;
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return h & Integer.MAX_VALUE;
+  }
+
+  /**
+   * Slot array of a power-of-two capacity, split over direct buffers of at most 64MB and accessed
+   * by address through {@code Unsafe}.
+   */
+  private static class SlotTable {
+
+    private final long capacity;
+    private final long mask;
+    private final int segmentSlotsShift;
+    private final ByteBuffer[] buffers;
+    private final long[] addresses;
+
+    private SlotTable(long capacity) {
+      this.capacity = capacity;
+      this.mask = capacity - 1;
+      this.segmentSlotsShift =
+          Math.min(SEGMENT_SLOTS_SHIFT, Long.numberOfTrailingZeros(capacity));
+      int segmentSlots = 1 << segmentSlotsShift;
+      this.buffers = new ByteBuffer[(int) (capacity >>> segmentSlotsShift)];
+      this.addresses = new long[buffers.length];
+      for (int i = 0; i < buffers.length; i++) {
+        // allocateDirect memory starts zeroed, i.e. all slots empty
+        buffers[i] = allocate(segmentSlots * SLOT_BYTES);
+        addresses[i] = addressOf(buffers[i]);
+      }
+    }
+
+    /** Memory address of {@code slot}: the row address, then the key and the occupied flag. */
+    private long address(long slot) {
+      return addresses[(int) (slot >>> segmentSlotsShift)]
+          + (slot & ((1L << segmentSlotsShift) - 1)) * SLOT_BYTES;
+    }
+
+    /** The address {@code key} points at, or {@link #ABSENT}. Safe alongside a writer. */
+    private long find(int key) {
+      for (long slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+        long slotAddress = address(slot);
+        if (UNSAFE.getIntVolatile(null, slotAddress + 12) == 0) {
+          return ABSENT;
+        }
+        if (UNSAFE.getInt(slotAddress + 8) == key) {
+          return UNSAFE.getLongVolatile(null, slotAddress);
+        }
+      }
+    }
+
+    /** Points {@code key} at {@code address}, returns the previous address or {@link #ABSENT}. */
+    private long insert(int key, long address) {
+      for (long slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+        long slotAddress = address(slot);
+        if (UNSAFE.getInt(slotAddress + 12) == 0) {
+          UNSAFE.putLong(slotAddress, address);
+          UNSAFE.putInt(slotAddress + 8, key);
+          UNSAFE.putOrderedInt(null, slotAddress + 12, 1);
+          return ABSENT;
+        }
+        if (UNSAFE.getInt(slotAddress + 8) == key) {
+          long previous = UNSAFE.getLong(slotAddress);
+          UNSAFE.putOrderedLong(null, slotAddress, address);
+          return previous;
+        }
+      }
+    }
+
+    /** Like {@link #insert} for a key already in the table, does nothing if it is not. */
+    private long replace(int key, long address) {
+      for (long slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+        long slotAddress = address(slot);
+        if (UNSAFE.getInt(slotAddress + 12) == 0) {
+          return ABSENT;
+        }
+        if (UNSAFE.getInt(slotAddress + 8) == key) {
+          long previous = UNSAFE.getLong(slotAddress);
+          UNSAFE.putOrderedLong(null, slotAddress, address);
+          return previous;
+        }
+      }
+    }
+
+    private void free() {
+      for (ByteBuffer buffer : buffers) {
+        OffHeapHashIndex.free(buffer);
+      }
+    }
+  }
+}
@@ -0,0 +1,197 @@
+package com.zmc.qps.store;
+
+import org.rocksdb.ReadOptions;
+import org.rocksdb.RocksDB;
+import org.rocksdb.RocksIterator;
+import org.rocksdb.Slice;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Aggregates a key range of a {@link RocksDB} instance in parallel, Java side: the range is split
+ * into sub-ranges of at most {@code leafRows} keys, each scanned with its own bounded iterator on
+ * a {@link ForkJoinPool}, and the partial results are merged as the tasks join.
+ *
+ * <p>Keys are 4-byte big-endian ints as in {@link RocksDBStore}; values start with a 4-byte group
+ * and an 8-byte amount. Keys and values are copied into direct buffers and accumulated into
+ * primitive arrays, so nothing is allocated or boxed per row.
+ */
+public class RocksDBAggregator {
+
+  /** Bytes of a value read by the aggregation: the group and the amount. */
+  public static final int PREFIX = 12;
+
+  private final RocksDB db;
+  private final ForkJoinPool pool;
+  private final int leafRows;
+  private final int groups;
+  private final int topN;
+
+  public RocksDBAggregator(RocksDB db, ForkJoinPool pool, int leafRows, int groups, int topN) {
+    this.db = db;
+    this.pool = pool;
+    this.leafRows = leafRows;
+    this.groups = groups;
+    this.topN = topN;
+  }
+
+  /** Sums and counts per group and the top amounts over keys {@code [from, to)}. */
+  public Aggregate aggregate(int from, int to) {
+    return pool.invoke(new RangeTask(from, to));
+  }
+
+  /** Encodes the aggregated prefix of a value, followed by {@code padding} zero bytes. */
+  public static byte[] value(int group, long amount, int padding) {
+    return ByteBuffer.allocate(PREFIX + padding).putInt(group).putLong(amount).array();
+  }
+
+  private Aggregate scan(int from, int to) {
+    Aggregate aggregate = new Aggregate(groups, topN);
+    ByteBuffer key = ByteBuffer.allocateDirect(4);
+    ByteBuffer value = ByteBuffer.allocateDirect(PREFIX);
+    try (Slice upperBound = new Slice(RocksDBStore.key(to));
+        ReadOptions readOptions =
+            new ReadOptions().setIterateUpperBound(upperBound).setFillCache(false);
+        RocksIterator iterator = db.newIterator(readOptions)) {
+      for (iterator.seek(RocksDBStore.key(from)); iterator.isValid(); iterator.next()) {
+        key.clear();
+        iterator.key(key);
+        value.clear();
+        iterator.value(value);
+        aggregate.add(key.getInt(0), value.getInt(0), value.getLong(4));
+      }
+    }
+    return aggregate;
+  }
+
+  private class RangeTask extends RecursiveTask<Aggregate> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int from;
+    private final int to;
+
+    private RangeTask(int from, int to) {
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected Aggregate compute() {
+      if ((long) to - from <= leafRows) {
+        return scan(from, to);
+      }
+      int middle = (int) (((long) from + to) >>> 1);
+      RangeTask right = new RangeTask(middle, to);
+      right.fork();
+      Aggregate left = new RangeTask(from, middle).compute();
+      left.merge(right.join());
+      return left;
+    }
+  }
+
+  /** Sum and count per group, and the {@code topN} largest amounts with their keys. */
+  public static class Aggregate {
+
+    private final long[] sums;
+    private final long[] counts;
+    // min-heap on the amount, so the smallest of the top amounts is replaced first
+    private final long[] topAmounts;
+    private final int[] topIds;
+    private int topSize;
+
+    Aggregate(int groups, int topN) {
+      this.sums = new long[groups];
+      this.counts = new long[groups];
+      this.topAmounts = new long[topN];
+      this.topIds = new int[topN];
+    }
+
+    void add(int id, int group, long amount) {
+      sums[group] += amount;
+      counts[group]++;
+      offer(id, amount);
+    }
+
+    void merge(Aggregate other) {
+      for (int g = 0; g < sums.length; g++) {
+        sums[g] += other.sums[g];
+        counts[g] += other.counts[g];
+      }
+      for (int i = 0; i < other.topSize; i++) {
+        offer(other.topIds[i], other.topAmounts[i]);
+      }
+    }
+
+    private void offer(int id, long amount) {
+      if (topSize < topAmounts.length) {
+        int i = topSize++;
+        while (i > 0 && topAmounts[(i - 1) / 2] > amount) {
+          topAmounts[i] = topAmounts[(i - 1) / 2];
+          topIds[i] = topIds[(i - 1) / 2];
+          i = (i - 1) / 2;
+        }
+        topAmounts[i] = amount;
+        topIds[i] = id;
+      } else if (topSize > 0 && amount > topAmounts[0]) {
+        int i = 0;
+        while (true) {
+          int child = 2 * i + 1;
+          if (child >= topSize) {
+            break;
+          }
+          if (child + 1 < topSize && topAmounts[child + 1] < topAmounts[child]) {
+            child++;
+          }
+          if (topAmounts[child] >= amount) {
+            break;
+          }
+          topAmounts[i] = topAmounts[child];
+          topIds[i] = topIds[child];
+          i = child;
+        }
+        topAmounts[i] = amount;
+        topIds[i] = id;
+      }
+    }
+
+    public long rows() {
+      long rows = 0;
+      for (long count : counts) {
+        rows += count;
+      }
+      return rows;
+    }
+
+    public long sum() {
+      long sum = 0;
+      for (long s : sums) {
+        sum += s;
+      }
+      return sum;
+    }
+
+    public long sum(int group) {
+      return sums[group];
+    }
+
+    public long count(int group) {
+      return counts[group];
+    }
+
+    /** The top amounts, largest first. */
+    public long[] top() {
+      long[] top = Arrays.copyOf(topAmounts, topSize);
+      Arrays.sort(top);
+      for (int i = 0, j = top.length - 1; i < j; i++, j--) {
+        long t = top[i];
+        top[i] = top[j];
+        top[j] = t;
+      }
+      return top;
+    }
+  }
+}
@@ -0,0 +1,298 @@
+package com.zmc.qps.store;
+
+import org.apache.arrow.memory.ArrowBuf;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.VarBinaryVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowReader;
+import org.apache.arrow.vector.types.Types;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.rocksdb.ReadOptions;
+import org.rocksdb.RocksDB;
+import org.rocksdb.RocksIterator;
+import org.rocksdb.Slice;
+import org.rocksdb.Snapshot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Streams a snapshot of keys {@code [from, to)} of a {@link RocksDB} instance as Arrow batches of
+ * {@code (id INT, value VARBINARY)}, for export to Parquet or DuckDB.
+ *
+ * <p>The key range is split into {@code ranges} sub-ranges, scanned by {@code parallelism}
+ * producer threads with bounded iterators on one snapshot. Producers decode into a fixed pool of
+ * {@code queueDepth} {@link VectorSchemaRoot}s; a full batch is queued, and {@link
+ * #loadNextBatch} transfers its buffers into the root of this reader and returns the producer
+ * root to the pool. On the producer side at most {@code queueDepth + 1} batches of {@code
+ * batchRows} rows exist at any time: the pooled ones and the one just handed out. Producers block
+ * while the consumer is behind. Batches of different sub-ranges arrive in no particular order.
+ *
+ * <p>Only the roots are reused, not their buffers. A stream exported through the Arrow C data
+ * interface hands the buffers of every batch to native code, which holds references to them
+ * until it releases the batch, possibly after the next one was loaded; refilling them in place
+ * would overwrite rows the consumer may still read. Transferring gives each batch buffers of its
+ * own, so producers allocate new ones for every batch, sized from the previous batch so that
+ * they rarely grow while filling. Batches a native consumer still holds are on top of the bound
+ * above, so the memory of an export through the C data interface depends on the consumer.
+ *
+ * <p>Per-stage times are kept: producers reading and decoding, producers blocked on a free
+ * batch, and the consumer waiting for a full one; and the cost of allocating batch buffers:
+ * allocations, bytes and time, which is part of reading and decoding.
+ */
+public class RocksDBArrowReader extends ArrowReader {
+
+  public static final Schema SCHEMA =
+      new Schema(
+          Arrays.asList(
+              Field.nullable("id", Types.MinorType.INT.getType()),
+              Field.nullable("value", Types.MinorType.VARBINARY.getType())));
+
+  // queued after the last batch of every producer
+  private static final VectorSchemaRoot END = new VectorSchemaRoot(new ArrayList<>());
+
+  private final RocksDB db;
+  private final Snapshot snapshot;
+  private final int parallelism;
+  private final int batchRows;
+  private final Queue<int[]> pendingRanges = new ConcurrentLinkedQueue<>();
+  private final BlockingQueue<VectorSchemaRoot> free;
+  private final BlockingQueue<VectorSchemaRoot> full;
+  private final List<VectorSchemaRoot> producerRoots = new ArrayList<>();
+  private final List<Thread> producers = new ArrayList<>();
+  private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+  private final LongAdder rows = new LongAdder();
+  private final LongAdder bytes = new LongAdder();
+  private final LongAdder produceNanos = new LongAdder();
+  private final LongAdder blockedNanos = new LongAdder();
+  private final LongAdder allocations = new LongAdder();
+  private final LongAdder allocatedBytes = new LongAdder();
+  private final LongAdder allocateNanos = new LongAdder();
+  private long waitNanos;
+  private int running;
+  // an exported stream closes the reader when it is released, the owner may close it again
+  private boolean closed;
+
+  public RocksDBArrowReader(
+      BufferAllocator allocator,
+      RocksDB db,
+      int from,
+      int to,
+      int ranges,
+      int parallelism,
+      int batchRows,
+      int queueDepth) {
+    super(allocator);
+    this.db = db;
+    this.snapshot = db.getSnapshot();
+    this.parallelism = parallelism;
+    this.batchRows = batchRows;
+    this.free = new ArrayBlockingQueue<>(queueDepth);
+    // room for every batch plus one end marker per producer
+    this.full = new ArrayBlockingQueue<>(queueDepth + parallelism);
+    long rangeSize = ((long) to - from + ranges - 1) / ranges;
+    for (long start = from; start < to; start += rangeSize) {
+      pendingRanges.add(new int[] {(int) start, (int) Math.min(to, start + rangeSize)});
+    }
+    for (int i = 0; i < queueDepth; i++) {
+      VectorSchemaRoot root = VectorSchemaRoot.create(SCHEMA, allocator);
+      producerRoots.add(root);
+      free.add(root);
+    }
+  }
+
+  @Override
+  protected Schema readSchema() {
+    return SCHEMA;
+  }
+
+  /** Starts the producers on the first call, then hands out the next decoded batch. */
+  @Override
+  public boolean loadNextBatch() throws IOException {
+    VectorSchemaRoot root = getVectorSchemaRoot();
+    if (producers.isEmpty()) {
+      startProducers();
+    }
+    try {
+      while (running > 0) {
+        long start = System.nanoTime();
+        VectorSchemaRoot batch = full.take();
+        waitNanos += System.nanoTime() - start;
+        if (batch == END) {
+          running--;
+          continue;
+        }
+        for (int i = 0; i < batch.getFieldVectors().size(); i++) {
+          FieldVector vector = batch.getVector(i);
+          vector.makeTransferPair(root.getVector(i)).transfer();
+        }
+        root.setRowCount(batch.getRowCount());
+        free.put(batch);
+        return true;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    }
+    if (failure.get() != null) {
+      throw new IOException("Export failed", failure.get());
+    }
+    root.setRowCount(0);
+    return false;
+  }
+
+  private void startProducers() {
+    running = parallelism;
+    for (int i = 0; i < parallelism; i++) {
+      Thread producer = new Thread(this::produce, "rocksdb-arrow-" + i);
+      producer.setDaemon(true);
+      producers.add(producer);
+      producer.start();
+    }
+  }
+
+  private void produce() {
+    ByteBuffer key = ByteBuffer.allocateDirect(4);
+    ByteBuffer value = ByteBuffer.allocateDirect(1024);
+    // average value size of the previous batch, to size the next one
+    double valueDensity = 8;
+    try {
+      for (int[] range = pendingRanges.poll(); range != null; range = pendingRanges.poll()) {
+        try (Slice upperBound = new Slice(RocksDBStore.key(range[1]));
+            ReadOptions readOptions =
+                new ReadOptions()
+                    .setSnapshot(snapshot)
+                    .setIterateUpperBound(upperBound)
+                    .setFillCache(false);
+            RocksIterator iterator = db.newIterator(readOptions)) {
+          iterator.seek(RocksDBStore.key(range[0]));
+          while (iterator.isValid()) {
+            long blockedStart = System.nanoTime();
+            VectorSchemaRoot batch = free.take();
+            long start = System.nanoTime();
+            blockedNanos.add(start - blockedStart);
+            IntVector ids = (IntVector) batch.getVector(0);
+            VarBinaryVector values = (VarBinaryVector) batch.getVector(1);
+            ids.setInitialCapacity(batchRows);
+            values.setInitialCapacity(batchRows, valueDensity);
+            batch.allocateNew();
+            allocations.increment();
+            allocateNanos.add(System.nanoTime() - start);
+            int count = 0;
+            long batchBytes = 0;
+            for (; count < batchRows && iterator.isValid(); count++, iterator.next()) {
+              key.clear();
+              iterator.key(key);
+              value.clear();
+              int length = iterator.value(value);
+              if (length > value.capacity()) {
+                value = ByteBuffer.allocateDirect(Integer.highestOneBit(length) << 1);
+                iterator.value(value);
+              }
+              ids.setSafe(count, key.getInt(0));
+              values.setSafe(count, value, 0, length);
+              batchBytes += 4 + length;
+            }
+            batch.setRowCount(count);
+            for (FieldVector vector : batch.getFieldVectors()) {
+              for (ArrowBuf buffer : vector.getFieldBuffers()) {
+                allocatedBytes.add(buffer.capacity());
+              }
+            }
+            if (count > 0) {
+              valueDensity = Math.max(1, (double) (batchBytes - 4L * count) / count);
+            }
+            rows.add(count);
+            bytes.add(batchBytes);
+            produceNanos.add(System.nanoTime() - start);
+            full.put(batch);
+          }
+        }
+      }
+    } catch (Throwable t) {
+      failure.compareAndSet(null, t);
+    } finally {
+      try {
+        full.put(END);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /** Rows handed to producers' batches so far. */
+  public long rows() {
+    return rows.sum();
+  }
+
+  /** Key and value bytes read from RocksDB. */
+  @Override
+  public long bytesRead() {
+    return bytes.sum();
+  }
+
+  /** Time producers spent reading and decoding, summed over all producers. */
+  public long produceNanos() {
+    return produceNanos.sum();
+  }
+
+  /** Time producers waited for a free batch, i.e. for the consumer, summed over all producers. */
+  public long blockedNanos() {
+    return blockedNanos.sum();
+  }
+
+  /** Batches whose buffers producers allocated, one per batch as the class comment explains. */
+  public long allocations() {
+    return allocations.sum();
+  }
+
+  /** Capacity of the buffers of all batches once filled, including growth while filling. */
+  public long allocatedBytes() {
+    return allocatedBytes.sum();
+  }
+
+  /** Time producers spent allocating buffers for empty batches, summed over all producers. */
+  public long allocateNanos() {
+    return allocateNanos.sum();
+  }
+
+  /** Time the consumer waited in {@link #loadNextBatch} for the producers. */
+  public long waitNanos() {
+    return waitNanos;
+  }
+
+  @Override
+  protected void closeReadSource() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    for (Thread producer : producers) {
+      producer.interrupt();
+    }
+    for (Thread producer : producers) {
+      try {
+        producer.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    for (VectorSchemaRoot root : producerRoots) {
+      root.close();
+    }
+    db.releaseSnapshot(snapshot);
+  }
+}
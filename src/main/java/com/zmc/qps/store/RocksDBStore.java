@@ -0,0 +1,304 @@
+package com.zmc.qps.store;
+
+import org.rocksdb.BlockBasedTableConfig;
+import org.rocksdb.BloomFilter;
+import org.rocksdb.Cache;
+import org.rocksdb.EnvOptions;
+import org.rocksdb.FlushOptions;
+import org.rocksdb.IngestExternalFileOptions;
+import org.rocksdb.LRUCache;
+import org.rocksdb.Options;
+import org.rocksdb.RocksDB;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.RocksIterator;
+import org.rocksdb.SstFileWriter;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteBufferManager;
+import org.rocksdb.WriteOptions;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+
+/** {@link KVStore} over a single {@link RocksDB} instance, keys are 4-byte big-endian ints. */
+public class RocksDBStore implements KVStore {
+
+  static {
+    loadLibrary();
+  }
+
+  private final Options options;
+  private final WriteOptions writeOptions;
+  private final RocksDB db;
+  // only set when the store runs under a memory limit
+  private final Cache blockCache;
+  private final WriteBufferManager writeBufferManager;
+  private final BloomFilter filter;
+
+  /**
+   * Loads RocksDB's native library, after DuckDB's when DuckDB is on the class path. rocksdbjni
+   * exports the {@code std::random_device} of its statically linked libstdc++; when it is the first
+   * native library to pull in {@code libstdc++.so.6}, libstdc++ binds its own calls to that copy
+   * and DuckDB, opened later in the same process, fails with "random_device could not be read".
+   * Must run before any other {@code org.rocksdb} class is used.
+   */
+  public static void loadLibrary() {
+    try {
+      Class.forName("org.duckdb.DuckDBNative");
+    } catch (ClassNotFoundException e) {
+      // no DuckDB, nothing to order
+    }
+    RocksDB.loadLibrary();
+  }
+
+  public RocksDBStore(String path) throws IOException {
+    this(new Options().setCreateIfMissing(true), path);
+  }
+
+  public RocksDBStore(Options options, String path) throws IOException {
+    this(options, new WriteOptions(), path);
+  }
+
+  /** Opens a store whose writes use {@code writeOptions}, e.g. to sync or skip the WAL. */
+  public RocksDBStore(Options options, WriteOptions writeOptions, String path)
+      throws IOException {
+    this.options = options;
+    this.writeOptions = writeOptions;
+    this.blockCache = null;
+    this.writeBufferManager = null;
+    this.filter = null;
+    this.db = open(options, path);
+  }
+
+  /**
+   * Opens a store whose data blocks, index and filter blocks and memtables are all charged to one
+   * LRU cache of {@code memoryLimit} bytes, so the data set can be made larger than memory. The
+   * native objects it creates are freed if opening fails.
+   */
+  public RocksDBStore(String path, long memoryLimit) throws IOException {
+    this.blockCache = new LRUCache(memoryLimit);
+    this.writeBufferManager = new WriteBufferManager(memoryLimit / 4, blockCache);
+    this.filter = new BloomFilter(10);
+    this.options =
+        new Options()
+            .setCreateIfMissing(true)
+            .setWriteBufferManager(writeBufferManager)
+            .setTableFormatConfig(
+                new BlockBasedTableConfig()
+                    .setBlockCache(blockCache)
+                    .setCacheIndexAndFilterBlocks(true)
+                    .setPinL0FilterAndIndexBlocksInCache(true)
+                    .setFilterPolicy(filter));
+    this.writeOptions = new WriteOptions();
+    try {
+      this.db = open(options, path);
+    } catch (IOException | RuntimeException e) {
+      closeOptions();
+      throw e;
+    }
+  }
+
+  private static RocksDB open(Options options, String path) throws IOException {
+    try {
+      return RocksDB.open(options, path);
+    } catch (RocksDBException e) {
+      throw new IOException(e);
+    }
+  }
+
+  public RocksDB db() {
+    return db;
+  }
+
+  @Override
+  public String name() {
+    return "rocksdb";
+  }
+
+  @Override
+  public void put(int key, byte[] value) throws IOException {
+    try {
+      db.put(writeOptions, key(key), value);
+    } catch (RocksDBException e) {
+      throw new IOException(e);
+    }
+  }
+
+  @Override
+  public void putBatch(int[] keys, byte[][] values, int count) throws IOException {
+    try (WriteBatch batch = new WriteBatch()) {
+      for (int i = 0; i < count; i++) {
+        batch.put(key(keys[i]), values[i]);
+      }
+      db.write(writeOptions, batch);
+    } catch (RocksDBException e) {
+      throw new IOException(e);
+    }
+  }
+
+  @Override
+  public byte[] get(int key) throws IOException {
+    try {
+      return db.get(key(key));
+    } catch (RocksDBException e) {
+      throw new IOException(e);
+    }
+  }
+
+  @Override
+  public void delete(int key) throws IOException {
+    try {
+      db.delete(writeOptions, key(key));
+    } catch (RocksDBException e) {
+      throw new IOException(e);
+    }
+  }
+
+  /** Removes keys {@code [from, to)} with a single range tombstone. */
+  public void deleteRange(int from, int to) throws IOException {
+    try {
+      db.deleteRange(writeOptions, key(from), key(to));
+    } catch (RocksDBException e) {
+      throw new IOException(e);
+    }
+  }
+
+  /** Merges {@code operand} into {@code key}, needs a merge operator in the options. */
+  public void merge(int key, byte[] operand) throws IOException {
+    try {
+      db.merge(writeOptions, key(key), operand);
+    } catch (RocksDBException e) {
+      throw new IOException(e);
+    }
+  }
+
+  @Override
+  public int scan(int startKey, int count) {
+    int read = 0;
+    try (RocksIterator iterator = db.newIterator()) {
+      for (iterator.seek(key(startKey)); iterator.isValid() && read < count; iterator.next()) {
+        byte[] keyBytes = iterator.key();
+        byte[] valueBytes = iterator.value();
+        read++;
+      }
+    }
+    return read;
+  }
+
+  @Override
+  public void flush() throws IOException {
+    try (FlushOptions flushOptions = new FlushOptions().setWaitForFlush(true)) {
+      db.flush(flushOptions);
+    } catch (RocksDBException e) {
+      throw new IOException(e);
+    }
+  }
+
+  /** Compacts the whole key range, dropping overwritten versions and tombstones. */
+  public void compact() throws IOException {
+    try {
+      db.compactRange();
+    } catch (RocksDBException e) {
+      throw new IOException(e);
+    }
+  }
+
+  /**
+   * Writes keys {@code [from, to)} into sorted SST files of {@code rowsPerFile} keys each, built
+   * by {@code parallelism} threads with {@link SstFileWriter}, and ingests them in one call. The
+   * files do not overlap, so RocksDB moves them straight into the bottom level without
+   * compaction.
+   */
+  public void bulkLoad(
+      int from, int to, int parallelism, int rowsPerFile, IntFunction<byte[]> values)
+      throws IOException {
+    File staging = new File(db.getName() + ".sst");
+    if (!staging.exists() && !staging.mkdirs()) {
+      throw new IOException("Cannot create staging dir " + staging);
+    }
+    ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+    try {
+      List<Future<String>> futures = new ArrayList<>();
+      for (long start = from; start < to; start += rowsPerFile) {
+        int fileFrom = (int) start;
+        int fileTo = (int) Math.min(to, start + rowsPerFile);
+        String file = new File(staging, fileFrom + ".sst").getPath();
+        futures.add(
+            pool.submit(
+                () -> {
+                  try (EnvOptions envOptions = new EnvOptions();
+                      SstFileWriter writer = new SstFileWriter(envOptions, options)) {
+                    writer.open(file);
+                    for (int key = fileFrom; key < fileTo; key++) {
+                      writer.put(key(key), values.apply(key));
+                    }
+                    writer.finish();
+                  }
+                  return file;
+                }));
+      }
+      List<String> files = new ArrayList<>();
+      for (Future<String> future : futures) {
+        files.add(future.get());
+      }
+      try (IngestExternalFileOptions ingestOptions =
+          new IngestExternalFileOptions().setMoveFiles(true)) {
+        db.ingestExternalFile(files, ingestOptions);
+      }
+    } catch (InterruptedException | RocksDBException e) {
+      throw new IOException(e);
+    } catch (ExecutionException e) {
+      throw new IOException(e.getCause());
+    } finally {
+      pool.shutdownNow();
+      File[] leftovers = staging.listFiles();
+      if (leftovers != null) {
+        for (File file : leftovers) {
+          file.delete();
+        }
+      }
+      staging.delete();
+    }
+  }
+
+  @Override
+  public boolean supportsScan() {
+    return true;
+  }
+
+  @Override
+  public boolean supportsConcurrentWrites() {
+    return true;
+  }
+
+  @Override
+  public void close() {
+    db.close();
+    closeOptions();
+  }
+
+  private void closeOptions() {
+    writeOptions.close();
+    options.close();
+    if (filter != null) {
+      filter.close();
+    }
+    if (writeBufferManager != null) {
+      writeBufferManager.close();
+    }
+    if (blockCache != null) {
+      blockCache.close();
+    }
+  }
+
+  public static byte[] key(int key) {
+    return ByteBuffer.allocate(4).putInt(key).array();
+  }
+}
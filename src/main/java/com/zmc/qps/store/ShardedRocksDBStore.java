@@ -0,0 +1,349 @@
+package com.zmc.qps.store;
+
+import org.rocksdb.BlockBasedTableConfig;
+import org.rocksdb.Cache;
+import org.rocksdb.ColumnFamilyDescriptor;
+import org.rocksdb.ColumnFamilyHandle;
+import org.rocksdb.ColumnFamilyOptions;
+import org.rocksdb.DBOptions;
+import org.rocksdb.DbPath;
+import org.rocksdb.Env;
+import org.rocksdb.FlushOptions;
+import org.rocksdb.LRUCache;
+import org.rocksdb.Priority;
+import org.rocksdb.RocksDB;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.RocksIterator;
+import org.rocksdb.RocksObject;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteOptions;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link KVStore} that partitions keys over {@code shards} RocksDB instances, or over column
+ * families of one instance, to take the single DB mutex and WAL out of the write path.
+ *
+ * <ul>
+ *   <li>{@link Partitioning#HASH} spreads keys evenly, so a scan merges all shards;
+ *       {@link Partitioning#RANGE} splits {@code [0, keySpace)} into contiguous ranges, so a
+ *       scan reads its shards one after the other.
+ *   <li>{@link Layout#INSTANCES} opens one DB per shard, each with its own WAL, memtables and
+ *       mutex; {@link Layout#COLUMN_FAMILIES} opens one DB with a column family per shard, which
+ *       share the WAL and the mutex but write atomically across shards.
+ *   <li>Shard {@code i} is placed under {@code dirs[i % dirs.length]}, so shards can be spread
+ *       over disks; with column families only the SST files move, the WAL stays in {@code
+ *       dirs[0]}.
+ *   <li>The block cache is one LRU cache shared by all shards, or one cache per shard with an
+ *       equal part of the size.
+ * </ul>
+ *
+ * <p>RocksJava only exposes the process-wide default {@link Env}, so {@code backgroundThreads}
+ * sizes its flush and compaction pools for all shards together; each DB may run as many
+ * background jobs as the pools have threads.
+ */
+public class ShardedRocksDBStore implements KVStore {
+
+  /** How keys map to shards. */
+  public enum Partitioning {
+    HASH,
+    RANGE
+  }
+
+  /** What a shard is. */
+  public enum Layout {
+    INSTANCES,
+    COLUMN_FAMILIES
+  }
+
+  private final int shards;
+  private final Partitioning partitioning;
+  private final int keySpace;
+  private final Layout layout;
+  // per shard; with column families every entry is the same DB
+  private final RocksDB[] dbs;
+  private final ColumnFamilyHandle[] handles;
+  private final WriteOptions writeOptions;
+  // closed in reverse order
+  private final List<AutoCloseable> resources = new ArrayList<>();
+
+  /**
+   * Opens or creates the shards. A {@code blockCacheBytes} of 0 keeps RocksDB's default cache
+   * per shard, a {@code backgroundThreads} of 0 the default thread pools.
+   */
+  public ShardedRocksDBStore(
+      String[] dirs,
+      int shards,
+      Partitioning partitioning,
+      int keySpace,
+      Layout layout,
+      long blockCacheBytes,
+      boolean sharedCache,
+      int backgroundThreads)
+      throws IOException {
+    RocksDBStore.loadLibrary();
+    this.shards = shards;
+    this.partitioning = partitioning;
+    this.keySpace = keySpace;
+    this.layout = layout;
+    this.dbs = new RocksDB[shards];
+    this.handles = new ColumnFamilyHandle[shards];
+    this.writeOptions = new WriteOptions();
+    if (backgroundThreads > 0) {
+      Env.getDefault().setBackgroundThreads(backgroundThreads, Priority.LOW);
+      Env.getDefault().setBackgroundThreads(Math.max(1, backgroundThreads / 4), Priority.HIGH);
+    }
+
+    Cache sharedBlockCache = null;
+    if (blockCacheBytes > 0 && sharedCache) {
+      sharedBlockCache = resource(new LRUCache(blockCacheBytes));
+    }
+    try {
+      List<ColumnFamilyDescriptor> descriptors = new ArrayList<>();
+      for (int shard = 0; shard < shards; shard++) {
+        ColumnFamilyOptions cfOptions = resource(new ColumnFamilyOptions());
+        if (blockCacheBytes > 0) {
+          Cache cache =
+              sharedCache ? sharedBlockCache : resource(new LRUCache(blockCacheBytes / shards));
+          cfOptions.setTableFormatConfig(new BlockBasedTableConfig().setBlockCache(cache));
+        }
+        String dir = new File(dirs[shard % dirs.length], "shard-" + shard).getPath();
+        if (layout == Layout.INSTANCES) {
+          List<ColumnFamilyHandle> opened = new ArrayList<>();
+          dbs[shard] =
+              open(
+                  dir,
+                  Collections.singletonList(
+                      new ColumnFamilyDescriptor(RocksDB.DEFAULT_COLUMN_FAMILY, cfOptions)),
+                  opened,
+                  backgroundThreads);
+          handles[shard] = opened.get(0);
+        } else {
+          new File(dir).mkdirs();
+          cfOptions.setCfPaths(Collections.singletonList(new DbPath(Paths.get(dir), 0)));
+          descriptors.add(
+              new ColumnFamilyDescriptor(
+                  ("shard-" + shard).getBytes(StandardCharsets.UTF_8), cfOptions));
+        }
+      }
+      if (layout == Layout.COLUMN_FAMILIES) {
+        descriptors.add(
+            0,
+            new ColumnFamilyDescriptor(
+                RocksDB.DEFAULT_COLUMN_FAMILY, resource(new ColumnFamilyOptions())));
+        List<ColumnFamilyHandle> opened = new ArrayList<>();
+        RocksDB db =
+            open(new File(dirs[0], "db").getPath(), descriptors, opened, backgroundThreads);
+        for (int shard = 0; shard < shards; shard++) {
+          dbs[shard] = db;
+          handles[shard] = opened.get(shard + 1);
+        }
+      }
+    } catch (RocksDBException e) {
+      close();
+      throw new IOException(e);
+    }
+  }
+
+  private RocksDB open(
+      String dir,
+      List<ColumnFamilyDescriptor> descriptors,
+      List<ColumnFamilyHandle> opened,
+      int backgroundThreads)
+      throws RocksDBException {
+    new File(dir).mkdirs();
+    DBOptions options =
+        resource(new DBOptions().setCreateIfMissing(true).setCreateMissingColumnFamilies(true));
+    if (backgroundThreads > 0) {
+      options.setMaxBackgroundJobs(backgroundThreads);
+    }
+    RocksDB db = RocksDB.open(options, dir, descriptors, opened);
+    // handles before their DB
+    resources.add(db);
+    resources.addAll(opened);
+    return db;
+  }
+
+  private <T extends RocksObject> T resource(T object) {
+    resources.add(object);
+    return object;
+  }
+
+  /** Shard that owns {@code key}. */
+  public int shard(int key) {
+    if (partitioning == Partitioning.RANGE) {
+      long shard = (long) key * shards / keySpace;
+      return (int) Math.max(0, Math.min(shards - 1, shard));
+    }
+    int h = key * 0x9E3779B9;
+    return ((h ^ (h >>> 16)) & Integer.MAX_VALUE) % shards;
+  }
+
+  public int shards() {
+    return shards;
+  }
+
+  @Override
+  public String name() {
+    return "rocksdb-sharded";
+  }
+
+  @Override
+  public void put(int key, byte[] value) throws IOException {
+    int shard = shard(key);
+    try {
+      dbs[shard].put(handles[shard], writeOptions, RocksDBStore.key(key), value);
+    } catch (RocksDBException e) {
+      throw new IOException(e);
+    }
+  }
+
+  /**
+   * Writes one batch per shard; with column families all entries go into a single batch, which
+   * is atomic across shards.
+   */
+  @Override
+  public void putBatch(int[] keys, byte[][] values, int count) throws IOException {
+    int batches = layout == Layout.COLUMN_FAMILIES ? 1 : shards;
+    WriteBatch[] perShard = new WriteBatch[batches];
+    try {
+      for (int i = 0; i < count; i++) {
+        int shard = shard(keys[i]);
+        int b = layout == Layout.COLUMN_FAMILIES ? 0 : shard;
+        if (perShard[b] == null) {
+          perShard[b] = new WriteBatch();
+        }
+        perShard[b].put(handles[shard], RocksDBStore.key(keys[i]), values[i]);
+      }
+      for (int b = 0; b < batches; b++) {
+        if (perShard[b] != null) {
+          dbs[b].write(writeOptions, perShard[b]);
+        }
+      }
+    } catch (RocksDBException e) {
+      throw new IOException(e);
+    } finally {
+      for (WriteBatch batch : perShard) {
+        if (batch != null) {
+          batch.close();
+        }
+      }
+    }
+  }
+
+  @Override
+  public byte[] get(int key) throws IOException {
+    int shard = shard(key);
+    try {
+      return dbs[shard].get(handles[shard], RocksDBStore.key(key));
+    } catch (RocksDBException e) {
+      throw new IOException(e);
+    }
+  }
+
+  @Override
+  public void delete(int key) throws IOException {
+    int shard = shard(key);
+    try {
+      dbs[shard].delete(handles[shard], writeOptions, RocksDBStore.key(key));
+    } catch (RocksDBException e) {
+      throw new IOException(e);
+    }
+  }
+
+  /** Reads the range shard by shard, or merges the iterators of all shards under hashing. */
+  @Override
+  public int scan(int startKey, int count) {
+    if (partitioning == Partitioning.RANGE) {
+      int read = 0;
+      for (int shard = shard(startKey); shard < shards && read < count; shard++) {
+        try (RocksIterator iterator = dbs[shard].newIterator(handles[shard])) {
+          for (iterator.seek(RocksDBStore.key(startKey));
+              iterator.isValid() && read < count;
+              iterator.next()) {
+            iterator.value();
+            read++;
+          }
+        }
+      }
+      return read;
+    }
+
+    RocksIterator[] iterators = new RocksIterator[shards];
+    int[] heads = new int[shards];
+    try {
+      for (int shard = 0; shard < shards; shard++) {
+        iterators[shard] = dbs[shard].newIterator(handles[shard]);
+        iterators[shard].seek(RocksDBStore.key(startKey));
+        if (iterators[shard].isValid()) {
+          heads[shard] = ByteBuffer.wrap(iterators[shard].key()).getInt();
+        }
+      }
+      int read = 0;
+      while (read < count) {
+        int next = -1;
+        for (int shard = 0; shard < shards; shard++) {
+          if (iterators[shard].isValid() && (next < 0 || heads[shard] < heads[next])) {
+            next = shard;
+          }
+        }
+        if (next < 0) {
+          break;
+        }
+        iterators[next].value();
+        read++;
+        iterators[next].next();
+        if (iterators[next].isValid()) {
+          heads[next] = ByteBuffer.wrap(iterators[next].key()).getInt();
+        }
+      }
+      return read;
+    } finally {
+      for (RocksIterator iterator : iterators) {
+        if (iterator != null) {
+          iterator.close();
+        }
+      }
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    try (FlushOptions flushOptions = new FlushOptions().setWaitForFlush(true)) {
+      for (int shard = 0; shard < shards; shard++) {
+        dbs[shard].flush(flushOptions, handles[shard]);
+      }
+    } catch (RocksDBException e) {
+      throw new IOException(e);
+    }
+  }
+
+  @Override
+  public boolean supportsScan() {
+    return true;
+  }
+
+  @Override
+  public boolean supportsConcurrentWrites() {
+    return true;
+  }
+
+  @Override
+  public void close() {
+    writeOptions.close();
+    for (int i = resources.size() - 1; i >= 0; i--) {
+      try {
+        resources.get(i).close();
+      } catch (Exception ignored) {
+      }
+    }
+    resources.clear();
+  }
+}
@@ -0,0 +1,91 @@
+package com.zmc.qps.store;
+
+import org.apache.paimon.CoreOptions;
+import org.apache.paimon.mergetree.PaimonKVStore;
+import org.apache.paimon.options.MemorySize;
+import org.apache.paimon.options.Options;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Opens a {@link KVStore} by engine name: {@code rocksdb}, {@code duckdb} or {@code paimon}, or
+ * {@code offheap} for the in-memory {@link OffHeapHashIndex}, which ignores the path.
+ */
+public class Stores {
+
+  public static final String[] ENGINES = {"rocksdb", "duckdb", "paimon"};
+
+  private Stores() {}
+
+  public static KVStore open(String engine, String path) throws IOException {
+    createParent(path);
+    switch (engine) {
+      case "rocksdb":
+        return new RocksDBStore(path);
+      case "duckdb":
+        return new DuckDBStore(path);
+      case "paimon":
+        return new PaimonKVStore(path);
+      case "offheap":
+        return new OffHeapHashIndex();
+      default:
+        throw new IllegalArgumentException("Unknown engine: " + engine);
+    }
+  }
+
+  /**
+   * Opens a store with its caches capped at {@code memoryLimit} bytes: the RocksDB block cache
+   * (which also holds memtables, index and filter blocks), DuckDB's {@code memory_limit}, and for
+   * Paimon the write buffer, which gets a quarter of the limit but no more than its default, plus
+   * the lookup cache, which gets the rest. A limit of 0 keeps the engine defaults.
+   */
+  public static KVStore open(String engine, String path, long memoryLimit) throws IOException {
+    if (memoryLimit <= 0) {
+      return open(engine, path);
+    }
+    createParent(path);
+    switch (engine) {
+      case "rocksdb":
+        return new RocksDBStore(path, memoryLimit);
+      case "duckdb":
+        return new DuckDBStore(path, memoryLimit);
+      case "paimon":
+        Options conf = new Options();
+        long writeBuffer =
+            Math.min(memoryLimit / 4, CoreOptions.WRITE_BUFFER_SIZE.defaultValue().getBytes());
+        conf.set(CoreOptions.WRITE_BUFFER_SIZE, MemorySize.ofBytes(writeBuffer));
+        conf.set(
+            CoreOptions.LOOKUP_CACHE_MAX_MEMORY_SIZE,
+            MemorySize.ofBytes(memoryLimit - writeBuffer));
+        return new PaimonKVStore(path, conf);
+      case "offheap":
+        return new OffHeapHashIndex();
+      default:
+        throw new IllegalArgumentException("Unknown engine: " + engine);
+    }
+  }
+
+  /** Default data location per engine, matching the paths used by the single-engine tests. */
+  public static String defaultPath(String engine) {
+    switch (engine) {
+      case "rocksdb":
+        return "/tmp/test_rocksdb";
+      case "duckdb":
+        return "/tmp/test.duckdb";
+      case "paimon":
+        return "/tmp/test_paimon";
+      case "offheap":
+        return "/tmp/test_offheap";
+      default:
+        throw new IllegalArgumentException("Unknown engine: " + engine);
+    }
+  }
+
+  private static void createParent(String path) {
+    File parent = new File(path).getAbsoluteFile().getParentFile();
+    if (parent != null) {
+      parent.mkdirs();
+    }
+  }
+}
@@ -0,0 +1,259 @@
+package com.zmc.qps.workload;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Finds the highest offered load an operation sustains with a latency percentile under an SLO,
+ * by running {@link OpenLoopRunner} steps at increasing target rates.
+ *
+ * <p>A step fails when the percentile of latency from intended start exceeds the SLO, when it is
+ * saturated or when operations failed. Saturated means the engine completed less than {@value
+ * #SATURATION} of what was issued, so a backlog built up, when the backlog did not drain in time,
+ * see {@link OpenLoopRunner.BacklogException}, or when the scheduler issued clearly less than the
+ * target: under {@value #SATURATION} of it with fixed arrivals, more than three standard
+ * deviations below it with Poisson arrivals. {@link #ramp} multiplies the rate by a fixed factor
+ * until the first failure; {@link #bisect} doubles it until the first failure, or halves it until
+ * the first pass if the start rate already fails, and then bisects between the highest passing
+ * and the lowest failing rate. Both start with an unreported warm-up step at the start rate.
+ */
+public class CapacitySearch {
+
+  /** Outcome of a step. */
+  public enum Verdict {
+    OK,
+    SLO_VIOLATED,
+    SATURATED,
+    ERRORS
+  }
+
+  /** Share of the issued operations a step must complete, and of the target rate it must issue. */
+  public static final double SATURATION = 0.95;
+
+  /** Lowest rate {@link #bisect} halves down to when no rate passes. */
+  public static final double MIN_QPS = 1;
+
+  private final double percentile;
+  private final long sloNanos;
+  private final long stepMillis;
+  private final OpenLoopRunner.Arrival arrival;
+  private final String executor;
+  private final int threads;
+
+  public CapacitySearch(
+      double percentile,
+      long sloNanos,
+      long stepMillis,
+      OpenLoopRunner.Arrival arrival,
+      String executor,
+      int threads) {
+    this.percentile = percentile;
+    this.sloNanos = sloNanos;
+    this.stepMillis = stepMillis;
+    this.arrival = arrival;
+    this.executor = executor;
+    this.threads = threads;
+  }
+
+  /**
+   * Runs steps at {@code startQps * factor^i} until one fails or {@code maxQps} is passed; {@code
+   * factor} must be greater than 1. Profiled steps are labelled {@code label} and their rate.
+   */
+  public List<Step> ramp(
+      String label,
+      double startQps,
+      double factor,
+      double maxQps,
+      ClosedLoopRunner.Operation operation)
+      throws InterruptedException {
+    if (!(startQps > 0) || !(factor > 1)) {
+      throw new IllegalArgumentException(
+          "Ramp needs a positive start rate and a factor above 1, got start "
+              + startQps
+              + " and factor "
+              + factor);
+    }
+    step(label + "-warmup", startQps, operation);
+    List<Step> steps = new ArrayList<>();
+    for (double qps = startQps; qps <= maxQps; qps *= factor) {
+      Step step = step(label, qps, operation);
+      steps.add(step);
+      if (step.verdict() != Verdict.OK) {
+        break;
+      }
+    }
+    return steps;
+  }
+
+  /**
+   * Doubles the rate from {@code startQps} until a step fails, or if {@code startQps} already
+   * fails halves it until one passes or {@link #MIN_QPS} is reached, then bisects until the
+   * passing and failing rates are within {@code precision} (e.g. 0.05) of each other. Profiled
+   * steps are labelled {@code label} and their rate.
+   */
+  public List<Step> bisect(
+      String label,
+      double startQps,
+      double maxQps,
+      double precision,
+      ClosedLoopRunner.Operation operation)
+      throws InterruptedException {
+    if (!(startQps > 0) || !(precision > 0)) {
+      throw new IllegalArgumentException(
+          "Bisect needs a positive start rate and precision, got start "
+              + startQps
+              + " and precision "
+              + precision);
+    }
+    step(label + "-warmup", startQps, operation);
+    List<Step> steps = new ArrayList<>();
+    double passing = 0;
+    double failing = Double.NaN;
+    for (double qps = startQps; qps <= maxQps; qps *= 2) {
+      Step step = step(label, qps, operation);
+      steps.add(step);
+      if (step.verdict() != Verdict.OK) {
+        failing = qps;
+        break;
+      }
+      passing = qps;
+    }
+    if (passing == 0 && !Double.isNaN(failing)) {
+      for (double qps = startQps / 2; qps >= MIN_QPS; qps /= 2) {
+        Step step = step(label, qps, operation);
+        steps.add(step);
+        if (step.verdict() == Verdict.OK) {
+          passing = qps;
+          break;
+        }
+        failing = qps;
+      }
+    }
+    while (!Double.isNaN(failing) && passing > 0 && failing - passing > passing * precision) {
+      double qps = (passing + failing) / 2;
+      Step step = step(label, qps, operation);
+      steps.add(step);
+      if (step.verdict() == Verdict.OK) {
+        passing = qps;
+      } else {
+        failing = qps;
+      }
+    }
+    steps.sort(Comparator.comparingDouble(s -> s.result().targetQps()));
+    return steps;
+  }
+
+  private Step step(String label, double qps, ClosedLoopRunner.Operation operation)
+      throws InterruptedException {
+    OpenLoopRunner.Result result;
+    try {
+      result =
+          OpenLoopRunner.run(
+              label + "-" + Math.round(qps),
+              OpenLoopRunner.executor(executor, threads),
+              qps,
+              arrival,
+              stepMillis,
+              operation);
+    } catch (OpenLoopRunner.BacklogException e) {
+      // far above capacity, the search goes on below this rate
+      return new Step(e.result(), Verdict.SATURATED);
+    }
+    Verdict verdict;
+    if (result.errors() > 0) {
+      verdict = Verdict.ERRORS;
+    } else if (result.completedQps() < result.issuedQps() * SATURATION
+        || result.issuedQps() < minIssuedQps(qps)) {
+      verdict = Verdict.SATURATED;
+    } else if (result.latency().percentile(percentile) > sloNanos) {
+      verdict = Verdict.SLO_VIOLATED;
+    } else {
+      verdict = Verdict.OK;
+    }
+    return new Step(result, verdict);
+  }
+
+  private double minIssuedQps(double qps) {
+    if (arrival == OpenLoopRunner.Arrival.FIXED) {
+      return qps * SATURATION;
+    }
+    double expected = qps * stepMillis / 1000.0;
+    return (expected - 3 * Math.sqrt(expected)) * 1000.0 / stepMillis;
+  }
+
+  /** The passing step with the highest target rate, or null if none passed. */
+  public static Step maxSustainable(List<Step> steps) {
+    Step best = null;
+    for (Step step : steps) {
+      if (step.verdict() == Verdict.OK
+          && (best == null || step.result().targetQps() > best.result().targetQps())) {
+        best = step;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * The knee of the throughput/latency curve of the passing steps: with completed QPS and the
+   * percentile both scaled to {@code [0, 1]}, the step that gains the most throughput for the
+   * least latency, i.e. maximizes {@code qps - latency} (Kneedle for a convex, increasing
+   * curve). Null if fewer than three steps passed.
+   */
+  public Step knee(List<Step> steps) {
+    List<Step> passing = new ArrayList<>();
+    for (Step step : steps) {
+      if (step.verdict() == Verdict.OK) {
+        passing.add(step);
+      }
+    }
+    if (passing.size() < 3) {
+      return null;
+    }
+    double minQps = Double.MAX_VALUE;
+    double maxQps = 0;
+    double minLatency = Double.MAX_VALUE;
+    double maxLatency = 0;
+    for (Step step : passing) {
+      double qps = step.result().completedQps();
+      double latency = step.result().latency().percentile(percentile);
+      minQps = Math.min(minQps, qps);
+      maxQps = Math.max(maxQps, qps);
+      minLatency = Math.min(minLatency, latency);
+      maxLatency = Math.max(maxLatency, latency);
+    }
+    Step knee = null;
+    double best = -Double.MAX_VALUE;
+    for (Step step : passing) {
+      double qps = (step.result().completedQps() - minQps) / Math.max(1e-9, maxQps - minQps);
+      double latency =
+          (step.result().latency().percentile(percentile) - minLatency)
+              / Math.max(1e-9, maxLatency - minLatency);
+      if (qps - latency > best) {
+        best = qps - latency;
+        knee = step;
+      }
+    }
+    return knee;
+  }
+
+  /** One run at a fixed target rate. */
+  public static class Step {
+
+    private final OpenLoopRunner.Result result;
+    private final Verdict verdict;
+
+    Step(OpenLoopRunner.Result result, Verdict verdict) {
+      this.result = result;
+      this.verdict = verdict;
+    }
+
+    public OpenLoopRunner.Result result() {
+      return result;
+    }
+
+    public Verdict verdict() {
+      return verdict;
+    }
+  }
+}
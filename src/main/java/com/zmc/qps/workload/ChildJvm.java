@@ -0,0 +1,58 @@
+package com.zmc.qps.workload;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Runs a main class in a fresh JVM with the classpath and JVM options of the current one, for
+ * measurements that must not see caches, native memory or JIT state of earlier runs.
+ */
+public class ChildJvm {
+
+  private ChildJvm() {}
+
+  /** Runs {@code mainClass} with its output going to ours, returns the exit code. */
+  public static int run(Class<?> mainClass, String... args)
+      throws IOException, InterruptedException {
+    return new ProcessBuilder(command(mainClass, args)).inheritIO().start().waitFor();
+  }
+
+  /**
+   * Runs {@code mainClass} and passes every line it prints to {@code lines}, stderr included,
+   * returns the exit code.
+   */
+  public static int run(Class<?> mainClass, Consumer<String> lines, String... args)
+      throws IOException, InterruptedException {
+    Process process =
+        new ProcessBuilder(command(mainClass, args)).redirectErrorStream(true).start();
+    try (BufferedReader reader =
+        new BufferedReader(
+            new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lines.accept(line);
+      }
+    }
+    return process.waitFor();
+  }
+
+  private static List<String> command(Class<?> mainClass, String... args) {
+    List<String> command = new ArrayList<>();
+    command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+    command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+    command.add("-cp");
+    command.add(System.getProperty("java.class.path"));
+    command.add(mainClass.getName());
+    for (String arg : args) {
+      command.add(arg);
+    }
+    return command;
+  }
+}
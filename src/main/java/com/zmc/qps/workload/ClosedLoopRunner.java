@@ -0,0 +1,100 @@
+package com.zmc.qps.workload;
+
+import com.zmc.qps.metrics.JfrProfiler;
+import com.zmc.qps.metrics.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs one operation in a loop on a fixed number of threads for a fixed time. Each thread issues
+ * its next operation as soon as the previous one returns. With {@code -Dqps.jfr} every run is
+ * recorded, see {@link JfrProfiler}.
+ */
+public class ClosedLoopRunner {
+
+  /** One benchmark operation, called repeatedly by every worker thread. */
+  public interface Operation {
+    void run(ThreadLocalRandom random) throws Exception;
+  }
+
+  private ClosedLoopRunner() {}
+
+  /**
+   * Runs {@code operation} on {@code threads} threads for {@code durationMillis}; {@code label}
+   * names the recording if the run is profiled.
+   */
+  public static Result run(String label, int threads, long durationMillis, Operation operation)
+      throws Exception {
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    List<Future<LatencyHistogram>> futures = new ArrayList<>();
+    JfrProfiler profiler = JfrProfiler.start(label);
+    long start = System.nanoTime();
+    long deadline = start + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+    LatencyHistogram latency = new LatencyHistogram();
+    double seconds;
+    String profile;
+    try {
+      for (int t = 0; t < threads; t++) {
+        futures.add(
+            pool.submit(
+                () -> {
+                  LatencyHistogram histogram = new LatencyHistogram();
+                  ThreadLocalRandom random = ThreadLocalRandom.current();
+                  long now = System.nanoTime();
+                  while (now < deadline) {
+                    operation.run(random);
+                    long end = System.nanoTime();
+                    histogram.record(end - now);
+                    now = end;
+                  }
+                  return histogram;
+                }));
+      }
+      for (Future<LatencyHistogram> future : futures) {
+        latency.add(future.get());
+      }
+      seconds = (System.nanoTime() - start) / 1e9;
+    } finally {
+      pool.shutdownNow();
+      profile = profiler.stop();
+    }
+    return new Result(latency, seconds, profile);
+  }
+
+  /** Operation count, wall time, latency and profile of one run. */
+  public static class Result {
+
+    private final LatencyHistogram latency;
+    private final double seconds;
+    private final String profile;
+
+    public Result(LatencyHistogram latency, double seconds, String profile) {
+      this.latency = latency;
+      this.seconds = seconds;
+      this.profile = profile;
+    }
+
+    public LatencyHistogram latency() {
+      return latency;
+    }
+
+    public double seconds() {
+      return seconds;
+    }
+
+    public double qps() {
+      return latency.count() / seconds;
+    }
+
+    /** The {@link JfrProfiler} summary of the run, or null if it was not profiled. */
+    public String profile() {
+      return profile;
+    }
+  }
+}
@@ -0,0 +1,82 @@
+package com.zmc.qps.workload;
+
+import com.zmc.qps.store.KVStore;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/** Loading, sizing and reporting helpers shared by the benchmarks. */
+public class Datasets {
+
+  private static final int BATCH_SIZE = 10000;
+
+  private Datasets() {}
+
+  /** Writes keys {@code [from, to)} in batches and flushes them to the engine's files. */
+  public static void load(KVStore store, int from, int to, ValueGenerator values)
+      throws IOException {
+    int[] keys = new int[BATCH_SIZE];
+    byte[][] batch = new byte[BATCH_SIZE][];
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int n = 0;
+    for (int i = from; i < to; i++) {
+      keys[n] = i;
+      batch[n] = values.next(random);
+      if (++n == BATCH_SIZE || i == to - 1) {
+        store.putBatch(keys, batch, n);
+        n = 0;
+      }
+    }
+    store.flush();
+  }
+
+  /** Deletes a data directory or database file, including a DuckDB write-ahead log next to it. */
+  public static void delete(String path) {
+    delete(new File(path));
+    delete(new File(path + ".wal"));
+  }
+
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+
+  /** Total size of a file or of all files below a directory. */
+  public static long sizeOf(File file) {
+    if (file.isFile()) {
+      return file.length();
+    }
+    long size = 0;
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        size += sizeOf(child);
+      }
+    }
+    return size;
+  }
+
+  public static String formatBytes(double bytes) {
+    String[] units = {"B", "KB", "MB", "GB", "TB"};
+    int unit = 0;
+    while (bytes >= 1024 && unit < units.length - 1) {
+      bytes /= 1024;
+      unit++;
+    }
+    return String.format("%.1f%s", bytes, units[unit]);
+  }
+
+  /** The message of the innermost cause of {@code e}, for reporting a failed run in a table. */
+  public static String rootCause(Throwable e) {
+    while (e.getCause() != null) {
+      e = e.getCause();
+    }
+    return e.getMessage();
+  }
+}
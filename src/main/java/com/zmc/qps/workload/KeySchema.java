@@ -0,0 +1,274 @@
+package com.zmc.qps.workload;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Keys of a configurable shape, so key size and comparison cost show up in the results instead of
+ * always being a 4-byte int. A key is a tuple of fields, encoded to order-preserving bytes for
+ * key-value stores and kept as columns for table engines. Every key belongs to one of {@code
+ * groups} groups (a tenant or a time series) given by its leading prefix fields, so all keys of a
+ * group can be fetched with one prefix query.
+ *
+ * <p>Specs:
+ *
+ * <ul>
+ *   <li>{@code int}: {@code id INTEGER}, 4 bytes
+ *   <li>{@code long}: {@code id BIGINT}, a snowflake-like id, 8 bytes
+ *   <li>{@code uuid}: {@code id} of 16 random bytes, no order by id
+ *   <li>{@code string}: {@code tenant|entity|timestamp} as text, about 30 to 80 bytes, the
+ *       entity of random length
+ *   <li>{@code binary}: {@code tenant INTEGER, entity BIGINT, ts BIGINT}, 20 bytes
+ *   <li>{@code timestamp}: {@code series BIGINT, ts BIGINT}, a time-suffixed key, 16 bytes
+ * </ul>
+ *
+ * <p>The last three have a one-field prefix of fixed encoded length; the others only support
+ * point lookups.
+ */
+public class KeySchema {
+
+  /** Supported field types. */
+  public enum Type {
+    INT,
+    BIGINT,
+    STRING,
+    BINARY
+  }
+
+  private static final long BASE_TIMESTAMP = 1_700_000_000_000L;
+  private static final int MAX_GROUPS = 1_000_000;
+
+  private final String spec;
+  private final String[] names;
+  private final Type[] types;
+  private final int prefixFields;
+  private final int groups;
+
+  private KeySchema(String spec, String[] names, Type[] types, int prefixFields, int groups) {
+    this.spec = spec;
+    this.names = names;
+    this.types = types;
+    this.prefixFields = prefixFields;
+    this.groups = groups;
+  }
+
+  public static KeySchema parse(String spec, int groups) {
+    if (groups < 1 || groups > MAX_GROUPS) {
+      throw new IllegalArgumentException("Groups must be in [1, " + MAX_GROUPS + "]: " + groups);
+    }
+    switch (spec.trim()) {
+      case "int":
+        return new KeySchema("int", new String[] {"id"}, new Type[] {Type.INT}, 0, groups);
+      case "long":
+        return new KeySchema("long", new String[] {"id"}, new Type[] {Type.BIGINT}, 0, groups);
+      case "uuid":
+        return new KeySchema("uuid", new String[] {"id"}, new Type[] {Type.BINARY}, 0, groups);
+      case "string":
+        return new KeySchema(
+            "string",
+            new String[] {"tenant", "entity", "ts"},
+            new Type[] {Type.STRING, Type.STRING, Type.BIGINT},
+            1,
+            groups);
+      case "binary":
+        return new KeySchema(
+            "binary",
+            new String[] {"tenant", "entity", "ts"},
+            new Type[] {Type.INT, Type.BIGINT, Type.BIGINT},
+            1,
+            groups);
+      case "timestamp":
+        return new KeySchema(
+            "timestamp",
+            new String[] {"series", "ts"},
+            new Type[] {Type.BIGINT, Type.BIGINT},
+            1,
+            groups);
+      default:
+        throw new IllegalArgumentException("Unknown key schema: " + spec);
+    }
+  }
+
+  public int size() {
+    return types.length;
+  }
+
+  public String name(int field) {
+    return names[field];
+  }
+
+  public Type type(int field) {
+    return types[field];
+  }
+
+  public String duckDBType(int field) {
+    switch (types[field]) {
+      case INT:
+        return "INTEGER";
+      case BIGINT:
+        return "BIGINT";
+      case STRING:
+        return "VARCHAR";
+      default:
+        return "BLOB";
+    }
+  }
+
+  /** Leading fields shared by all keys of a group, 0 if the schema has no prefix. */
+  public int prefixFields() {
+    return prefixFields;
+  }
+
+  public int groups() {
+    return groups;
+  }
+
+  /**
+   * Returns the fields of the key of {@code id}: {@link Integer}, {@link Long}, {@link String} or
+   * {@code byte[]}. Keys depend only on the id and are distinct for distinct ids. Builds new
+   * objects on every call, so benchmarks generate the keys they look up before measuring.
+   */
+  public Object[] fields(int id) {
+    SplitMix random = new SplitMix(id);
+    int group = random.nextInt(groups);
+    long timestamp = BASE_TIMESTAMP + id * 1000L + random.nextInt(1000);
+    switch (spec) {
+      case "int":
+        return new Object[] {id};
+      case "long":
+        return new Object[] {((long) id << 24) | random.nextInt(1 << 24)};
+      case "uuid":
+        byte[] uuid = new byte[16];
+        random.nextBytes(uuid);
+        return new Object[] {uuid};
+      case "string":
+        StringBuilder entity = new StringBuilder(Integer.toString(id, 36)).append('-');
+        for (int length = 4 + random.nextInt(47); entity.length() < length; ) {
+          entity.append((char) ('a' + random.nextInt(26)));
+        }
+        return new Object[] {tenant(group), entity.toString(), timestamp};
+      case "binary":
+        return new Object[] {group, (long) id, timestamp};
+      default:
+        return new Object[] {(long) group, timestamp};
+    }
+  }
+
+  /** Leading fields of all keys in {@code group}. */
+  public Object[] prefix(int group) {
+    switch (spec) {
+      case "string":
+        return new Object[] {tenant(group)};
+      case "binary":
+        return new Object[] {group};
+      case "timestamp":
+        return new Object[] {(long) group};
+      default:
+        return new Object[0];
+    }
+  }
+
+  public byte[] key(int id) {
+    return encode(fields(id));
+  }
+
+  /** Encoded prefix of {@code group}, every key of the group starts with it. */
+  public byte[] prefixKey(int group) {
+    return encode(prefix(group));
+  }
+
+  /** Length of every encoded prefix, 0 if the schema has no prefix. */
+  public int prefixLength() {
+    return prefixFields == 0 ? 0 : prefixKey(0).length;
+  }
+
+  /**
+   * Encodes fields: text keys are the fields joined by {@code |}, each followed by the separator
+   * when only a prefix is encoded, with longs zero-padded to 13 digits; binary keys are big-endian
+   * ints and longs and raw bytes, concatenated. Byte order is key order for binary keys of
+   * non-negative fields and for text keys whose fields all have a fixed length. It is not for the
+   * variable-length entity of {@code string}: {@code |} (0x7C) sorts after letters and digits, so
+   * {@code "ab|..."} sorts before {@code "a|..."}. Keys of one group still share the encoded
+   * prefix, which is all prefix queries rely on.
+   */
+  public byte[] encode(Object[] fields) {
+    if (types[0] == Type.STRING) {
+      StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < fields.length; i++) {
+        if (fields[i] instanceof Long) {
+          appendPadded(sb, (Long) fields[i], 13);
+        } else {
+          sb.append(fields[i]);
+        }
+        if (i < fields.length - 1 || fields.length < types.length) {
+          sb.append('|');
+        }
+      }
+      return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+    int length = 0;
+    for (Object field : fields) {
+      length += field instanceof Integer ? 4 : field instanceof Long ? 8 : ((byte[]) field).length;
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    for (Object field : fields) {
+      if (field instanceof Integer) {
+        buffer.putInt((Integer) field);
+      } else if (field instanceof Long) {
+        buffer.putLong((Long) field);
+      } else {
+        buffer.put((byte[]) field);
+      }
+    }
+    return buffer.array();
+  }
+
+  @Override
+  public String toString() {
+    return spec;
+  }
+
+  private static String tenant(int group) {
+    return appendPadded(new StringBuilder("tenant-"), group, 6).toString();
+  }
+
+  /** Appends a non-negative {@code value} left-padded with zeros to {@code digits}. */
+  private static StringBuilder appendPadded(StringBuilder sb, long value, int digits) {
+    String s = Long.toString(value);
+    for (int i = s.length(); i < digits; i++) {
+      sb.append('0');
+    }
+    return sb.append(s);
+  }
+
+  /** SplitMix64 stream seeded by an id, a cheap stand-in for a {@code Random} per key. */
+  private static class SplitMix {
+
+    private long state;
+
+    private SplitMix(long seed) {
+      this.state = seed;
+    }
+
+    private long nextLong() {
+      long z = (state += 0x9E3779B97F4A7C15L);
+      z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+      z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+      return z ^ (z >>> 31);
+    }
+
+    /** Uniform in {@code [0, bound)}, for bounds far below 2^32. */
+    private int nextInt(int bound) {
+      return (int) (((nextLong() >>> 32) * bound) >>> 32);
+    }
+
+    private void nextBytes(byte[] bytes) {
+      for (int i = 0; i < bytes.length; i += 8) {
+        long bits = nextLong();
+        for (int j = i; j < Math.min(bytes.length, i + 8); j++, bits >>>= 8) {
+          bytes[j] = (byte) bits;
+        }
+      }
+    }
+  }
+}
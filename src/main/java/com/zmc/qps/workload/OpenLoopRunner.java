@@ -0,0 +1,270 @@
+package com.zmc.qps.workload;
+
+import com.zmc.qps.metrics.JfrProfiler;
+import com.zmc.qps.metrics.LatencyHistogram;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Issues operations at a target rate, independent of how fast earlier operations complete.
+ *
+ * <p>A scheduler thread computes the intended start time of every operation, with fixed or
+ * exponentially distributed (Poisson) gaps, and hands it to an executor once it is due. Latency
+ * is measured from the intended start time, so time spent queueing behind slow operations is
+ * included instead of being hidden like in a closed loop. Service time, measured from when an
+ * executor thread actually picked the operation up, is reported separately. With {@code
+ * -Dqps.jfr} every run is recorded, see {@link JfrProfiler}.
+ */
+public class OpenLoopRunner {
+
+  /** How gaps between intended start times are distributed. */
+  public enum Arrival {
+    FIXED,
+    POISSON
+  }
+
+  private static final int STRIPES = 64;
+
+  // minimum time operations get to finish after the last one was issued
+  private static final long DRAIN_MILLIS = 60_000;
+
+  private OpenLoopRunner() {}
+
+  /**
+   * Creates the executor operations run on: {@code pool} is a fixed pool of {@code threads}
+   * platform threads, {@code virtual} starts one virtual thread per operation and needs Java 21.
+   */
+  public static ExecutorService executor(String kind, int threads) {
+    if ("virtual".equals(kind)) {
+      try {
+        // looked up reflectively so that the default 1.8 build still compiles
+        return (ExecutorService)
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+      } catch (ReflectiveOperationException e) {
+        throw new IllegalStateException("Virtual threads need Java 21 (-Pjava21)", e);
+      }
+    }
+    return Executors.newFixedThreadPool(threads);
+  }
+
+  /**
+   * Issues operations for {@code durationMillis}, waits for them and shuts the executor down.
+   * Throws {@link BacklogException} if they have not finished a minute or {@code
+   * durationMillis}, whichever is longer, after the last was issued; queued operations are then
+   * cancelled and running ones interrupted, so none outlive the run unnoticed. {@code label}
+   * names the recording if the run is profiled.
+   */
+  public static Result run(
+      String label,
+      ExecutorService executor,
+      double targetQps,
+      Arrival arrival,
+      long durationMillis,
+      ClosedLoopRunner.Operation operation)
+      throws InterruptedException {
+    LatencyHistogram[] latency = new LatencyHistogram[STRIPES];
+    LatencyHistogram[] service = new LatencyHistogram[STRIPES];
+    for (int i = 0; i < STRIPES; i++) {
+      latency[i] = new LatencyHistogram();
+      service[i] = new LatencyHistogram();
+    }
+    AtomicInteger inFlight = new AtomicInteger();
+    AtomicInteger maxInFlight = new AtomicInteger();
+    AtomicLong errors = new AtomicLong();
+    Random random = new Random();
+    double meanGapNanos = 1e9 / targetQps;
+
+    JfrProfiler profiler = JfrProfiler.start(label);
+    long start = System.nanoTime();
+    long end = start + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+    long intended = start;
+    long issued = 0;
+    long lateIssues = 0;
+    long issueEnd;
+    long drained;
+    String backlog = null;
+    String profile;
+    try {
+      while (intended < end) {
+        long now = System.nanoTime();
+        while (now < intended) {
+          LockSupport.parkNanos(intended - now);
+          now = System.nanoTime();
+        }
+        if (now - intended > TimeUnit.MILLISECONDS.toNanos(1)) {
+          lateIssues++;
+        }
+        long intendedStart = intended;
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        executor.execute(
+            () -> {
+              long serviceStart = System.nanoTime();
+              try {
+                operation.run(ThreadLocalRandom.current());
+              } catch (Exception e) {
+                errors.incrementAndGet();
+              }
+              long done = System.nanoTime();
+              inFlight.decrementAndGet();
+              int stripe = (int) (Thread.currentThread().getId() % STRIPES);
+              synchronized (latency[stripe]) {
+                latency[stripe].record(done - intendedStart);
+                service[stripe].record(done - serviceStart);
+              }
+            });
+        issued++;
+        intended +=
+            arrival == Arrival.POISSON
+                ? (long) (-Math.log(1 - random.nextDouble()) * meanGapNanos)
+                : (long) meanGapNanos;
+      }
+      issueEnd = System.nanoTime();
+      executor.shutdown();
+      long drainMillis = Math.max(DRAIN_MILLIS, durationMillis);
+      if (!executor.awaitTermination(drainMillis, TimeUnit.MILLISECONDS)) {
+        int cancelled = executor.shutdownNow().size();
+        boolean stopped = executor.awaitTermination(10, TimeUnit.SECONDS);
+        backlog =
+            inFlight.get()
+                + " operations still in flight "
+                + drainMillis
+                + "ms after the run, cancelled "
+                + cancelled
+                + " queued ones"
+                + (stopped ? "" : ", running ones did not stop when interrupted");
+      }
+      drained = System.nanoTime();
+    } finally {
+      profile = profiler.stop();
+    }
+
+    LatencyHistogram totalLatency = new LatencyHistogram();
+    LatencyHistogram totalService = new LatencyHistogram();
+    for (int i = 0; i < STRIPES; i++) {
+      synchronized (latency[i]) {
+        totalLatency.add(latency[i]);
+        totalService.add(service[i]);
+      }
+    }
+    Result result =
+        new Result(
+            targetQps,
+            issued / ((issueEnd - start) / 1e9),
+            totalLatency.count() / ((drained - start) / 1e9),
+            totalLatency,
+            totalService,
+            maxInFlight.get(),
+            lateIssues,
+            errors.get(),
+            profile);
+    if (backlog != null) {
+      throw new BacklogException(backlog, result);
+    }
+    return result;
+  }
+
+  /**
+   * Thrown by {@link #run} when operations did not drain in time, with the result of those that
+   * completed.
+   */
+  public static class BacklogException extends IllegalStateException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient Result result;
+
+    BacklogException(String message, Result result) {
+      super(message);
+      this.result = result;
+    }
+
+    public Result result() {
+      return result;
+    }
+  }
+
+  /** Outcome of one open-loop run. */
+  public static class Result {
+
+    private final double targetQps;
+    private final double issuedQps;
+    private final double completedQps;
+    private final LatencyHistogram latency;
+    private final LatencyHistogram serviceTime;
+    private final int maxInFlight;
+    private final long lateIssues;
+    private final long errors;
+    private final String profile;
+
+    Result(
+        double targetQps,
+        double issuedQps,
+        double completedQps,
+        LatencyHistogram latency,
+        LatencyHistogram serviceTime,
+        int maxInFlight,
+        long lateIssues,
+        long errors,
+        String profile) {
+      this.targetQps = targetQps;
+      this.issuedQps = issuedQps;
+      this.completedQps = completedQps;
+      this.latency = latency;
+      this.serviceTime = serviceTime;
+      this.maxInFlight = maxInFlight;
+      this.lateIssues = lateIssues;
+      this.errors = errors;
+      this.profile = profile;
+    }
+
+    public double targetQps() {
+      return targetQps;
+    }
+
+    /** Rate the scheduler actually issued at, below the target if it could not keep up. */
+    public double issuedQps() {
+      return issuedQps;
+    }
+
+    public double completedQps() {
+      return completedQps;
+    }
+
+    /** Latency from intended start to completion. */
+    public LatencyHistogram latency() {
+      return latency;
+    }
+
+    public LatencyHistogram serviceTime() {
+      return serviceTime;
+    }
+
+    public long errors() {
+      return errors;
+    }
+
+    /** The {@link JfrProfiler} summary of the run, or null if it was not profiled. */
+    public String profile() {
+      return profile;
+    }
+
+    public String summary() {
+      return String.format(
+              "target QPS: %.0f, issued QPS: %.0f, completed QPS: %.0f, max in flight: %d,"
+                  + " late issues: %d, errors: %d%n",
+              targetQps, issuedQps, completedQps, maxInFlight, lateIssues, errors)
+          + "  latency (from intended start): "
+          + latency.summary()
+          + String.format("%n")
+          + "  service time: "
+          + serviceTime.summary();
+    }
+  }
+}
@@ -0,0 +1,113 @@
+package com.zmc.qps.workload;
+
+import com.zmc.qps.metrics.TrialStats;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs a benchmark as warmup iterations followed by measured iterations and reports the spread
+ * of every metric across the measured ones.
+ *
+ * <p>With fresh data the data path is deleted and reloaded before every iteration, so page cache
+ * and leftover files of earlier runs cannot leak into the result. With reused data it is deleted
+ * and loaded once, and all iterations measure the same store.
+ */
+public class RunProtocol {
+
+  /** One benchmark under the protocol. */
+  public interface Trial {
+
+    /** Opens the store at an empty {@code path} and loads it, returns load metrics if any. */
+    Map<String, Double> setup(String path) throws Exception;
+
+    /** Runs one iteration and returns its metrics, usually QPS per operation. */
+    Map<String, Double> measure() throws Exception;
+
+    void teardown() throws Exception;
+  }
+
+  private final int warmupIterations;
+  private final int measuredIterations;
+  private final boolean freshData;
+  private final double noiseThresholdPercent;
+
+  public RunProtocol(
+      int warmupIterations,
+      int measuredIterations,
+      boolean freshData,
+      double noiseThresholdPercent) {
+    this.warmupIterations = warmupIterations;
+    this.measuredIterations = measuredIterations;
+    this.freshData = freshData;
+    this.noiseThresholdPercent = noiseThresholdPercent;
+  }
+
+  public Map<String, TrialStats> run(String path, Trial trial) throws Exception {
+    Map<String, List<Double>> samples = new LinkedHashMap<>();
+    int iterations = warmupIterations + measuredIterations;
+    boolean open = false;
+    try {
+      for (int i = 0; i < iterations; i++) {
+        boolean warmup = i < warmupIterations;
+        Map<String, Double> metrics = new LinkedHashMap<>();
+        if (!open) {
+          Datasets.delete(path);
+          metrics.putAll(trial.setup(path));
+          open = true;
+        }
+        System.gc();
+        metrics.putAll(trial.measure());
+        if (freshData) {
+          trial.teardown();
+          open = false;
+        }
+
+        String label = warmup ? "warmup " + (i + 1) : "iteration " + (i - warmupIterations + 1);
+        System.out.println(label + ": " + metrics);
+        if (!warmup) {
+          for (Map.Entry<String, Double> metric : metrics.entrySet()) {
+            samples.computeIfAbsent(metric.getKey(), k -> new ArrayList<>()).add(metric.getValue());
+          }
+        }
+      }
+    } finally {
+      if (open) {
+        trial.teardown();
+      }
+    }
+
+    Map<String, TrialStats> stats = new LinkedHashMap<>();
+    for (Map.Entry<String, List<Double>> metric : samples.entrySet()) {
+      double[] values = new double[metric.getValue().size()];
+      for (int i = 0; i < values.length; i++) {
+        values[i] = metric.getValue().get(i);
+      }
+      stats.put(metric.getKey(), new TrialStats(values));
+    }
+    report(stats);
+    return stats;
+  }
+
+  private void report(Map<String, TrialStats> stats) {
+    System.out.println(
+        "Warmup: "
+            + warmupIterations
+            + ", measured: "
+            + measuredIterations
+            + ", data: "
+            + (freshData ? "fresh" : "reused"));
+    for (Map.Entry<String, TrialStats> metric : stats.entrySet()) {
+      TrialStats s = metric.getValue();
+      System.out.println(
+          metric.getKey()
+              + ": "
+              + s.summary()
+              + (s.isNoisy(noiseThresholdPercent)
+                  ? " NOISY (> " + noiseThresholdPercent + "%)"
+                  : ""));
+    }
+  }
+}
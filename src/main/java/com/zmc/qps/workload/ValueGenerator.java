@@ -0,0 +1,117 @@
+package com.zmc.qps.workload;
+
+import java.util.Random;
+
+/**
+ * Random values with a fixed or distributed size.
+ *
+ * <p>Specs: {@code 12} or {@code fixed:12}, {@code uniform:16:16384} and {@code normal:1024:256}
+ * (mean and standard deviation, clamped to at least one byte). Sizes are in bytes and accept the
+ * suffixes {@code k} and {@code m}, e.g. {@code uniform:16:16k}.
+ *
+ * <p>Values are incompressible unless made {@link #compressible(int) compressible}.
+ */
+public class ValueGenerator {
+
+  private final String spec;
+  private final Distribution distribution;
+  private final int a;
+  private final int b;
+  // share of each value, in percent, that is zeros instead of random bytes
+  private final int compressible;
+
+  private enum Distribution {
+    FIXED,
+    UNIFORM,
+    NORMAL
+  }
+
+  private ValueGenerator(String spec, Distribution distribution, int a, int b) {
+    this(spec, distribution, a, b, 0);
+  }
+
+  private ValueGenerator(
+      String spec, Distribution distribution, int a, int b, int compressible) {
+    this.spec = spec;
+    this.distribution = distribution;
+    this.a = a;
+    this.b = b;
+    this.compressible = compressible;
+  }
+
+  public static ValueGenerator fixed(int size) {
+    return new ValueGenerator("fixed:" + size, Distribution.FIXED, size, size);
+  }
+
+  public static ValueGenerator parse(String spec) {
+    String[] parts = spec.split(":");
+    switch (parts[0]) {
+      case "fixed":
+        return new ValueGenerator(spec, Distribution.FIXED, size(parts[1]), 0);
+      case "uniform":
+        return new ValueGenerator(spec, Distribution.UNIFORM, size(parts[1]), size(parts[2]));
+      case "normal":
+        return new ValueGenerator(spec, Distribution.NORMAL, size(parts[1]), size(parts[2]));
+      default:
+        return fixed(size(parts[0]));
+    }
+  }
+
+  /**
+   * Same sizes, but the last {@code percent} of every value is zeros, so a compressor can shrink
+   * values to about {@code 100 - percent} percent.
+   */
+  public ValueGenerator compressible(int percent) {
+    return new ValueGenerator(
+        spec + ",compressible:" + percent + "%", distribution, a, b, percent);
+  }
+
+  public int nextSize(Random random) {
+    switch (distribution) {
+      case UNIFORM:
+        return a + random.nextInt(b - a + 1);
+      case NORMAL:
+        return Math.max(1, (int) Math.round(a + random.nextGaussian() * b));
+      default:
+        return a;
+    }
+  }
+
+  public byte[] next(Random random) {
+    byte[] value = new byte[nextSize(random)];
+    if (compressible == 0) {
+      random.nextBytes(value);
+    } else {
+      int randomBytes = value.length - value.length * compressible / 100;
+      for (int i = 0; i < randomBytes; i++) {
+        value[i] = (byte) random.nextInt();
+      }
+    }
+    return value;
+  }
+
+  public double averageSize() {
+    switch (distribution) {
+      case UNIFORM:
+        return (a + b) / 2.0;
+      default:
+        return a;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return spec;
+  }
+
+  static int size(String size) {
+    String s = size.trim().toLowerCase();
+    if (s.endsWith("k")) {
+      return Integer.parseInt(s.substring(0, s.length() - 1)) << 10;
+    }
+    if (s.endsWith("m")) {
+      return Integer.parseInt(s.substring(0, s.length() - 1)) << 20;
+    }
+    return Integer.parseInt(s);
+  }
+}
@@ -0,0 +1,232 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.paimon.mergetree;
+
+import org.apache.paimon.data.InternalRow;
+import org.apache.paimon.data.serializer.RowCompactedSerializer;
+import org.apache.paimon.io.DataFileMeta;
+import org.apache.paimon.shade.caffeine2.com.github.benmanes.caffeine.cache.Cache;
+import org.apache.paimon.types.RowType;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Multi-key lookups over a {@link LookupLevels}, with the same result per key as {@link
+ * LookupLevels#lookup}: the first version found from {@code startLevel} upwards.
+ *
+ * <p>A batch is sorted once and walked level by level. Level-0 files are visited in the order
+ * {@link LookupLevels} checks them; in higher levels, whose files do not overlap, the sorted keys
+ * are split over the files in one merge pass instead of a binary search per key. Every lookup file
+ * touched by the batch is fetched from the {@link LookupLevels} cache, or built, once and then
+ * probed for all its keys; keys found are dropped before the next level. Keys are serialized
+ * once per batch. Like {@link LookupLevels}, this is not thread-safe.
+ */
+public class BatchedLookupLevels<T> {
+
+  // lookup files are a private class of LookupLevels, built by a private method; both are used
+  // through handles so the files are shared with, and cached by, LookupLevels
+  private static final MethodHandle CREATE_LOOKUP_FILE;
+  private static final MethodHandle LOOKUP_FILE_GET;
+
+  static {
+    try {
+      Method create = LookupLevels.class.getDeclaredMethod("createLookupFile", DataFileMeta.class);
+      create.setAccessible(true);
+      Method get = create.getReturnType().getDeclaredMethod("get", byte[].class);
+      get.setAccessible(true);
+      MethodHandles.Lookup lookup = MethodHandles.lookup();
+      CREATE_LOOKUP_FILE =
+          lookup
+              .unreflect(create)
+              .asType(MethodType.methodType(Object.class, Object.class, DataFileMeta.class));
+      LOOKUP_FILE_GET =
+          lookup
+              .unreflect(get)
+              .asType(MethodType.methodType(byte[].class, Object.class, byte[].class));
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  private final LookupLevels<T> lookupLevels;
+  private final Cache<String, Object> lookupFiles;
+  private final Comparator<InternalRow> keyComparator;
+  private final RowCompactedSerializer keySerializer;
+  private final LookupLevels.ValueProcessor<T> valueProcessor;
+
+  private long filesProbed;
+  private long keysProbed;
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public BatchedLookupLevels(
+      LookupLevels<T> lookupLevels,
+      Comparator<InternalRow> keyComparator,
+      RowType keyType,
+      LookupLevels.ValueProcessor<T> valueProcessor) {
+    this.lookupLevels = lookupLevels;
+    this.lookupFiles = (Cache) lookupLevels.lookupFiles();
+    this.keyComparator = keyComparator;
+    this.keySerializer = new RowCompactedSerializer(keyType);
+    this.valueProcessor = valueProcessor;
+  }
+
+  /** Looks up all {@code keys}, returns the results in input order, null for missing keys. */
+  public List<T> lookup(List<? extends InternalRow> keys, int startLevel) throws IOException {
+    int count = keys.size();
+    List<T> results = new ArrayList<>(Collections.nCopies(count, (T) null));
+    Integer[] sorted = new Integer[count];
+    for (int i = 0; i < count; i++) {
+      sorted[i] = i;
+    }
+    Arrays.sort(sorted, (a, b) -> keyComparator.compare(keys.get(a), keys.get(b)));
+    int[] pending = new int[count];
+    for (int i = 0; i < count; i++) {
+      pending[i] = sorted[i];
+    }
+    int pendingCount = count;
+    byte[][] keyBytes = new byte[count][];
+    boolean[] found = new boolean[count];
+
+    Levels levels = lookupLevels.getLevels();
+    for (int level = startLevel; level < levels.numberOfLevels() && pendingCount > 0; level++) {
+      if (level == 0) {
+        for (DataFileMeta file : levels.level0()) {
+          int from = 0;
+          while (from < pendingCount
+              && keyComparator.compare(file.minKey(), keys.get(pending[from])) > 0) {
+            from++;
+          }
+          int to = from;
+          while (to < pendingCount
+              && keyComparator.compare(file.maxKey(), keys.get(pending[to])) >= 0) {
+            to++;
+          }
+          probe(file, keys, pending, from, to, keyBytes, found, results);
+          pendingCount = compact(pending, pendingCount, found);
+        }
+      } else {
+        List<DataFileMeta> files = levels.runOfLevel(level).files();
+        int next = 0;
+        for (DataFileMeta file : files) {
+          // keys before this file fall between files of the run and are not in this level
+          while (next < pendingCount
+              && keyComparator.compare(file.minKey(), keys.get(pending[next])) > 0) {
+            next++;
+          }
+          int to = next;
+          while (to < pendingCount
+              && keyComparator.compare(file.maxKey(), keys.get(pending[to])) >= 0) {
+            to++;
+          }
+          probe(file, keys, pending, next, to, keyBytes, found, results);
+          next = to;
+        }
+        pendingCount = compact(pending, pendingCount, found);
+      }
+    }
+    return results;
+  }
+
+  /** Lookup files probed so far, one per file and batch. */
+  public long filesProbed() {
+    return filesProbed;
+  }
+
+  /** Key probes into lookup files so far. */
+  public long keysProbed() {
+    return keysProbed;
+  }
+
+  private void probe(
+      DataFileMeta file,
+      List<? extends InternalRow> keys,
+      int[] pending,
+      int from,
+      int to,
+      byte[][] keyBytes,
+      boolean[] found,
+      List<T> results)
+      throws IOException {
+    if (from >= to) {
+      return;
+    }
+    Object lookupFile = lookupFile(file);
+    filesProbed++;
+    for (int i = from; i < to; i++) {
+      int index = pending[i];
+      if (keyBytes[index] == null) {
+        keyBytes[index] = keySerializer.serializeToBytes(keys.get(index));
+      }
+      keysProbed++;
+      byte[] valueBytes = get(lookupFile, keyBytes[index]);
+      if (valueBytes != null) {
+        T value =
+            valueProcessor.readFromDisk(keys.get(index), file.level(), valueBytes, file.fileName());
+        results.set(index, value);
+        found[index] = true;
+      }
+    }
+  }
+
+  private Object lookupFile(DataFileMeta file) throws IOException {
+    Object lookupFile = lookupFiles.getIfPresent(file.fileName());
+    if (lookupFile != null) {
+      return lookupFile;
+    }
+    try {
+      lookupFile = (Object) CREATE_LOOKUP_FILE.invokeExact((Object) lookupLevels, file);
+    } catch (IOException | RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable t) {
+      throw new IllegalStateException(t);
+    }
+    lookupFiles.put(file.fileName(), lookupFile);
+    return lookupFile;
+  }
+
+  private static byte[] get(Object lookupFile, byte[] key) throws IOException {
+    try {
+      return (byte[]) LOOKUP_FILE_GET.invokeExact(lookupFile, key);
+    } catch (IOException | RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable t) {
+      throw new IllegalStateException(t);
+    }
+  }
+
+  /** Drops found keys from {@code pending}, keeping the order, and returns how many are left. */
+  private static int compact(int[] pending, int pendingCount, boolean[] found) {
+    int kept = 0;
+    for (int i = 0; i < pendingCount; i++) {
+      if (!found[pending[i]]) {
+        pending[kept++] = pending[i];
+      }
+    }
+    return kept;
+  }
+}
@@ -0,0 +1,601 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.paimon.mergetree;
+
+import com.zmc.qps.store.KVStore;
+
+import org.apache.paimon.CoreOptions;
+import org.apache.paimon.KeyValue;
+import org.apache.paimon.compact.CompactResult;
+import org.apache.paimon.compact.CompactUnit;
+import org.apache.paimon.data.BinaryRow;
+import org.apache.paimon.data.GenericRow;
+import org.apache.paimon.data.InternalRow;
+import org.apache.paimon.deletionvectors.DeletionVector;
+import org.apache.paimon.format.FileFormat;
+import org.apache.paimon.fs.FileIO;
+import org.apache.paimon.fs.Path;
+import org.apache.paimon.io.DataFileMeta;
+import org.apache.paimon.io.DataFileMetaSerializer;
+import org.apache.paimon.io.KeyValueFileReaderFactory;
+import org.apache.paimon.io.KeyValueFileWriterFactory;
+import org.apache.paimon.io.RollingFileWriter;
+import org.apache.paimon.io.cache.CacheManager;
+import org.apache.paimon.lookup.hash.HashLookupStoreFactory;
+import org.apache.paimon.mergetree.compact.CompactStrategy;
+import org.apache.paimon.mergetree.compact.DeduplicateMergeFunction;
+import org.apache.paimon.mergetree.compact.MergeTreeCompactRewriter;
+import org.apache.paimon.mergetree.compact.MergeTreeCompactTask;
+import org.apache.paimon.mergetree.compact.UniversalCompaction;
+import org.apache.paimon.options.ConfigOption;
+import org.apache.paimon.options.ConfigOptions;
+import org.apache.paimon.options.Options;
+import org.apache.paimon.schema.KeyValueFieldsExtractor;
+import org.apache.paimon.schema.SchemaManager;
+import org.apache.paimon.schema.TableSchema;
+import org.apache.paimon.types.DataField;
+import org.apache.paimon.types.DataTypes;
+import org.apache.paimon.types.RowKind;
+import org.apache.paimon.types.RowType;
+import org.apache.paimon.utils.BloomFilter;
+import org.apache.paimon.utils.FileStorePathFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+import static org.apache.paimon.CoreOptions.FILE_FORMAT;
+import static org.apache.paimon.CoreOptions.LOOKUP_CACHE_BLOOM_FILTER_ENABLED;
+import static org.apache.paimon.CoreOptions.LOOKUP_CACHE_BLOOM_FILTER_FPP;
+import static org.apache.paimon.CoreOptions.LOOKUP_CACHE_FILE_RETENTION;
+import static org.apache.paimon.CoreOptions.LOOKUP_CACHE_MAX_DISK_SIZE;
+import static org.apache.paimon.CoreOptions.LOOKUP_CACHE_SPILL_COMPRESSION;
+import static org.apache.paimon.CoreOptions.PARTITION_DEFAULT_NAME;
+
+/**
+ * {@link KVStore} over Paimon merge-tree files for one bucket.
+ *
+ * <p>Writes go to an in-memory write buffer which is flushed to a level-0 file once it reaches
+ * {@code write-buffer-size}. After every flush {@link UniversalCompaction} picks sorted runs to
+ * merge, as a Paimon bucket writer does, once there are {@code num-sorted-run.compaction-trigger}
+ * runs or the size amplification or ratio thresholds are exceeded; the picked runs are merged as
+ * streams by a {@link MergeTreeCompactRewriter}, so only a few rows per run are in memory. Reads
+ * check the write buffer first and then go through {@link LookupLevels}, like a lookup changelog
+ * producer does. {@link LookupLevels} is not thread-safe, so lookups on files are serialized.
+ *
+ * <p>The files of all levels are recorded in a {@code levels} file next to the data after every
+ * change, so a store can be closed and opened again. Unflushed writes are lost on close.
+ */
+public class PaimonKVStore implements KVStore {
+
+  public static final RowType KEY_TYPE =
+      DataTypes.ROW(DataTypes.FIELD(0, "_key", DataTypes.INT()));
+  public static final RowType VALUE_TYPE =
+      DataTypes.ROW(
+          DataTypes.FIELD(0, "key", DataTypes.INT()),
+          DataTypes.FIELD(1, "value", DataTypes.BYTES()));
+
+  /**
+   * Scheme under which the data files are read and written, resolved through {@link FileIO#get}.
+   * Lookup files and the levels file always stay on the local disk.
+   */
+  public static final ConfigOption<String> DATA_FILE_SCHEME =
+      ConfigOptions.key("data-file.scheme")
+          .stringType()
+          .defaultValue("file")
+          .withDescription("Scheme of the data files, e.g. simulated for a simulated remote store");
+
+  private static final String LOOKUP_FILE_PREFIX = "lookup-";
+  private static final String LEVELS_FILE = "levels";
+  private static final int ENTRY_OVERHEAD = 48;
+
+  private final Comparator<InternalRow> comparator = Comparator.comparingInt(o -> o.getInt(0));
+
+  private final CoreOptions options;
+  private final KeyValueFileWriterFactory writerFactory;
+  private final KeyValueFileReaderFactory readerFactory;
+  private final DataFileMetaSerializer metaSerializer = new DataFileMetaSerializer();
+  private final File levelsFile;
+  private final Levels levels;
+  private final LookupLevels<KeyValue> lookupLevels;
+  private final BatchedLookupLevels<KeyValue> batchedLookupLevels;
+  private final CompactStrategy compactStrategy;
+  private final MergeTreeCompactRewriter compactRewriter;
+
+  // guards levels, lookupLevels and batchedLookupLevels
+  private final Object lookupLock = new Object();
+  // single writer, like a Paimon bucket writer
+  private final ReentrantLock writeLock = new ReentrantLock();
+
+  private volatile ConcurrentSkipListMap<Integer, Entry> buffer = new ConcurrentSkipListMap<>();
+  private volatile ConcurrentSkipListMap<Integer, Entry> flushing = new ConcurrentSkipListMap<>();
+  private long bufferBytes;
+  private long sequence;
+
+  public PaimonKVStore(String path) throws IOException {
+    this(path, new Options());
+  }
+
+  public PaimonKVStore(String path, Options conf) throws IOException {
+    if (!conf.contains(FILE_FORMAT)) {
+      conf.setString(FILE_FORMAT.key(), "avro");
+    }
+    this.options = new CoreOptions(conf);
+    Path root =
+        new Path(conf.get(DATA_FILE_SCHEME), null, new File(path, "data").getAbsolutePath());
+    File lookupDir = new File(path, "lookup");
+    if (!lookupDir.exists() && !lookupDir.mkdirs()) {
+      throw new IOException("Cannot create lookup dir " + lookupDir);
+    }
+
+    FileIO fileIO = PaimonUtils.fileIO(root);
+    FileFormat fileFormat = options.fileFormat();
+    String identifier = fileFormat.getFormatIdentifier();
+    FileStorePathFactory pathFactory =
+        new FileStorePathFactory(
+            root, RowType.builder().build(), PARTITION_DEFAULT_NAME.defaultValue(), identifier);
+    Map<String, FileStorePathFactory> pathFactoryMap = new HashMap<>();
+    pathFactoryMap.put(identifier, pathFactory);
+    this.writerFactory =
+        KeyValueFileWriterFactory.builder(
+                fileIO,
+                0,
+                KEY_TYPE,
+                VALUE_TYPE,
+                fileFormat,
+                pathFactoryMap,
+                options.targetFileSize())
+            .build(BinaryRow.EMPTY_ROW, 0, options);
+    SchemaManager schemaManager = createSchemaManager(root);
+    this.readerFactory =
+        KeyValueFileReaderFactory.builder(
+                fileIO,
+                schemaManager,
+                schemaManager.schema(0),
+                KEY_TYPE,
+                VALUE_TYPE,
+                ignore -> fileFormat,
+                pathFactory,
+                new KeyValueFieldsExtractor() {
+                  @Override
+                  public List<DataField> keyFields(TableSchema schema) {
+                    return KEY_TYPE.getFields();
+                  }
+
+                  @Override
+                  public List<DataField> valueFields(TableSchema schema) {
+                    return schema.fields();
+                  }
+                },
+                options)
+            .build(BinaryRow.EMPTY_ROW, 0, DeletionVector.emptyFactory());
+
+    this.levelsFile = new File(path, LEVELS_FILE);
+    List<DataFileMeta> files =
+        levelsFile.exists()
+            ? metaSerializer.deserializeList(Files.readAllBytes(levelsFile.toPath()))
+            : Collections.emptyList();
+    this.sequence = Math.max(0, DataFileMeta.getMaxSequenceNumber(files));
+    this.levels = new Levels(comparator, files, options.numLevels());
+    this.lookupLevels =
+        new LookupLevels<>(
+            levels,
+            comparator,
+            KEY_TYPE,
+            new LookupLevels.KeyValueProcessor(VALUE_TYPE),
+            readerFactory::createRecordReader,
+            () -> new File(lookupDir, LOOKUP_FILE_PREFIX + UUID.randomUUID()),
+            new HashLookupStoreFactory(
+                new CacheManager(options.lookupCacheMaxMemory()),
+                options.cachePageSize(),
+                0.75,
+                conf.get(LOOKUP_CACHE_SPILL_COMPRESSION)),
+            conf.get(LOOKUP_CACHE_FILE_RETENTION),
+            conf.get(LOOKUP_CACHE_MAX_DISK_SIZE),
+            bfGenerator(conf));
+    this.batchedLookupLevels =
+        new BatchedLookupLevels<>(
+            lookupLevels, comparator, KEY_TYPE, new LookupLevels.KeyValueProcessor(VALUE_TYPE));
+    this.compactStrategy =
+        new UniversalCompaction(
+            options.maxSizeAmplificationPercent(),
+            options.sortedRunSizeRatio(),
+            options.numSortedRunCompactionTrigger());
+    this.compactRewriter =
+        new MergeTreeCompactRewriter(
+            readerFactory,
+            writerFactory,
+            comparator,
+            null,
+            DeduplicateMergeFunction.factory(),
+            new MergeSorter(options, KEY_TYPE, VALUE_TYPE, null));
+  }
+
+  public Levels levels() {
+    return levels;
+  }
+
+  public LookupLevels<KeyValue> lookupLevels() {
+    return lookupLevels;
+  }
+
+  @Override
+  public String name() {
+    return "paimon";
+  }
+
+  @Override
+  public void put(int key, byte[] value) throws IOException {
+    put(key, value, RowKind.INSERT);
+  }
+
+  /**
+   * Writes a version of {@code key} with the given kind, e.g. {@link RowKind#UPDATE_AFTER} for an
+   * update or {@link RowKind#DELETE} with a null value for a delete. Older versions stay in their
+   * files until compaction.
+   */
+  public void put(int key, byte[] value, RowKind kind) throws IOException {
+    writeLock.lock();
+    try {
+      buffer.put(key, new Entry(++sequence, kind, value));
+      bufferBytes += (value == null ? 0 : value.length) + ENTRY_OVERHEAD;
+      if (bufferBytes >= options.writeBufferSize()) {
+        flush();
+      }
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  @Override
+  public void putBatch(int[] keys, byte[][] values, int count) throws IOException {
+    writeLock.lock();
+    try {
+      for (int i = 0; i < count; i++) {
+        put(keys[i], values[i]);
+      }
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  @Override
+  public byte[] get(int key) throws IOException {
+    Entry entry = buffer.get(key);
+    if (entry == null) {
+      entry = flushing.get(key);
+    }
+    if (entry != null) {
+      return entry.kind == RowKind.DELETE ? null : entry.value;
+    }
+    synchronized (lookupLock) {
+      KeyValue kv = lookupLevels.lookup(PaimonUtils.row(key), 0);
+      if (kv == null || !kv.isAdd() || kv.value().isNullAt(1)) {
+        return null;
+      }
+      return kv.value().getBinary(1);
+    }
+  }
+
+  /**
+   * Looks up {@code keys[0..count)} into {@code values}, null for missing keys. Keys not in the
+   * write buffer go through {@link BatchedLookupLevels} together, so every lookup file is probed
+   * once per call instead of once per key.
+   */
+  public void getBatch(int[] keys, int count, byte[][] values) throws IOException {
+    List<InternalRow> rows = new ArrayList<>(count);
+    int[] indexes = new int[count];
+    for (int i = 0; i < count; i++) {
+      Entry entry = buffer.get(keys[i]);
+      if (entry == null) {
+        entry = flushing.get(keys[i]);
+      }
+      if (entry != null) {
+        values[i] = entry.kind == RowKind.DELETE ? null : entry.value;
+      } else {
+        indexes[rows.size()] = i;
+        rows.add(PaimonUtils.row(keys[i]));
+      }
+    }
+    if (rows.isEmpty()) {
+      return;
+    }
+    List<KeyValue> kvs;
+    synchronized (lookupLock) {
+      kvs = batchedLookupLevels.lookup(rows, 0);
+    }
+    for (int i = 0; i < kvs.size(); i++) {
+      KeyValue kv = kvs.get(i);
+      values[indexes[i]] =
+          kv == null || !kv.isAdd() || kv.value().isNullAt(1) ? null : kv.value().getBinary(1);
+    }
+  }
+
+  /** Lookup-file probes of {@link #getBatch} so far: files, then keys. */
+  public long[] batchProbes() {
+    synchronized (lookupLock) {
+      return new long[] {batchedLookupLevels.filesProbed(), batchedLookupLevels.keysProbed()};
+    }
+  }
+
+  @Override
+  public void delete(int key) throws IOException {
+    put(key, null, RowKind.DELETE);
+  }
+
+  @Override
+  public int scan(int startKey, int count) {
+    throw new UnsupportedOperationException("LookupLevels only supports point lookups");
+  }
+
+  @Override
+  public boolean supportsScan() {
+    return false;
+  }
+
+  @Override
+  public boolean supportsConcurrentWrites() {
+    return false;
+  }
+
+  /** Writes the write buffer to a new level-0 file, then runs the compaction this triggers. */
+  @Override
+  public void flush() throws IOException {
+    writeLock.lock();
+    try {
+      ConcurrentSkipListMap<Integer, Entry> toFlush = buffer;
+      if (toFlush.isEmpty()) {
+        return;
+      }
+      // readers look at buffer -> flushing -> files, so publish in the opposite order
+      flushing = toFlush;
+      buffer = new ConcurrentSkipListMap<>();
+      bufferBytes = 0;
+
+      List<DataFileMeta> files = write(toFlush, 0, false);
+      synchronized (lookupLock) {
+        for (DataFileMeta file : files) {
+          levels.addLevel0File(file);
+        }
+      }
+      flushing = new ConcurrentSkipListMap<>();
+
+      writeLevels();
+      compact(compactStrategy.pick(levels.numberOfLevels(), levels.levelSortedRuns()));
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /** Merges all files into the highest level, keeping the latest version and dropping deletes. */
+  public void compact() throws IOException {
+    writeLock.lock();
+    try {
+      compact(
+          CompactStrategy.pickFullCompaction(levels.numberOfLevels(), levels.levelSortedRuns()));
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Merges the files of {@code unit} into its output level, the way {@code
+   * MergeTreeCompactManager} does: files that need no merge are only moved, deletes are dropped
+   * when writing into the highest non-empty level. Must hold the write lock.
+   */
+  private void compact(Optional<CompactUnit> unit) throws IOException {
+    if (!unit.isPresent()
+        || unit.get().files().isEmpty()
+        || (unit.get().files().size() == 1
+            && unit.get().files().get(0).level() == unit.get().outputLevel())) {
+      return;
+    }
+    int outputLevel = unit.get().outputLevel();
+    boolean dropDelete = outputLevel != 0 && outputLevel >= levels.nonEmptyHighestLevel();
+    CompactResult result;
+    try {
+      result =
+          new MergeTreeCompactTask(
+                  comparator,
+                  options.compactionFileSize(),
+                  compactRewriter,
+                  unit.get(),
+                  dropDelete,
+                  levels.maxLevel(),
+                  null)
+              .call();
+    } catch (IOException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new IOException(e);
+    }
+    synchronized (lookupLock) {
+      levels.update(result.before(), result.after());
+    }
+    writeLevels();
+    // files moved to another level keep their name
+    Set<String> kept = new HashSet<>();
+    for (DataFileMeta file : result.after()) {
+      kept.add(file.fileName());
+    }
+    for (DataFileMeta file : result.before()) {
+      if (!kept.contains(file.fileName())) {
+        writerFactory.deleteFile(file.fileName(), file.level());
+      }
+    }
+  }
+
+  /**
+   * Writes keys {@code [from, to)} straight into the highest level, bypassing the write buffer.
+   * The range is split across {@code parallelism} rolling writers, each producing files of {@code
+   * target-file-size}, which together form one sorted run. The store must be empty.
+   */
+  public void bulkLoad(int from, int to, int parallelism, IntFunction<byte[]> values)
+      throws IOException {
+    writeLock.lock();
+    ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+    try {
+      synchronized (lookupLock) {
+        if (!buffer.isEmpty() || !levels.allFiles().isEmpty()) {
+          throw new IllegalStateException("Bulk load needs an empty store");
+        }
+      }
+      // keys are unique, so all rows can share one sequence number
+      long bulkSequence = ++sequence;
+      int level = levels.maxLevel();
+      long rangeSize = ((long) to - from + parallelism - 1) / parallelism;
+      List<Future<List<DataFileMeta>>> futures = new ArrayList<>();
+      for (long start = from; start < to; start += rangeSize) {
+        int rangeFrom = (int) start;
+        int rangeTo = (int) Math.min(to, start + rangeSize);
+        futures.add(
+            pool.submit(
+                () -> {
+                  RollingFileWriter<KeyValue, DataFileMeta> writer =
+                      writerFactory.createRollingMergeTreeFileWriter(level);
+                  KeyValue kv = new KeyValue();
+                  try {
+                    for (int key = rangeFrom; key < rangeTo; key++) {
+                      writer.write(
+                          kv.replace(
+                              GenericRow.of(key),
+                              bulkSequence,
+                              RowKind.INSERT,
+                              GenericRow.of(key, values.apply(key))));
+                    }
+                  } finally {
+                    writer.close();
+                  }
+                  return writer.result();
+                }));
+      }
+      List<DataFileMeta> files = new ArrayList<>();
+      for (Future<List<DataFileMeta>> future : futures) {
+        files.addAll(future.get());
+      }
+      synchronized (lookupLock) {
+        levels.update(Collections.emptyList(), files);
+      }
+      writeLevels();
+    } catch (InterruptedException e) {
+      throw new IOException(e);
+    } catch (ExecutionException e) {
+      throw new IOException(e.getCause());
+    } finally {
+      pool.shutdownNow();
+      writeLock.unlock();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    synchronized (lookupLock) {
+      lookupLevels.close();
+    }
+  }
+
+  /** Replaces the levels file with the current files, atomically. */
+  private void writeLevels() throws IOException {
+    byte[] bytes;
+    synchronized (lookupLock) {
+      bytes = metaSerializer.serializeList(levels.allFiles());
+    }
+    File tmp = new File(levelsFile.getPath() + ".tmp");
+    Files.write(tmp.toPath(), bytes);
+    Files.move(tmp.toPath(), levelsFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private List<DataFileMeta> write(Map<Integer, Entry> entries, int level, boolean dropDelete)
+      throws IOException {
+    RollingFileWriter<KeyValue, DataFileMeta> writer =
+        writerFactory.createRollingMergeTreeFileWriter(level);
+    KeyValue kv = new KeyValue();
+    try {
+      for (Map.Entry<Integer, Entry> e : entries.entrySet()) {
+        Entry entry = e.getValue();
+        if (dropDelete && entry.kind == RowKind.DELETE) {
+          continue;
+        }
+        writer.write(
+            kv.replace(
+                GenericRow.of(e.getKey()),
+                entry.sequence,
+                entry.kind,
+                GenericRow.of(e.getKey(), entry.value)));
+      }
+    } finally {
+      writer.close();
+    }
+    return writer.result();
+  }
+
+  private SchemaManager createSchemaManager(Path root) {
+    TableSchema tableSchema =
+        new TableSchema(
+            0,
+            VALUE_TYPE.getFields(),
+            VALUE_TYPE.getFieldCount(),
+            Collections.emptyList(),
+            Collections.singletonList("key"),
+            Collections.emptyMap(),
+            "");
+    return new PaimonUtils.FixedSchemaManager(root, tableSchema);
+  }
+
+  private static Function<Long, BloomFilter.Builder> bfGenerator(Options conf) {
+    if (!conf.get(LOOKUP_CACHE_BLOOM_FILTER_ENABLED)) {
+      return rowCount -> null;
+    }
+    double fpp = conf.get(LOOKUP_CACHE_BLOOM_FILTER_FPP);
+    return rowCount -> BloomFilter.builder(rowCount, fpp);
+  }
+
+  /** One version of a key. */
+  private static class Entry {
+
+    private final long sequence;
+    private final RowKind kind;
+    private final byte[] value;
+
+    private Entry(long sequence, RowKind kind, byte[] value) {
+      this.sequence = sequence;
+      this.kind = kind;
+      this.value = value;
+    }
+  }
+}
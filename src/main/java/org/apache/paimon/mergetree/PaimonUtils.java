@@ -0,0 +1,139 @@
+package org.apache.paimon.mergetree;
+
+import org.apache.paimon.catalog.CatalogContext;
+import org.apache.paimon.data.BinaryRow;
+import org.apache.paimon.data.BinaryRowWriter;
+import org.apache.paimon.fs.FileIO;
+import org.apache.paimon.fs.Path;
+import org.apache.paimon.options.Options;
+import org.apache.paimon.schema.Schema;
+import org.apache.paimon.schema.SchemaChange;
+import org.apache.paimon.schema.SchemaManager;
+import org.apache.paimon.schema.TableSchema;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Helpers shared by {@link PaimonKVStore} and the Paimon benchmarks, so that none of them depends
+ * on test classes such as {@link LookupLevelsTest}.
+ */
+public class PaimonUtils {
+
+  private PaimonUtils() {}
+
+  /** A binary row holding the single int key {@code key}, as in {@link PaimonKVStore#KEY_TYPE}. */
+  public static BinaryRow row(int key) {
+    BinaryRow row = new BinaryRow(1);
+    BinaryRowWriter writer = new BinaryRowWriter(row);
+    writer.writeInt(0, key);
+    writer.complete();
+    return row;
+  }
+
+  /** The {@link FileIO} for the scheme of {@code path}. */
+  public static FileIO fileIO(Path path) {
+    try {
+      return FileIO.get(path, CatalogContext.create(new Options()));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** Wraps {@code resource} for try-with-resources, see {@link Resource}. */
+  public static <T extends AutoCloseable> Resource<T> resource(T resource) {
+    return new Resource<>(resource);
+  }
+
+  /**
+   * A Paimon resource whose {@code close()} throws {@link Exception}, such as an {@code IOManager}
+   * or a table write, closed as a {@link Closeable}: try-with-resources on it does not warn that
+   * closing may throw {@link InterruptedException}, which is rethrown as {@link
+   * InterruptedIOException} with the interrupt flag restored.
+   */
+  public static class Resource<T extends AutoCloseable> implements Closeable {
+
+    private final T resource;
+
+    private Resource(T resource) {
+      this.resource = resource;
+    }
+
+    public T get() {
+      return resource;
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        resource.close();
+      } catch (IOException | RuntimeException e) {
+        throw e;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException(e.getMessage());
+      } catch (Exception e) {
+        throw new IOException(e);
+      }
+    }
+  }
+
+  /**
+   * {@link SchemaManager} that serves one schema kept in memory, for files written and read without
+   * a table on disk.
+   */
+  public static class FixedSchemaManager extends SchemaManager {
+
+    private static final long serialVersionUID = 1L;
+
+    private final TableSchema schema;
+
+    public FixedSchemaManager(Path root, TableSchema schema) {
+      super(fileIO(root), root);
+      this.schema = schema;
+    }
+
+    @Override
+    public Optional<TableSchema> latest() {
+      return Optional.of(schema);
+    }
+
+    @Override
+    public Optional<TableSchema> latest(String branchName) {
+      return latest();
+    }
+
+    @Override
+    public List<TableSchema> listAll() {
+      return Collections.singletonList(schema);
+    }
+
+    @Override
+    public List<Long> listAllIds() {
+      return Collections.singletonList(schema.id());
+    }
+
+    @Override
+    public TableSchema createTable(Schema schema) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public TableSchema commitChanges(List<SchemaChange> changes) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public TableSchema schema(long id) {
+      if (id != schema.id()) {
+        throw new IllegalArgumentException("Unknown schema id: " + id);
+      }
+      return schema;
+    }
+  }
+}